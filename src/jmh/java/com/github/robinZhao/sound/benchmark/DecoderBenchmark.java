@@ -0,0 +1,103 @@
+package com.github.robinZhao.sound.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.robinZhao.sound.AudioDoubleConverter;
+
+/**
+ * 16位和24位小端PCM解码的基准测试，legacy是原来逐字节拼接的实现
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+    @Param({ "16", "24" })
+    private int bits;
+
+    @Param({ "4096" })
+    private int samples;
+
+    private AudioDoubleConverter converter;
+    private byte[] bytes;
+    private ByteBuffer heapBuffer;
+    private ByteBuffer directBuffer;
+    private double[] doubles;
+    private float[] floats;
+
+    @Setup
+    public void setup() {
+        this.converter = AudioDoubleConverter.getConverter(new AudioFormat(44100, bits, 1, true, false));
+        this.bytes = new byte[samples * bits / 8];
+        new Random(1).nextBytes(this.bytes);
+        this.heapBuffer = ByteBuffer.wrap(this.bytes);
+        this.directBuffer = ByteBuffer.allocateDirect(this.bytes.length);
+        this.directBuffer.put(this.bytes).flip();
+        this.doubles = new double[samples];
+        this.floats = new float[samples];
+    }
+
+    @Benchmark
+    public double[] legacy() {
+        if (bits == 16) {
+            int ix = 0;
+            for (int ox = 0; ox < samples; ox++) {
+                short x = (short) (bytes[ix++] & 0xFF | (bytes[ix++] << 8));
+                doubles[ox] = x > 0 ? x / 32767.0d : x / 32768.0d;
+            }
+        } else {
+            int ix = 0;
+            for (int ox = 0; ox < samples; ox++) {
+                int x = (bytes[ix++] & 0xFF) | ((bytes[ix++] & 0xFF) << 8) | ((bytes[ix++] & 0xFF) << 16);
+                if (x > 0x7FFFFF)
+                    x -= 0x1000000;
+                doubles[ox] = x > 0 ? x / 8388607.0d : x / 8388608.0d;
+            }
+        }
+        return doubles;
+    }
+
+    @Benchmark
+    public double[] byteArray() {
+        return converter.toDoubleArray(bytes, doubles);
+    }
+
+    @Benchmark
+    public double[] heapBuffer() {
+        return converter.toDoubleArray(heapBuffer, doubles);
+    }
+
+    @Benchmark
+    public double[] directBuffer() {
+        return converter.toDoubleArray(directBuffer, doubles);
+    }
+
+    @Benchmark
+    public float[] byteArrayFloat() {
+        return converter.toFloatArray(bytes, floats);
+    }
+
+    @Benchmark
+    public float[] directBufferFloat() {
+        return converter.toFloatArray(directBuffer, floats);
+    }
+}
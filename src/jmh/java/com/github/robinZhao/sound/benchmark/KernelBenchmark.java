@@ -0,0 +1,141 @@
+package com.github.robinZhao.sound.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.robinZhao.sound.Kernels;
+
+/**
+ * 标量和Vector API实现的逐元素计算对比，需要JDK 17及以上运行。
+ * vector在没有incubator模块时会退回标量，可以从结果中的实现名称确认
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class KernelBenchmark {
+
+    @Param({ "scalar", "vector" })
+    private String kernels;
+
+    @Param({ "1024", "4096" })
+    private int bufferSize;
+
+    private Kernels impl;
+    private double[] samples;
+    private double[] window;
+    private double[] complex;
+    private double[] out;
+    private float[] floatComplex;
+    private float[] floatOut;
+    private double[][] channels;
+    // 线性刻度每个点对应一个频率点；对数刻度按对数分布，与mel刻度类似
+    private int[] linearBins;
+    private double[] linearLow;
+    private double[] linearHigh;
+    private int[] logBins;
+    private double[] logLow;
+    private double[] logHigh;
+
+    @Setup
+    public void setup() {
+        this.impl = "vector".equals(kernels) ? Kernels.get() : Kernels.scalar();
+        Random random = new Random(1);
+        this.samples = new double[bufferSize * 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextDouble() * 2 - 1;
+        }
+        this.window = new double[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (bufferSize - 1));
+        }
+        this.complex = new double[bufferSize];
+        this.floatComplex = new float[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            complex[i] = random.nextDouble() * 2 - 1;
+            floatComplex[i] = (float) complex[i];
+        }
+        this.out = new double[bufferSize];
+        this.floatOut = new float[bufferSize];
+        this.channels = new double[2][bufferSize];
+        int half = bufferSize / 2;
+        this.linearBins = new int[half];
+        this.linearLow = new double[half];
+        this.linearHigh = new double[half];
+        for (int i = 0; i < half; i++) {
+            linearBins[i] = i;
+            linearLow[i] = 1;
+        }
+        this.logBins = new int[half];
+        this.logLow = new double[half];
+        this.logHigh = new double[half];
+        for (int i = 0; i < half; i++) {
+            double position = (half - 1) * (Math.pow(2, 10d * i / half) - 1) / 1023;
+            logBins[i] = (int) position;
+            logHigh[i] = position - logBins[i];
+            logLow[i] = 1 - logHigh[i];
+        }
+    }
+
+    @Benchmark
+    public double[] window() {
+        impl.window(samples, 0, window, out, 0, bufferSize);
+        return out;
+    }
+
+    @Benchmark
+    public double[] magnitude() {
+        impl.magnitude(complex, 2d / bufferSize, out, 0, bufferSize / 2);
+        return out;
+    }
+
+    @Benchmark
+    public float[] magnitudeFloat() {
+        impl.magnitude(floatComplex, 2f / bufferSize, floatOut, 0, bufferSize / 2);
+        return floatOut;
+    }
+
+    @Benchmark
+    public double[] power() {
+        impl.power(complex, 4d / bufferSize / bufferSize, out, 0, bufferSize / 2);
+        return out;
+    }
+
+    @Benchmark
+    public double[] filterBankLinear() {
+        impl.filterBank(linearBins, linearLow, linearHigh, complex, bufferSize / 2, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] filterBankLog() {
+        impl.filterBank(logBins, logLow, logHigh, complex, bufferSize / 2, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] channelMerge() {
+        impl.channelMerge(samples, 2, out, 0, bufferSize);
+        return out;
+    }
+
+    @Benchmark
+    public double[][] channelSplit() {
+        impl.channelSplit(samples, 2, channels, 0, bufferSize);
+        return channels;
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.robinZhao.sound.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.robinZhao.sound.SpectrumTransformer;
+import com.github.robinZhao.sound.transformer.SlidingDFTTransformer;
+import com.github.robinZhao.sound.transformer.WindowFun;
+
+/**
+ * 高overlap时滑动dft与fft的单帧耗时对比，每次调用转换下一个后移hop个样本的帧
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlidingBenchmark {
+    private static final int FRAMES = 4096;
+
+    @Param({ "radix4", "wavesurfer", "sliding" })
+    private String engine;
+
+    @Param({ "512", "1024", "4096" })
+    private int bufferSize;
+
+    @Param({ "1", "2", "4", "8" })
+    private int hop;
+
+    private SpectrumTransformer transformer;
+    private double[] signal;
+    private double[] frame;
+    private double[] out;
+    private int position;
+
+    @Setup
+    public void setup() {
+        this.transformer = "sliding".equals(engine)
+                ? new SlidingDFTTransformer(bufferSize, WindowFun.getWindowFunction("hann", null), hop)
+                : Transformers.create(engine, bufferSize, "hann");
+        this.signal = new double[bufferSize + hop * FRAMES];
+        Random random = new Random(1);
+        for (int i = 0; i < signal.length; i++) {
+            this.signal[i] = Math.sin(2 * Math.PI * 440 * i / 44100d) * 0.5 + random.nextGaussian() * 0.1;
+        }
+        this.frame = new double[bufferSize];
+        this.out = new double[bufferSize / 2];
+    }
+
+    @Benchmark
+    public double[] transform() {
+        // 到结尾后从头开始，滑动dft会重新计算一次
+        if (position == FRAMES) {
+            position = 0;
+        }
+        System.arraycopy(signal, hop * position++, frame, 0, bufferSize);
+        return transformer.transform(frame, out);
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.robinZhao.sound.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.robinZhao.sound.MappedWavReader;
+import com.github.robinZhao.sound.ScaleFilter;
+import com.github.robinZhao.sound.Spectrum;
+
+/**
+ * Spectrum.run端到端耗时，输入是生成的合成wav：扫频正弦加噪声，16位立体声
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpectrumBenchmark {
+
+    @Param({ "sun", "sunReal", "wavesurfer", "radix4" })
+    private String engine;
+
+    @Param({ "1024" })
+    private int bufferSize;
+
+    @Param({ "60" })
+    private int seconds;
+
+    @Param({ "stream", "mapped" })
+    private String source;
+
+    @Param({ "false", "true" })
+    private boolean parallel;
+
+    private File wav;
+
+    @Setup
+    public void setup() throws IOException {
+        float sampleRate = 44100;
+        AudioFormat format = new AudioFormat(sampleRate, 16, 2, true, false);
+        int frames = (int) (sampleRate * seconds);
+        byte[] data = new byte[frames * format.getFrameSize()];
+        Random random = new Random(1);
+        double phase = 0;
+        for (int i = 0; i < frames; i++) {
+            // 100Hz到10kHz的扫频
+            double freq = 100 + 9900d * i / frames;
+            phase += 2 * Math.PI * freq / sampleRate;
+            for (int c = 0; c < 2; c++) {
+                double v = Math.sin(phase) * 0.5 + random.nextGaussian() * 0.05;
+                short x = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v * 32767));
+                int idx = (i * 2 + c) * 2;
+                data[idx] = (byte) x;
+                data[idx + 1] = (byte) (x >>> 8);
+            }
+        }
+        this.wav = File.createTempFile("spectrum-bench", ".wav");
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(data), format, frames)) {
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, this.wav);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.wav.delete();
+    }
+
+    @Benchmark
+    public int run() throws IOException, UnsupportedAudioFileException {
+        if ("mapped".equals(source)) {
+            try (MappedWavReader reader = new MappedWavReader(wav)) {
+                return this.run(new Spectrum(reader, bufferSize, ScaleFilter.Type.mel,
+                        Transformers.create(engine, bufferSize, "hann")));
+            }
+        }
+        // 每次调用打开的音频流在结束时关闭
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(wav)) {
+            return this.run(new Spectrum(in, bufferSize, ScaleFilter.Type.mel,
+                    Transformers.create(engine, bufferSize, "hann")));
+        }
+    }
+
+    private int run(Spectrum spectrum) {
+        spectrum.setOverlap(bufferSize / 2);
+        if (parallel) {
+            spectrum.runParallel(() -> Transformers.create(engine, bufferSize, "hann"));
+        } else {
+            spectrum.run();
+        }
+        return spectrum.getTimelineSize();
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.robinZhao.sound.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.robinZhao.sound.SpectrumTransformer;
+
+/**
+ * 各转换器单帧转换的吞吐量，加-prof gc查看分配速率。
+ * transform使用复用输出数组的接口，transformAlloc使用每次返回新数组的接口，transformBatch每次批量转换BATCH帧
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformerBenchmark {
+    private static final int BATCH = 32;
+
+    @Param({ "sun", "sunReal", "wavesurfer", "dsp", "apache", "radix4", "mixedRadix" })
+    private String engine;
+
+    @Param({ "256", "512", "1024", "2048", "4096", "8192", "16384" })
+    private int bufferSize;
+
+    @Param({ "hann", "gauss" })
+    private String windowFun;
+
+    private SpectrumTransformer transformer;
+    private double[] samples;
+    private double[] out;
+    private double[] batchSamples;
+    private double[] batchOut;
+
+    @Setup
+    public void setup() {
+        this.transformer = Transformers.create(engine, bufferSize, windowFun);
+        this.samples = new double[bufferSize];
+        Random random = new Random(1);
+        for (int i = 0; i < bufferSize; i++) {
+            this.samples[i] = Math.sin(2 * Math.PI * 440 * i / 44100d) * 0.5 + random.nextGaussian() * 0.1;
+        }
+        this.out = new double[bufferSize / 2];
+        this.batchSamples = new double[bufferSize * BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            System.arraycopy(this.samples, 0, this.batchSamples, i * bufferSize, bufferSize);
+        }
+        this.batchOut = new double[bufferSize / 2 * BATCH];
+    }
+
+    @Benchmark
+    public double[] transform() {
+        return transformer.transform(samples, out);
+    }
+
+    @Benchmark
+    public double[] transformPower() {
+        return transformer.transformPower(samples, out);
+    }
+
+    @Benchmark
+    public double[] transformAlloc() {
+        return transformer.transform(samples);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] transformBatch() {
+        return transformer.transformBatch(batchSamples, bufferSize, BATCH, batchOut);
+    }
+}
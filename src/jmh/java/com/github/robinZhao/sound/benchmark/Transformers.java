@@ -0,0 +1,39 @@
+package com.github.robinZhao.sound.benchmark;
+
+import com.github.robinZhao.sound.SpectrumTransformer;
+import com.github.robinZhao.sound.transformer.ApacheFFTTransformer;
+import com.github.robinZhao.sound.transformer.DspFFTTranformer;
+import com.github.robinZhao.sound.transformer.MixedRadixFFTTransformer;
+import com.github.robinZhao.sound.transformer.Radix4FFTTransformer;
+import com.github.robinZhao.sound.transformer.SunFFTTransformer;
+import com.github.robinZhao.sound.transformer.WavesurferTransformer;
+
+/**
+ * 基准测试按名称创建转换器
+ */
+final class Transformers {
+
+    private Transformers() {
+    }
+
+    static SpectrumTransformer create(String engine, int bufferSize, String windowFun) {
+        switch (engine) {
+            case "sun":
+                return new SunFFTTransformer(bufferSize, windowFun);
+            case "sunReal":
+                return new SunFFTTransformer(bufferSize, windowFun, true);
+            case "wavesurfer":
+                return new WavesurferTransformer(bufferSize, windowFun);
+            case "dsp":
+                return new DspFFTTranformer(bufferSize, windowFun);
+            case "apache":
+                return new ApacheFFTTransformer(bufferSize, windowFun);
+            case "radix4":
+                return new Radix4FFTTransformer(bufferSize, windowFun);
+            case "mixedRadix":
+                return new MixedRadixFFTTransformer(bufferSize, windowFun);
+            default:
+                throw new RuntimeException("No such transformer " + engine);
+        }
+    }
+}
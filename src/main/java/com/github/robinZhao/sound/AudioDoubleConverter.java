@@ -25,6 +25,8 @@
 
 package com.github.robinZhao.sound;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.DoubleBuffer;
@@ -386,14 +388,56 @@ public abstract class AudioDoubleConverter {
 
     // PCM 16 bit, signed, little-endian
     private static class AudioDoubleConversion16SL extends AudioDoubleConverter {
+        // 按小端short整体读取，不用逐字节拼接；正负数只选择除数，不走分支，结果和原来相同
+        private static final VarHandle SHORT_ARRAY = MethodHandles
+                .byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+        private static final VarHandle SHORT_BUFFER = MethodHandles
+                .byteBufferViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+
         @Override
         public double[] toDoubleArray(byte[] in_buff, int in_offset,
                                     double[] out_buff, int out_offset, int out_len) {
             int ix = in_offset;
             int len = out_offset + out_len;
-            for (int ox = out_offset; ox < len; ox++) {
-                short x = (short) (in_buff[ix++] & 0xFF | (in_buff[ix++] << 8));
-                out_buff[ox] = x > 0 ? x / 32767.0d : x / 32768.0d;
+            for (int ox = out_offset; ox < len; ox++, ix += 2) {
+                short x = (short) SHORT_ARRAY.get(in_buff, ix);
+                out_buff[ox] = x / (x > 0 ? 32767.0d : 32768.0d);
+            }
+            return out_buff;
+        }
+
+        @Override
+        public double[] toDoubleArray(ByteBuffer in_buff, int in_offset,
+                                    double[] out_buff, int out_offset, int out_len) {
+            int ix = in_offset;
+            int len = out_offset + out_len;
+            for (int ox = out_offset; ox < len; ox++, ix += 2) {
+                short x = (short) SHORT_BUFFER.get(in_buff, ix);
+                out_buff[ox] = x / (x > 0 ? 32767.0d : 32768.0d);
+            }
+            return out_buff;
+        }
+
+        @Override
+        public float[] toFloatArray(byte[] in_buff, int in_offset,
+                                    float[] out_buff, int out_offset, int out_len) {
+            int ix = in_offset;
+            int len = out_offset + out_len;
+            for (int ox = out_offset; ox < len; ox++, ix += 2) {
+                short x = (short) SHORT_ARRAY.get(in_buff, ix);
+                out_buff[ox] = x / (x > 0 ? 32767.0f : 32768.0f);
+            }
+            return out_buff;
+        }
+
+        @Override
+        public float[] toFloatArray(ByteBuffer in_buff, int in_offset,
+                                    float[] out_buff, int out_offset, int out_len) {
+            int ix = in_offset;
+            int len = out_offset + out_len;
+            for (int ox = out_offset; ox < len; ox++, ix += 2) {
+                short x = (short) SHORT_BUFFER.get(in_buff, ix);
+                out_buff[ox] = x / (x > 0 ? 32767.0f : 32768.0f);
             }
             return out_buff;
         }
@@ -510,17 +554,93 @@ public abstract class AudioDoubleConverter {
 
     // PCM 24 bit, signed, little-endian
     private static class AudioDoubleConversion24SL extends AudioDoubleConverter {
+        // 按小端int读取4个字节，左移8位再算术右移8位得到有符号的24位值
+        private static final VarHandle INT_ARRAY = MethodHandles
+                .byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+        private static final VarHandle INT_BUFFER = MethodHandles
+                .byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+        // 可以整体读取4个字节的样本数，结尾的样本会越界，逐字节读取
+        private static int wordSamples(int in_len, int in_offset, int out_len) {
+            return Math.max(0, Math.min(out_len, (in_len - in_offset - 1) / 3));
+        }
+
+        private static int sample(byte[] in_buff, int ix) {
+            int x = (in_buff[ix] & 0xFF) | ((in_buff[ix + 1] & 0xFF) << 8)
+                    | ((in_buff[ix + 2] & 0xFF) << 16);
+            return x << 8 >> 8;
+        }
+
+        private static int sample(ByteBuffer in_buff, int ix) {
+            int x = (in_buff.get(ix) & 0xFF) | ((in_buff.get(ix + 1) & 0xFF) << 8)
+                    | ((in_buff.get(ix + 2) & 0xFF) << 16);
+            return x << 8 >> 8;
+        }
+
         @Override
         public double[] toDoubleArray(byte[] in_buff, int in_offset,
                                     double[] out_buff, int out_offset, int out_len) {
             int ix = in_offset;
             int ox = out_offset;
-            for (int i = 0; i < out_len; i++) {
-                int x = (in_buff[ix++] & 0xFF) | ((in_buff[ix++] & 0xFF) << 8)
-                        | ((in_buff[ix++] & 0xFF) << 16);
-                if (x > 0x7FFFFF)
-                    x -= 0x1000000;
-                out_buff[ox++] = x > 0 ? x / 8388607.0d : x / 8388608.0d;
+            int words = wordSamples(in_buff.length, in_offset, out_len);
+            for (int i = 0; i < words; i++, ix += 3) {
+                int x = (int) INT_ARRAY.get(in_buff, ix) << 8 >> 8;
+                out_buff[ox++] = x / (x > 0 ? 8388607.0d : 8388608.0d);
+            }
+            for (int i = words; i < out_len; i++, ix += 3) {
+                int x = sample(in_buff, ix);
+                out_buff[ox++] = x / (x > 0 ? 8388607.0d : 8388608.0d);
+            }
+            return out_buff;
+        }
+
+        @Override
+        public double[] toDoubleArray(ByteBuffer in_buff, int in_offset,
+                                    double[] out_buff, int out_offset, int out_len) {
+            int ix = in_offset;
+            int ox = out_offset;
+            int words = wordSamples(in_buff.limit(), in_offset, out_len);
+            for (int i = 0; i < words; i++, ix += 3) {
+                int x = (int) INT_BUFFER.get(in_buff, ix) << 8 >> 8;
+                out_buff[ox++] = x / (x > 0 ? 8388607.0d : 8388608.0d);
+            }
+            for (int i = words; i < out_len; i++, ix += 3) {
+                int x = sample(in_buff, ix);
+                out_buff[ox++] = x / (x > 0 ? 8388607.0d : 8388608.0d);
+            }
+            return out_buff;
+        }
+
+        @Override
+        public float[] toFloatArray(byte[] in_buff, int in_offset,
+                                    float[] out_buff, int out_offset, int out_len) {
+            int ix = in_offset;
+            int ox = out_offset;
+            int words = wordSamples(in_buff.length, in_offset, out_len);
+            for (int i = 0; i < words; i++, ix += 3) {
+                int x = (int) INT_ARRAY.get(in_buff, ix) << 8 >> 8;
+                out_buff[ox++] = x / (x > 0 ? 8388607.0f : 8388608.0f);
+            }
+            for (int i = words; i < out_len; i++, ix += 3) {
+                int x = sample(in_buff, ix);
+                out_buff[ox++] = x / (x > 0 ? 8388607.0f : 8388608.0f);
+            }
+            return out_buff;
+        }
+
+        @Override
+        public float[] toFloatArray(ByteBuffer in_buff, int in_offset,
+                                    float[] out_buff, int out_offset, int out_len) {
+            int ix = in_offset;
+            int ox = out_offset;
+            int words = wordSamples(in_buff.limit(), in_offset, out_len);
+            for (int i = 0; i < words; i++, ix += 3) {
+                int x = (int) INT_BUFFER.get(in_buff, ix) << 8 >> 8;
+                out_buff[ox++] = x / (x > 0 ? 8388607.0f : 8388608.0f);
+            }
+            for (int i = words; i < out_len; i++, ix += 3) {
+                int x = sample(in_buff, ix);
+                out_buff[ox++] = x / (x > 0 ? 8388607.0f : 8388608.0f);
             }
             return out_buff;
         }
@@ -1096,6 +1216,64 @@ public abstract class AudioDoubleConverter {
         return toDoubleArray(in_buff, 0, out_buff, 0, out_buff.length);
     }
 
+    private byte[] byte_buff = null;
+    private double[] decode_buff = null;
+
+    /**
+     * 从ByteBuffer解码，in_offset是绝对位置，不改变in_buff的position，
+     * 可以直接传入MappedWavReader返回的映射内存
+     */
+    public double[] toDoubleArray(ByteBuffer in_buff, int in_offset,
+            double[] out_buff, int out_offset, int out_len) {
+        int in_len = out_len * ((format.getSampleSizeInBits() + 7) / 8);
+        if (byte_buff == null || byte_buff.length < in_len)
+            byte_buff = new byte[in_len];
+        ByteBuffer src = in_buff.duplicate();
+        src.position(in_offset);
+        src.get(byte_buff, 0, in_len);
+        return toDoubleArray(byte_buff, 0, out_buff, out_offset, out_len);
+    }
+
+    public final double[] toDoubleArray(ByteBuffer in_buff, double[] out_buff) {
+        return toDoubleArray(in_buff, 0, out_buff, 0, out_buff.length);
+    }
+
+    /**
+     * 解码为float，默认先解码为double再转换，16位和24位小端格式直接解码
+     */
+    public float[] toFloatArray(byte[] in_buff, int in_offset,
+            float[] out_buff, int out_offset, int out_len) {
+        double[] decoded = toDoubleArray(in_buff, in_offset, decodeBuffer(out_len), 0, out_len);
+        for (int i = 0; i < out_len; i++)
+            out_buff[out_offset + i] = (float) decoded[i];
+        return out_buff;
+    }
+
+    /**
+     * 从ByteBuffer解码为float，in_offset是绝对位置，不改变in_buff的position
+     */
+    public float[] toFloatArray(ByteBuffer in_buff, int in_offset,
+            float[] out_buff, int out_offset, int out_len) {
+        double[] decoded = toDoubleArray(in_buff, in_offset, decodeBuffer(out_len), 0, out_len);
+        for (int i = 0; i < out_len; i++)
+            out_buff[out_offset + i] = (float) decoded[i];
+        return out_buff;
+    }
+
+    public final float[] toFloatArray(byte[] in_buff, float[] out_buff) {
+        return toFloatArray(in_buff, 0, out_buff, 0, out_buff.length);
+    }
+
+    public final float[] toFloatArray(ByteBuffer in_buff, float[] out_buff) {
+        return toFloatArray(in_buff, 0, out_buff, 0, out_buff.length);
+    }
+
+    private double[] decodeBuffer(int len) {
+        if (decode_buff == null || decode_buff.length < len)
+            decode_buff = new double[len];
+        return decode_buff;
+    }
+
     public abstract byte[] toByteArray(double[] in_buff, int in_offset,
             int in_len, byte[] out_buff, int out_offset);
 
@@ -1,10 +1,29 @@
 package com.github.robinZhao.sound;
 
 import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 256色的颜色表，序号0对应最小db，255对应0db。
+ * 创建时预先计算ARGB、BGR和Color，取颜色不再分配对象；内置类型的表按Type在进程内只计算一次，所有实例共享。
+ * 自定义颜色表(例如从matplotlib导出的viridis、magma)用ColorMap(double[][])或load创建，同样预先计算
+ */
 public class ColorMap {
+    private static final int SIZE = 256;
+    // 内置类型的颜色表，进程内共享
+    private static final Map<Type, Tables> SHARED = new ConcurrentHashMap<>();
     private Type type = Type.roseus;
-    private double[][] colorMap = new double[256][];
+    private Tables tables;
 
     public static enum Type{
         roseus,igray,gray
@@ -20,27 +39,172 @@ public class ColorMap {
         this.init();
     }
 
+    /**
+     * 自定义颜色表
+     *
+     * @param colors 按序号排列的颜色，每个为{r, g, b}或{r, g, b, a}，取值0到1。不是256个时线性插值为256个
+     */
+    public ColorMap(double[][] colors) {
+        this.type = null;
+        this.tables = new Tables(resample(colors));
+    }
+
+    /**
+     * 从文本读取自定义颜色表，每行一个颜色：r g b [a]，取值0到1，用空格、逗号或分号分隔，空行和#开头的行忽略。
+     * 例如matplotlib的cmap(numpy.linspace(0, 1, 256))按行保存的结果
+     */
+    public static ColorMap load(InputStream in) {
+        List<double[]> colors = new ArrayList<>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while (null != (line = reader.readLine())) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("[\\s,;]+");
+                if (parts.length < 3 || parts.length > 4) {
+                    throw new RuntimeException("颜色表格式错误，每行应为r g b [a]：" + line);
+                }
+                double[] color = new double[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    color[i] = Double.parseDouble(parts[i]);
+                }
+                colors.add(color);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("颜色表读取失败", e);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("颜色表格式错误", e);
+        }
+        return new ColorMap(colors.toArray(new double[0][]));
+    }
+
+    public static ColorMap load(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return load(in);
+        } catch (IOException e) {
+            throw new RuntimeException("颜色表读取失败" + file, e);
+        }
+    }
+
+    /**
+     * 内置类型，自定义颜色表返回null
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * 序号对应的颜色，返回预先创建的实例
+     */
     public Color getColor(int i) {
-        return new Color((int) (this.colorMap[i][0] * 255), (int) (this.colorMap[i][1] * 255),
-                (int) (this.colorMap[i][2] * 255));
+        return this.tables.colors[i];
+    }
+
+    public int getArgb(int i) {
+        return this.tables.argb[i];
+    }
+
+    /**
+     * 颜色序号对应的ARGB，长度256，与TYPE_INT_ARGB图像的像素相同，调用方不能修改
+     */
+    public int[] getArgbTable() {
+        return this.tables.argb;
     }
 
+    /**
+     * 颜色序号对应的BGR字节表，长度768，与TYPE_3BYTE_BGR图像的像素字节顺序相同，调用方不能修改
+     */
+    public byte[] getBgrTable() {
+        return this.tables.bgr;
+    }
+
+    /**
+     * 按type加载共享的颜色表，构造时已调用
+     */
     public void init() {
-        switch (this.type) {
+        if (null != this.type) {
+            this.tables = SHARED.computeIfAbsent(this.type, t -> new Tables(colors(t)));
+        }
+    }
+
+    /**
+     * 预先计算的颜色表，创建后不再修改
+     */
+    private static final class Tables {
+        final int[] argb = new int[SIZE];
+        // 每个颜色3个字节，顺序为B、G、R
+        final byte[] bgr = new byte[SIZE * 3];
+        final Color[] colors = new Color[SIZE];
+
+        Tables(double[][] colors) {
+            for (int i = 0; i < SIZE; i++) {
+                double[] color = colors[i];
+                int r = component(color[0]);
+                int g = component(color[1]);
+                int b = component(color[2]);
+                int a = color.length > 3 ? component(color[3]) : 255;
+                this.argb[i] = a << 24 | r << 16 | g << 8 | b;
+                this.bgr[i * 3] = (byte) b;
+                this.bgr[i * 3 + 1] = (byte) g;
+                this.bgr[i * 3 + 2] = (byte) r;
+                this.colors[i] = new Color(this.argb[i], true);
+            }
+        }
+
+        private static int component(double value) {
+            return Math.max(0, Math.min(255, (int) (value * 255)));
+        }
+    }
+
+    /**
+     * 颜色个数不是256时线性插值为256个
+     */
+    private static double[][] resample(double[][] colors) {
+        if (null == colors || colors.length < 2) {
+            throw new RuntimeException("颜色表至少需要2个颜色");
+        }
+        for (double[] color : colors) {
+            if (color.length < 3) {
+                throw new RuntimeException("颜色至少需要r、g、b三个分量");
+            }
+        }
+        if (colors.length == SIZE) {
+            return colors;
+        }
+        double[][] result = new double[SIZE][4];
+        for (int i = 0; i < SIZE; i++) {
+            double position = i * (colors.length - 1) / (SIZE - 1d);
+            int low = Math.min((int) position, colors.length - 2);
+            double ratio = position - low;
+            for (int k = 0; k < 4; k++) {
+                double from = k < colors[low].length ? colors[low][k] : 1;
+                double to = k < colors[low + 1].length ? colors[low + 1][k] : 1;
+                result[i][k] = from + (to - from) * ratio;
+            }
+        }
+        return result;
+    }
+
+    private static double[][] colors(Type type) {
+        double[][] colorMap = new double[SIZE][];
+        switch (type) {
             case gray:
                 for (int i = 0; i < 256; i++) {
                     double val = (255d - i) / 256d;
-                    this.colorMap[i] = new double[] { val, val, val, 1 };
+                    colorMap[i] = new double[] { val, val, val, 1 };
                 }
-                break;
+                return colorMap;
             case igray:
                 for (int i = 0; i < 256; i++) {
                     double val = i / 256d;
-                    this.colorMap[i] = new double[] { val, val, val, 1 };
+                    colorMap[i] = new double[] { val, val, val, 1 };
                 }
-                break;
+                return colorMap;
             case roseus:
-                this.colorMap = new double[][] {
+                return new double[][] {
                         { 0.004528, 0.004341, 0.004307, 1 },
                         { 0.005625, 0.006156, 0.00601, 1 },
                         { 0.006628, 0.008293, 0.008161, 1 },
@@ -298,9 +462,8 @@ public class ColorMap {
                         { 0.990402, 0.979395, 0.968966, 1 },
                         { 0.99793, 0.983217, 0.97692, 1 }
                 };
-                break;
             default:
-                throw new RuntimeException("No such colormap " + this.colorMap + "");
+                throw new RuntimeException("No such colormap " + type + "");
         }
     }
 }
\ No newline at end of file
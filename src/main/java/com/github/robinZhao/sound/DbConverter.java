@@ -0,0 +1,266 @@
+package com.github.robinZhao.sound;
+
+/**
+ * 频谱幅度转换为db，db = 20 * log10(max(|x|, 1e-12)) + gainDB；
+ * 功率谱(幅度的平方)转换为db，db = 10 * log10(max(p, 1e-24)) + gainDB，两者结果相同。
+ * 创建后不再修改，可以在线程间共享
+ */
+public class DbConverter {
+
+    public static enum Type {
+        /** Math.log10精确计算 */
+        exact,
+        /** 按位拆出指数和尾数，尾数用多项式近似求对数，误差不超过2e-5db */
+        fast,
+        /**
+         * 幅度的平方直接查表得到颜色序号，不开方也不求对数，结果为颜色序号对应的db值，
+         * 低于-rangeDB的截取为-rangeDB，高于0的截取为0，只适合颜色映射使用，rangeDB、gainDB必须在计算前设置
+         */
+        colorIndex
+    }
+
+    private static final double MIN_MAGNITUDE = 1e-12;
+    private static final double MIN_POWER = MIN_MAGNITUDE * MIN_MAGNITUDE;
+    private static final double LN2 = Math.log(2);
+    private static final double INV_LN10 = 1 / Math.log(10);
+    // sqrt(1/2)的位表示，用于不分支地拆分指数和尾数
+    private static final long SQRT_HALF_BITS = Double.doubleToRawLongBits(Math.sqrt(0.5));
+    // 查表时保留指数和尾数的高4位
+    private static final int KEY_SHIFT = 48;
+    private static final int COLORS = 256;
+
+    private final Type type;
+    private final double gainDB;
+    private final double rangeDB;
+    // colorIndex用：thresholds[i]是颜色序号达到i需要的幅度平方，i从1到255
+    private double[] thresholds;
+    // 按幅度平方的高位查表得到的颜色序号下限，下标从minKey开始
+    private int[] indexTable;
+    private long minKey;
+    private long maxKey;
+    // 颜色序号对应的db值
+    private double[] indexDb;
+
+    public DbConverter(Type type, double rangeDB, double gainDB) {
+        this.type = type;
+        this.rangeDB = rangeDB;
+        this.gainDB = gainDB;
+        if (type == Type.colorIndex) {
+            this.initIndexTable();
+        }
+    }
+
+    private void initIndexTable() {
+        // 与convertToColorMap一致：序号 = round(clip(db) / rangeDB * 255 + 255)，序号达到i的db下限为 (i - 0.5 - 255) / 255 * rangeDB
+        this.thresholds = new double[COLORS];
+        for (int i = 1; i < COLORS; i++) {
+            double db = (i - 0.5 - 255) / 255 * this.rangeDB;
+            this.thresholds[i] = Math.pow(10, (db - this.gainDB) / 10);
+        }
+        this.minKey = Double.doubleToRawLongBits(this.thresholds[1]) >>> KEY_SHIFT;
+        this.maxKey = Double.doubleToRawLongBits(this.thresholds[COLORS - 1]) >>> KEY_SHIFT;
+        this.indexTable = new int[(int) (this.maxKey - this.minKey + 1)];
+        int index = 0;
+        for (int k = 0; k < this.indexTable.length; k++) {
+            double low = Double.longBitsToDouble((this.minKey + k) << KEY_SHIFT);
+            while (index < COLORS - 1 && low >= this.thresholds[index + 1]) {
+                index++;
+            }
+            this.indexTable[k] = index;
+        }
+        this.indexDb = new double[COLORS];
+        for (int i = 0; i < COLORS; i++) {
+            this.indexDb[i] = (i - 255d) / 255 * this.rangeDB;
+        }
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * 幅度转换为db，可以原地转换
+     *
+     * @param magnitudes 幅度
+     * @param out        输出数组，长度不小于magnitudes.length
+     * @return out
+     */
+    public double[] toDb(double[] magnitudes, double[] out) {
+        return this.toDb(magnitudes, out, magnitudes.length);
+    }
+
+    /**
+     * 转换前length个
+     */
+    public double[] toDb(double[] magnitudes, double[] out, int length) {
+        // 每种方式一个循环方法，便于分别编译优化
+        switch (this.type) {
+            case fast:
+                return this.fastDb(magnitudes, out, length);
+            case colorIndex:
+                return this.colorIndexDb(magnitudes, out, length);
+            case exact:
+            default:
+                return this.exactDb(magnitudes, out, length);
+        }
+    }
+
+    private double[] exactDb(double[] magnitudes, double[] out, int length) {
+        double gainDB = this.gainDB;
+        for (int j = 0; j < length; j++) {
+            // Based on: https://manual.audacityteam.org/man/spectrogram_view.html
+            double magnitude = Math.max(Math.abs(magnitudes[j]), MIN_MAGNITUDE);
+            double valueDB = 20 * Math.log10(magnitude);
+            out[j] = valueDB + gainDB;
+        }
+        return out;
+    }
+
+    private double[] fastDb(double[] magnitudes, double[] out, int length) {
+        double gainDB = this.gainDB;
+        for (int j = 0; j < length; j++) {
+            double magnitude = Math.max(Math.abs(magnitudes[j]), MIN_MAGNITUDE);
+            out[j] = 20 * fastLog10(magnitude) + gainDB;
+        }
+        return out;
+    }
+
+    private double[] colorIndexDb(double[] magnitudes, double[] out, int length) {
+        double[] indexDb = this.indexDb;
+        for (int j = 0; j < length; j++) {
+            double magnitude = magnitudes[j];
+            out[j] = indexDb[this.colorIndex(magnitude * magnitude)];
+        }
+        return out;
+    }
+
+    /**
+     * 功率谱转换为db，可以原地转换。colorIndex方式直接用功率查表
+     *
+     * @param powers 功率谱
+     * @param out    输出数组，长度不小于powers.length
+     * @return out
+     */
+    public double[] powerToDb(double[] powers, double[] out) {
+        return this.powerToDb(powers, out, powers.length);
+    }
+
+    /**
+     * 转换前length个
+     */
+    public double[] powerToDb(double[] powers, double[] out, int length) {
+        double gainDB = this.gainDB;
+        switch (this.type) {
+            case fast:
+                for (int j = 0; j < length; j++) {
+                    out[j] = 10 * fastLog10(Math.max(powers[j], MIN_POWER)) + gainDB;
+                }
+                break;
+            case colorIndex:
+                for (int j = 0; j < length; j++) {
+                    out[j] = this.indexDb[this.colorIndex(powers[j])];
+                }
+                break;
+            case exact:
+            default:
+                for (int j = 0; j < length; j++) {
+                    out[j] = 10 * Math.log10(Math.max(powers[j], MIN_POWER)) + gainDB;
+                }
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * float版本的powerToDb
+     */
+    public float[] powerToDb(float[] powers, float[] out) {
+        int length = powers.length;
+        float gain = (float) this.gainDB;
+        switch (this.type) {
+            case fast:
+                for (int j = 0; j < length; j++) {
+                    out[j] = (float) (10 * fastLog10(Math.max(powers[j], MIN_POWER))) + gain;
+                }
+                break;
+            case colorIndex:
+                for (int j = 0; j < length; j++) {
+                    out[j] = (float) this.indexDb[this.colorIndex(powers[j])];
+                }
+                break;
+            case exact:
+            default:
+                for (int j = 0; j < length; j++) {
+                    out[j] = (float) (10 * Math.log10(Math.max(powers[j], MIN_POWER))) + gain;
+                }
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * float版本，可以原地转换
+     */
+    public float[] toDb(float[] magnitudes, float[] out) {
+        int length = magnitudes.length;
+        float gain = (float) this.gainDB;
+        switch (this.type) {
+            case fast:
+                for (int j = 0; j < length; j++) {
+                    double magnitude = Math.max(Math.abs(magnitudes[j]), MIN_MAGNITUDE);
+                    out[j] = (float) (20 * fastLog10(magnitude)) + gain;
+                }
+                break;
+            case colorIndex:
+                for (int j = 0; j < length; j++) {
+                    double magnitude = magnitudes[j];
+                    out[j] = (float) this.indexDb[this.colorIndex(magnitude * magnitude)];
+                }
+                break;
+            case exact:
+            default:
+                for (int j = 0; j < length; j++) {
+                    float magnitude = Math.max(Math.abs(magnitudes[j]), 1e-12f);
+                    out[j] = (float) (20 * Math.log10(magnitude)) + gain;
+                }
+                break;
+        }
+        return out;
+    }
+
+    /**
+     * 幅度的平方对应的颜色序号0-255，先按高位查表得到下限，再和相邻的阈值比较。
+     * 与exact一样低于MIN_POWER的按MIN_POWER计算，rangeDB大于240db + gainDB时最低的颜色序号也与exact相同
+     */
+    int colorIndex(double power) {
+        power = Math.max(power, MIN_POWER);
+        long key = Double.doubleToRawLongBits(power) >>> KEY_SHIFT;
+        if (key < this.minKey) {
+            return 0;
+        }
+        if (key > this.maxKey) {
+            return COLORS - 1;
+        }
+        int index = this.indexTable[(int) (key - this.minKey)];
+        while (index < COLORS - 1 && power >= this.thresholds[index + 1]) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * 近似log10，x必须是正的规格化数。
+     * x = 2^e * m，m调整到[sqrt(1/2), sqrt(2))，ln(m) = 2 * atanh((m - 1) / (m + 1))，级数取到5次方。
+     * 减去sqrt(1/2)的位表示后高12位即为e，不用分支，随机数据下不会有分支预测失败
+     */
+    static double fastLog10(double x) {
+        long bits = Double.doubleToRawLongBits(x);
+        long tmp = bits - SQRT_HALF_BITS;
+        int exponent = (int) (tmp >> 52);
+        double m = Double.longBitsToDouble(bits - (tmp & 0xFFF0000000000000L));
+        double t = (m - 1) / (m + 1);
+        double t2 = t * t;
+        double ln = exponent * LN2 + 2 * t * (1 + t2 * (1 / 3d + t2 * (1 / 5d)));
+        return ln * INV_LN10;
+    }
+}
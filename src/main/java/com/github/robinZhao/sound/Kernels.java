@@ -0,0 +1,216 @@
+package com.github.robinZhao.sound;
+
+/**
+ * 加窗、求幅度、滤波器组、声道合并拆分等逐元素的数组计算。
+ * 本类是标量实现；使用--add-modules jdk.incubator.vector启动并且编译了src/vector/java时，
+ * get()返回基于Vector API的VectorKernels，结果与标量实现逐位相同。
+ * 设置-Dspectrum.vector=false可以强制使用标量实现
+ */
+public class Kernels {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_CLASS = "com.github.robinZhao.sound.VectorKernels";
+    private static final Kernels SCALAR = new Kernels();
+    private static final Kernels INSTANCE = create();
+
+    protected Kernels() {
+    }
+
+    /**
+     * 运行时可用的最快实现，进程内只检测一次
+     */
+    public static Kernels get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 标量实现
+     */
+    public static Kernels scalar() {
+        return SCALAR;
+    }
+
+    private static Kernels create() {
+        if ("false".equals(System.getProperty("spectrum.vector"))) {
+            return SCALAR;
+        }
+        // 没有加载incubator模块时不能加载VectorKernels，否则NoClassDefFoundError
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            return SCALAR;
+        }
+        try {
+            Kernels kernels = (Kernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+            return kernels.isSupported() ? kernels : SCALAR;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // 用不支持Vector API的方式编译时没有VectorKernels
+            return SCALAR;
+        }
+    }
+
+    /**
+     * 当前平台是否适合使用该实现
+     */
+    protected boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * 实现名称，例如scalar、vector-256
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * 加窗：out[outOffset + i] = in[offset + i] * window[i]，i从0到n-1
+     */
+    public void window(double[] in, int offset, double[] window, double[] out, int outOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            out[outOffset + i] = in[offset + i] * window[i];
+        }
+    }
+
+    /**
+     * 交错存放的复数求幅度：out[outOffset + i] = scale * sqrt(re * re + im * im)，re = data[2i]，im = data[2i + 1]
+     */
+    public void magnitude(double[] data, double scale, double[] out, int outOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            double re = data[2 * i];
+            double im = data[2 * i + 1];
+            out[outOffset + i] = scale * Math.sqrt(re * re + im * im);
+        }
+    }
+
+    /**
+     * float版本的magnitude
+     */
+    public void magnitude(float[] data, float scale, float[] out, int outOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            float re = data[2 * i];
+            float im = data[2 * i + 1];
+            out[outOffset + i] = scale * (float) Math.sqrt(re * re + im * im);
+        }
+    }
+
+    /**
+     * 交错存放的复数求功率：out[outOffset + i] = scale * (re * re + im * im)
+     */
+    public void power(double[] data, double scale, double[] out, int outOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            double re = data[2 * i];
+            double im = data[2 * i + 1];
+            out[outOffset + i] = scale * (re * re + im * im);
+        }
+    }
+
+    /**
+     * float版本的power
+     */
+    public void power(float[] data, float scale, float[] out, int outOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            float re = data[2 * i];
+            float im = data[2 * i + 1];
+            out[outOffset + i] = scale * (re * re + im * im);
+        }
+    }
+
+    /**
+     * 实部虚部分开存放时求幅度：out[i] = scale * sqrt(real[i]^2 + imag[i]^2)
+     */
+    public void magnitude(double[] real, double[] imag, double scale, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = scale * Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+        }
+    }
+
+    /**
+     * 实部虚部分开存放时求功率：out[i] = scale * (real[i]^2 + imag[i]^2)
+     */
+    public void power(double[] real, double[] imag, double scale, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = scale * (real[i] * real[i] + imag[i] * imag[i]);
+        }
+    }
+
+    /**
+     * 稀疏滤波器组：out[i] = in[bins[i]] * low[i] + in[bins[i] + 1] * high[i]，下标不小于length的点按0计算。
+     * bins必须非递减
+     */
+    public void filterBank(int[] bins, double[] low, double[] high, double[] in, int length, double[] out) {
+        for (int i = 0; i < bins.length; i++) {
+            int j = bins[i];
+            double value = 0;
+            if (j < length) {
+                value += in[j] * low[i];
+            }
+            if (j + 1 < length) {
+                value += in[j + 1] * high[i];
+            }
+            out[i] = value;
+        }
+    }
+
+    /**
+     * float版本的filterBank
+     */
+    public void filterBank(int[] bins, float[] low, float[] high, float[] in, int length, float[] out) {
+        for (int i = 0; i < bins.length; i++) {
+            int j = bins[i];
+            float value = 0;
+            if (j < length) {
+                value += in[j] * low[i];
+            }
+            if (j + 1 < length) {
+                value += in[j + 1] * high[i];
+            }
+            out[i] = value;
+        }
+    }
+
+    /**
+     * 交错存放的多声道样本各声道取平均，写入out的offset位置
+     */
+    public void channelMerge(double[] in, int channels, double[] out, int offset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            double total = 0;
+            for (int j = 0; j < channels; j++) {
+                total += in[channels * i + j];
+            }
+            out[offset + i] = total / channels;
+        }
+    }
+
+    /**
+     * float版本的channelMerge
+     */
+    public void channelMerge(float[] in, int channels, float[] out, int offset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            float total = 0;
+            for (int j = 0; j < channels; j++) {
+                total += in[channels * i + j];
+            }
+            out[offset + i] = total / channels;
+        }
+    }
+
+    /**
+     * 交错存放的多声道样本按声道拆分，每个声道写入out[声道]的offset位置
+     */
+    public void channelSplit(double[] in, int channels, double[][] out, int offset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            for (int j = 0; j < channels; j++) {
+                out[j][offset + i] = in[channels * i + j];
+            }
+        }
+    }
+
+    /**
+     * float版本的channelSplit
+     */
+    public void channelSplit(float[] in, int channels, float[][] out, int offset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            for (int j = 0; j < channels; j++) {
+                out[j][offset + i] = in[channels * i + j];
+            }
+        }
+    }
+}
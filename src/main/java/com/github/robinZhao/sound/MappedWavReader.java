@@ -0,0 +1,195 @@
+package com.github.robinZhao.sound;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioFormat.Encoding;
+
+/**
+ * 基于内存映射的wav读取，自行解析RIFF头，按帧偏移直接返回映射内存的视图，不复制数据，
+ * 支持随机访问，适合GB级的wav文件
+ */
+public class MappedWavReader implements Closeable {
+    // 每段映射的最大字节数，MappedByteBuffer单个不能超过2GB
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final File file;
+    private final FileChannel channel;
+    private AudioFormat format;
+    private long dataOffset;
+    private long dataLength;
+    private int frameSize;
+    // 数据块按SEGMENT_BYTES分段映射，每段长度是frameSize的整数倍
+    private long segmentBytes;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    public MappedWavReader(File file) {
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException("读取音频文件失败" + file, e);
+        }
+        try {
+            this.parseHeader();
+        } catch (IOException | RuntimeException e) {
+            try {
+                this.channel.close();
+            } catch (IOException ignore) {
+            }
+            throw new RuntimeException("wav文件解析失败" + file, e);
+        }
+    }
+
+    private void parseHeader() throws IOException {
+        ByteBuffer header = this.readBytes(0, 12);
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) {
+            throw new RuntimeException("不是RIFF WAVE文件");
+        }
+        long fileSize = this.channel.size();
+        long pos = 12;
+        ByteBuffer fmt = null;
+        while (pos + 8 <= fileSize) {
+            ByteBuffer chunkHeader = this.readBytes(pos, 8);
+            int chunkId = chunkHeader.getInt(0);
+            long chunkSize = chunkHeader.getInt(4) & 0xFFFFFFFFL;
+            pos += 8;
+            if (chunkId == 0x20746D66) {
+                // "fmt "
+                fmt = this.readBytes(pos, (int) Math.min(chunkSize, 40));
+            } else if (chunkId == 0x61746164) {
+                // "data"，流式写入的文件长度可能为0或0xFFFFFFFF，以文件实际长度为准
+                this.dataOffset = pos;
+                this.dataLength = chunkSize == 0 || pos + chunkSize > fileSize ? fileSize - pos : chunkSize;
+                break;
+            }
+            // 块按2字节对齐
+            pos += chunkSize + (chunkSize & 1);
+        }
+        if (null == fmt) {
+            throw new RuntimeException("缺少fmt块");
+        }
+        if (this.dataOffset == 0) {
+            throw new RuntimeException("缺少data块");
+        }
+        int formatTag = fmt.getShort(0) & 0xFFFF;
+        int channels = fmt.getShort(2) & 0xFFFF;
+        int sampleRate = fmt.getInt(4);
+        int blockAlign = fmt.getShort(12) & 0xFFFF;
+        int bits = fmt.getShort(14) & 0xFFFF;
+        if (formatTag == WAVE_FORMAT_EXTENSIBLE && fmt.limit() >= 26) {
+            // 子格式GUID的前两个字节是实际的格式
+            formatTag = fmt.getShort(24) & 0xFFFF;
+        }
+        Encoding encoding;
+        if (formatTag == WAVE_FORMAT_PCM) {
+            encoding = bits <= 8 ? Encoding.PCM_UNSIGNED : Encoding.PCM_SIGNED;
+        } else if (formatTag == WAVE_FORMAT_IEEE_FLOAT) {
+            encoding = Encoding.PCM_FLOAT;
+        } else {
+            throw new RuntimeException("不支持的wav格式" + formatTag);
+        }
+        this.frameSize = blockAlign;
+        this.dataLength -= this.dataLength % this.frameSize;
+        this.format = new AudioFormat(encoding, sampleRate, bits, channels, blockAlign, sampleRate, false);
+        this.segmentBytes = SEGMENT_BYTES - SEGMENT_BYTES % this.frameSize;
+    }
+
+    private ByteBuffer readBytes(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public AudioFormat getFormat() {
+        return this.format;
+    }
+
+    /**
+     * 数据块在文件中的偏移字节数
+     */
+    public long getDataOffset() {
+        return this.dataOffset;
+    }
+
+    /**
+     * 总帧数
+     */
+    public long getFrameLength() {
+        return this.dataLength / this.frameSize;
+    }
+
+    public int getFrameSize() {
+        return this.frameSize;
+    }
+
+    /**
+     * 获取从frameOffset开始的frameCount帧，返回映射内存的小端视图，position为0，不复制数据。
+     * 超出文件结尾的部分会被截断
+     *
+     * @param frameOffset 起始帧
+     * @param frameCount  帧数
+     */
+    public ByteBuffer getFrames(long frameOffset, int frameCount) {
+        long start = frameOffset * this.frameSize;
+        long length = Math.min((long) frameCount * this.frameSize, Math.max(0, this.dataLength - start));
+        if (start < 0 || length <= 0) {
+            return ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int segment = (int) (start / this.segmentBytes);
+        int offset = (int) (start % this.segmentBytes);
+        try {
+            if (offset + length <= this.segmentBytes) {
+                ByteBuffer buffer = this.segment(segment).duplicate();
+                buffer.position(offset).limit((int) (offset + length));
+                return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            // 跨段时单独映射这一段数据
+            return this.channel.map(FileChannel.MapMode.READ_ONLY, this.dataOffset + start, length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new RuntimeException("读取音频文件失败" + file, e);
+        }
+    }
+
+    private synchronized MappedByteBuffer segment(int i) throws IOException {
+        while (this.segments.size() <= i) {
+            this.segments.add(null);
+        }
+        MappedByteBuffer buffer = this.segments.get(i);
+        if (null == buffer) {
+            long start = i * this.segmentBytes;
+            long length = Math.min(this.segmentBytes, this.dataLength - start);
+            buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, this.dataOffset + start, length);
+            this.segments.set(i, buffer);
+        }
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.segments.clear();
+        this.channel.close();
+    }
+}
@@ -1,12 +1,31 @@
 package com.github.robinZhao.sound;
 
-import java.util.function.Function;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ScaleFilter {
     private int fftSamples;
     private Type scaleType;
     private int numFilters ;
     private double sampleRate;
+    private FilterBank filterBank;
+
+    // 缓存的滤波器组个数上限，处理很多种格式的长时间运行的进程中缓存不会一直增长
+    private static final int MAX_FILTER_BANKS = 64;
+
+    /**
+     * 已构建的滤波器组，按(刻度类型,采样率,fft点数,滤波器数)共享，滤波器组创建后不可变。
+     * 超过上限时删除最久没有使用的，已获取的ScaleFilter继续持有自己的滤波器组
+     */
+    private static final Map<String, FilterBank> FILTER_BANK_CACHE = Collections
+            .synchronizedMap(new LinkedHashMap<String, FilterBank>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FilterBank> eldest) {
+                    return this.size() > MAX_FILTER_BANKS;
+                }
+            });
 
     public static enum Type{
         mel,logarithmic,bark,erb,linear
@@ -25,31 +44,167 @@ public class ScaleFilter {
         this(scale, sampleRate,fftSamples, fftSamples/2);
     }
 
-    private double[][] createFilterBank(
-            int numFilters,
-            double sampleRate,
-            Function<Double, Double> hzToScale,
-            Function<Double, Double> scaleToHz) {
-        double filterMin = hzToScale.apply(0d);
-        double filterMax = hzToScale.apply(sampleRate / 2);
-        double[][] filterBank = new double[numFilters][(int) (this.fftSamples / 2 + 1)];
+    /**
+     * 稀疏滤波器组，每个滤波器只有相邻两个fft点的权重非0，
+     * 第i个滤波器输出 = fftPoints[bins[i]] * lowWeights[i] + fftPoints[bins[i] + 1] * highWeights[i]
+     */
+    public static final class FilterBank {
+        private final int[] bins;
+        private final double[] lowWeights;
+        private final double[] highWeights;
+        // float处理模式用的权重
+        private final float[] floatLowWeights;
+        private final float[] floatHighWeights;
+        // 每个滤波器只取一个fft点(权重为0或1)，功率谱可以直接滤波
+        private final boolean singleBin;
+        // 权重不为0的fft点，从小到大，功率谱滤波前只对这些点开方
+        private final int[] usedBins;
+
+        FilterBank(int[] bins, double[] lowWeights, double[] highWeights) {
+            this.bins = bins;
+            this.lowWeights = lowWeights;
+            this.highWeights = highWeights;
+            this.floatLowWeights = new float[bins.length];
+            this.floatHighWeights = new float[bins.length];
+            boolean singleBin = true;
+            BitSet used = new BitSet();
+            for (int i = 0; i < bins.length; i++) {
+                this.floatLowWeights[i] = (float) lowWeights[i];
+                this.floatHighWeights[i] = (float) highWeights[i];
+                if (lowWeights[i] != 0) {
+                    used.set(bins[i]);
+                }
+                if (highWeights[i] != 0) {
+                    used.set(bins[i] + 1);
+                }
+                singleBin &= (lowWeights[i] == 1 && highWeights[i] == 0) || (lowWeights[i] == 0 && highWeights[i] == 1);
+            }
+            this.singleBin = singleBin;
+            this.usedBins = used.stream().toArray();
+        }
+
+        public int size() {
+            return this.bins.length;
+        }
+
+        /**
+         * 是否每个滤波器只取一个fft点，为true时功率谱滤波不需要开方
+         */
+        public boolean isSingleBin() {
+            return this.singleBin;
+        }
+
+        /**
+         * @param fftPoints 频域数据
+         * @param out       输出数组，长度不小于滤波器数量
+         * @return out
+         */
+        public double[] apply(double[] fftPoints, double[] out) {
+            Kernels.get().filterBank(bins, lowWeights, highWeights, fftPoints, fftPoints.length, out);
+            return out;
+        }
+
+        /**
+         * 功率谱滤波，结果也是功率谱，转换为db后与幅度滤波的结果相同。
+         * 滤波器插值两个点时先对用到的点开方，按幅度滤波后再平方，powers中这些点会被原地改为幅度
+         *
+         * @param powers 功率谱，可能被修改
+         * @param out    输出数组，长度不小于滤波器数量
+         * @return out
+         */
+        public double[] applyPower(double[] powers, double[] out) {
+            if (this.singleBin) {
+                return this.apply(powers, out);
+            }
+            int len = powers.length;
+            for (int j : this.usedBins) {
+                if (j >= len) {
+                    break;
+                }
+                powers[j] = Math.sqrt(powers[j]);
+            }
+            this.apply(powers, out);
+            for (int i = 0; i < bins.length; i++) {
+                out[i] *= out[i];
+            }
+            return out;
+        }
+
+        /**
+         * float版本的applyPower
+         */
+        public float[] applyPower(float[] powers, float[] out) {
+            if (this.singleBin) {
+                return this.apply(powers, out);
+            }
+            int len = powers.length;
+            for (int j : this.usedBins) {
+                if (j >= len) {
+                    break;
+                }
+                powers[j] = (float) Math.sqrt(powers[j]);
+            }
+            this.apply(powers, out);
+            for (int i = 0; i < bins.length; i++) {
+                out[i] *= out[i];
+            }
+            return out;
+        }
+
+        /**
+         * float版本
+         */
+        public float[] apply(float[] fftPoints, float[] out) {
+            Kernels.get().filterBank(bins, floatLowWeights, floatHighWeights, fftPoints, fftPoints.length, out);
+            return out;
+        }
+    }
+
+    public Type getScaleType() {
+        return this.scaleType;
+    }
+
+    public int getNumFilters() {
+        return this.numFilters;
+    }
+
+    /**
+     * 获取稀疏滤波器组，相同参数的ScaleFilter共用同一个滤波器组
+     */
+    public FilterBank getFilterBank() {
+        if (null == this.filterBank) {
+            String key = this.scaleType + ":" + this.sampleRate + ":" + this.fftSamples + ":" + this.numFilters;
+            FilterBank filterBank = FILTER_BANK_CACHE.get(key);
+            if (null == filterBank) {
+                filterBank = this.createSparseFilterBank();
+                FilterBank exists = FILTER_BANK_CACHE.putIfAbsent(key, filterBank);
+                if (null != exists) {
+                    filterBank = exists;
+                }
+            }
+            this.filterBank = filterBank;
+        }
+        return this.filterBank;
+    }
+
+    private FilterBank createSparseFilterBank() {
+        double filterMin = this.hzToScale(0d);
+        double filterMax = this.hzToScale(sampleRate / 2);
         double scale = sampleRate / this.fftSamples;
+        int[] bins = new int[numFilters];
+        double[] lowWeights = new double[numFilters];
+        double[] highWeights = new double[numFilters];
         for (int i = 0; i < numFilters; i++) {
-            double hz = scaleToHz.apply(filterMin + ((double)i / numFilters) * (filterMax - filterMin));
+            double hz = this.scaleToHz(filterMin + ((double) i / numFilters) * (filterMax - filterMin));
             int j = (int) Math.floor(hz / scale);
             double hzLow = j * scale;
             double hzHigh = (j + 1) * scale;
             double r = (hz - hzLow) / (hzHigh - hzLow);
-            filterBank[i][j] = 1 - r;
-            filterBank[i][j + 1] = r;
+            bins[i] = j;
+            lowWeights[i] = 1 - r;
+            highWeights[i] = r;
         }
-        return filterBank;
-    }
-
-    private double[][] createFilterBank(
-            int numFilters,
-            double sampleRate) {
-        return this.createFilterBank(numFilters, sampleRate, this::hzToScale, this::scaleToHz);
+        return new FilterBank(bins, lowWeights, highWeights);
     }
 
     private double hzToMel(double hz) {
@@ -60,10 +215,6 @@ public class ScaleFilter {
         return 700 * (Math.pow(10, mel / 2595) - 1);
     }
 
-    private double[][] createMelFilterBank(int numMelFilters, double sampleRate) {
-        return this.createFilterBank(numMelFilters, sampleRate, this::hzToMel, this::melToHz);
-    }
-
     private double hzToLog(double hz) {
         return Math.log10(Math.max(1, hz));
     }
@@ -72,10 +223,6 @@ public class ScaleFilter {
         return Math.pow(10, log);
     }
 
-    private double[][] createLogFilterBank(int numLogFilters, double sampleRate) {
-        return this.createFilterBank(numLogFilters, sampleRate, this::hzToLog, this::logToHz);
-    }
-
     private double hzToBark(double hz) {
         // https://www.mathworks.com/help/audio/ref/hz2bark.html#function_hz2bark_sep_mw_06bea6f7-353b-4479-a58d-ccadb90e44de;
         double bark = (26.81 * hz) / (1960 + hz) - 0.53;
@@ -99,10 +246,6 @@ public class ScaleFilter {
         return 1960 * ((bark + 0.53) / (26.28 - bark));
     }
 
-    private double[][] createBarkFilterBank(int numBarkFilters, double sampleRate) {
-        return this.createFilterBank(numBarkFilters, sampleRate, this::hzToBark, this::barkToHz);
-    }
-
     private double hzToErb(double hz) {
         // https://www.mathworks.com/help/audio/ref/hz2erb.html#function_hz2erb_sep_mw_06bea6f7-353b-4479-a58d-ccadb90e44de;
         return ERB_A * Math.log10(1 + hz * 0.00437);
@@ -113,10 +256,6 @@ public class ScaleFilter {
         return (Math.pow(10, erb / ERB_A) - 1) / 0.00437;
     }
 
-    private double[][] createErbFilterBank(int numErbFilters, double sampleRate) {
-        return this.createFilterBank(numErbFilters, sampleRate, this::hzToErb, this::erbToHz);
-    }
-
     public double hzToScale(double hz) {
         switch (this.scaleType) {
             case mel:
@@ -157,7 +296,42 @@ public class ScaleFilter {
     }
 
     public double[] applyFilterBank(double[] fftPoints) {
-        double[][] filterBank = this.createFilterBank(this.numFilters, this.sampleRate);
-        return this.applyFilterBank(fftPoints,filterBank);
+        return this.applyFilterBank(fftPoints, new double[this.numFilters]);
+    }
+
+    /**
+     * 应用滤波器组，结果写入out，不分配内存
+     * 
+     * @param fftPoints 频域数据
+     * @param out       输出数组，长度不小于滤波器数量
+     * @return out
+     */
+    public double[] applyFilterBank(double[] fftPoints, double[] out) {
+        return this.getFilterBank().apply(fftPoints, out);
+    }
+
+    /**
+     * float版本，用于float处理模式
+     */
+    public float[] applyFilterBank(float[] fftPoints, float[] out) {
+        return this.getFilterBank().apply(fftPoints, out);
+    }
+
+    /**
+     * 对功率谱应用滤波器组，结果也是功率谱，见FilterBank.applyPower
+     *
+     * @param powers 功率谱，可能被修改
+     * @param out    输出数组，长度不小于滤波器数量
+     * @return out
+     */
+    public double[] applyFilterBankPower(double[] powers, double[] out) {
+        return this.getFilterBank().applyPower(powers, out);
+    }
+
+    /**
+     * float版本的applyFilterBankPower
+     */
+    public float[] applyFilterBankPower(float[] powers, float[] out) {
+        return this.getFilterBank().applyPower(powers, out);
     }
 }
@@ -0,0 +1,167 @@
+package com.github.robinZhao.sound;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 按地图瓦片的方式绘制频谱图，适合很长的录音。
+ * 缩放级别zoom把全部时长等分为2^zoom个瓦片，x从0开始；每个瓦片是tileSize×tileSize的png，
+ * 纵轴是完整的频率范围，使用Spectrum的刻度(ScaleFilter)，颜色与drawSpctrogram相同。
+ * 瓦片在请求时才绘制，编码后的png保存在磁盘缓存中，总大小超过上限时删除最久没有访问的瓦片。
+ * 颜色表、rangeDB、gainDB、刻度类型、重采样方式、金字塔或者数据变化后，之前的瓦片全部失效。
+ * 一个缓存目录只能用于一个音频，可以在多个线程中同时获取瓦片
+ */
+public class SpectrogramTiles {
+    public static final int DEFAULT_TILE_SIZE = 256;
+    private final Spectrum spectrum;
+    private final TileCache cache;
+    private final int tileSize;
+    // 上次获取瓦片时的绘制参数，变化时删除旧的瓦片
+    private String fingerprint;
+
+    /**
+     * @param spectrum 已经计算完成并保留了数据的频谱
+     * @param cacheDir 瓦片缓存目录
+     * @param maxBytes 缓存的总大小上限
+     */
+    public SpectrogramTiles(Spectrum spectrum, File cacheDir, long maxBytes) {
+        this(spectrum, cacheDir, maxBytes, DEFAULT_TILE_SIZE);
+    }
+
+    public SpectrogramTiles(Spectrum spectrum, File cacheDir, long maxBytes, int tileSize) {
+        if (tileSize <= 0) {
+            throw new RuntimeException("瓦片大小" + tileSize + "错误");
+        }
+        this.spectrum = spectrum;
+        this.cache = new TileCache(cacheDir, maxBytes);
+        this.tileSize = tileSize;
+    }
+
+    public int getTileSize() {
+        return this.tileSize;
+    }
+
+    public TileCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * 最大缩放级别：每个瓦片对应的帧数第一次不超过tileSize的级别，更大的级别只会放大
+     */
+    public int getMaxZoom() {
+        int rows = this.frames();
+        int zoom = 0;
+        while ((long) this.tileSize << zoom < rows) {
+            zoom++;
+        }
+        return zoom;
+    }
+
+    /**
+     * 缩放级别zoom的瓦片个数
+     */
+    public int getTileCount(int zoom) {
+        return 1 << zoom;
+    }
+
+    /**
+     * 获取瓦片，缓存中没有时绘制
+     *
+     * @param zoom    缩放级别，0到getMaxZoom()
+     * @param x       瓦片序号，0到getTileCount(zoom)-1
+     * @param channel 声道，合并声道时只有0
+     * @return png数据
+     */
+    public byte[] getTile(int zoom, int x, int channel) {
+        SpectrumMatrix[] data = this.spectrum.getFrequenciesData();
+        if (null == data || data.length == 0 || data[0].isEmpty()) {
+            throw new RuntimeException("瓦片绘制错误，无数据");
+        }
+        if (channel < 0 || channel >= data.length) {
+            throw new RuntimeException("瓦片绘制错误，声道" + channel + "不存在");
+        }
+        if (zoom < 0 || zoom > this.getMaxZoom() || x < 0 || x >= this.getTileCount(zoom)) {
+            throw new RuntimeException("瓦片绘制错误，瓦片" + zoom + "/" + x + "不存在");
+        }
+        String fingerprint = this.invalidate();
+        String key = fingerprint + "/" + channel + "/" + zoom + "/" + x + ".png";
+        byte[] tile = this.cache.get(key);
+        if (null == tile) {
+            tile = this.render(zoom, x, channel);
+            this.cache.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * 绘制参数变化时删除旧的瓦片，返回当前参数的标识
+     */
+    private synchronized String invalidate() {
+        String fingerprint = this.fingerprint();
+        if (!fingerprint.equals(this.fingerprint)) {
+            this.cache.retain(key -> key.startsWith(fingerprint + "/"));
+            this.fingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 影响瓦片内容的参数的摘要
+     */
+    private String fingerprint() {
+        SpectrumPyramid[] pyramids = this.spectrum.getPyramids();
+        SpectrumMatrix[] data = this.spectrum.getFrequenciesData();
+        String params = "colorMap=" + Arrays.hashCode(this.spectrum.getColorMap().getArgbTable())
+                + ";rangeDB=" + this.spectrum.getRangeDB()
+                + ";gainDB=" + this.spectrum.getGainDB()
+                + ";scale=" + this.spectrum.scale.getScaleType()
+                + ";resample=" + this.spectrum.getTimeResample()
+                + ";pyramid=" + (null == pyramids ? "none" : pyramids[0].getPooling())
+                + ";channels=" + data.length
+                + ";frames=" + data[0].rows()
+                + ";bins=" + data[0].columns()
+                + ";start=" + this.spectrum.getStartTime()
+                + ";generation=" + this.spectrum.getDataGeneration()
+                + ";tileSize=" + this.tileSize;
+        return UUID.nameUUIDFromBytes(params.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private int frames() {
+        SpectrumMatrix[] data = this.spectrum.getFrequenciesData();
+        if (null == data || data.length == 0) {
+            throw new RuntimeException("瓦片绘制错误，无数据");
+        }
+        return data[0].rows();
+    }
+
+    private byte[] render(int zoom, int x, int channel) {
+        int rows = this.frames();
+        int count = this.getTileCount(zoom);
+        int fromFrame = (int) ((long) x * rows / count);
+        int toFrame = Math.max(fromFrame + 1, (int) ((long) (x + 1) * rows / count));
+        int[][] pixels = this.spectrum.colorIndexes(channel, fromFrame, toFrame, this.tileSize);
+        int bitmapHeight = pixels[0].length;
+        BufferedImage bitmap = new BufferedImage(this.tileSize, bitmapHeight, BufferedImage.TYPE_3BYTE_BGR);
+        this.spectrum.fillColorIndexes(bitmap, pixels);
+        BufferedImage tile = new BufferedImage(this.tileSize, this.tileSize, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics g = tile.getGraphics();
+        // 与drawSpctrogram相同，按刻度绘制完整的频率范围
+        g.drawImage(bitmap, 0, 0, this.tileSize, this.tileSize, 0, 0, this.tileSize, bitmapHeight, null);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(tile, "png", out);
+        } catch (IOException e) {
+            throw new RuntimeException("瓦片编码失败", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -7,14 +7,24 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
 import java.util.stream.DoubleStream;
 
@@ -28,6 +38,8 @@ import com.github.robinZhao.sound.transformer.WavesurferTransformer;
 public class Spectrum {
     private File file;
     private AudioInputStream audioInputStream;
+    // 内存映射读取wav，不为空时不使用audioInputStream
+    private MappedWavReader wavReader;
     private AudioFormat format;
     private int bufferSize = 512;
     private AudioDoubleConverter audioFloatConverter;
@@ -35,20 +47,60 @@ public class Spectrum {
     private int sampleSize;
     private long frameLength;
     private double duration;
+    // 计算区间[startFrame, endFrame)，endFrame小于0表示到结尾
+    private long startFrame = 0;
+    private long endFrame = -1;
     private double gainDB = 0;
     private double rangeDB = 140;
     private Color frontColor = new Color(215, 0, 194);
     private Color backColor = new Color(0, 0, 0);
     private Color fontColor = new Color(255, 255, 255);
-    private List<double[]>[] frequenciesData;
-    private List<double[]>[] amplitudeData;;
-    private List<Double> timeline = new ArrayList<>();
+    private SpectrumMatrix[] frequenciesData;
+    private SpectrumMatrix[] amplitudeData;
+    // 数据的版本，每次计算开始时加1，用于判断根据数据绘制的缓存是否失效
+    private volatile long dataGeneration;
+    // 每帧的时间，基本类型数组，按需扩容
+    private double[] timeline = new double[256];
+    private int timelineSize = 0;
+    // 频谱数据的存储精度
+    private SpectrumMatrix.Precision precision = SpectrumMatrix.Precision.DOUBLE;
     private List<NormalRange> normalRanges = new ArrayList<>();
     private int overlap = 0;
     private boolean mergeChannel = true;
+    // 并行计算时每个任务处理的帧数
+    private int segmentFrames = 64;
+    // 顺序计算时每批转换的帧数，小于等于1时逐帧转换
+    private int batchFrames = 32;
+    // 顺序计算时解码、fft、滤波、db全部使用float
+    private boolean floatPipeline = false;
+    // 幅度转换为db的方式
+    private DbConverter.Type dbType = DbConverter.Type.exact;
+    // 按dbType、rangeDB、gainDB在计算开始时创建
+    private DbConverter dbConverter;
+    // 转换器和滤波器组支持时输出功率谱，省去开方，db结果不变
+    private boolean powerSpectrum = false;
+    // overlap接近bufferSize时顺序计算使用滑动dft，默认不使用，保证与并行计算结果完全一致
+    private boolean slidingDft = false;
+    // 顺序计算使用滑动dft时每个声道的转换器，不使用时为null
+    private SpectrumTransformer[] channelTransformers;
+    private List<SpectrumListener> listeners = new ArrayList<>();
+    // 是否在内存中保留计算结果
+    private boolean retainData = true;
+    // 当前处理的帧的时间
+    private double currentTime;
+    // 每帧复用的db数组，保存时复制到frequenciesData
+    private double[] dbRowBuffer;
+    // 逐帧转换时按声道拆分或合并的结果，每帧复用
+    private double[][] stepChannelBuffer;
     private ColorMap colorMap = new ColorMap(ColorMap.Type.roseus);
+    // 绘图时频谱在时间轴上的重采样
+    private TimeResampler timeResampler = new TimeResampler(TimeResampler.Type.box);
+    // 每个声道的多分辨率金字塔，没有建立时为null
+    private SpectrumPyramid[] pyramids;
     ScaleFilter scale;
     SpectrumTransformer spectrumTransformer;
+    // 频域转换结果缓冲区，每帧复用
+    private double[] transformBuffer;
 
     public void addNormalRange(double minFreq, double maxFreq, double minDB, double maxDb) {
         if (this.mergeChannel) {
@@ -112,10 +164,30 @@ public class Spectrum {
      */
     public Spectrum(AudioInputStream audioInputStream, int bufferSize, ScaleFilter.Type scaleType,
             SpectrumTransformer transformer) {
+        this.audioInputStream = audioInputStream;
+        this.init(audioInputStream.getFormat(), bufferSize, scaleType, transformer);
+    }
+
+    /**
+     * 创建频谱对象，通过内存映射读取wav文件，适合大文件
+     * 
+     * @param wavReader   内存映射的wav文件
+     * @param bufferSize  每个分段多少帧
+     * @param scaleType   刻度类型 ScaleFilter.Type
+     * @param transformer 归一化的double类型时域信号转换为频域数据的转换器
+     */
+    public Spectrum(MappedWavReader wavReader, int bufferSize, ScaleFilter.Type scaleType,
+            SpectrumTransformer transformer) {
+        this.wavReader = wavReader;
+        this.file = wavReader.getFile();
+        this.init(wavReader.getFormat(), bufferSize, scaleType, transformer);
+    }
+
+    private void init(AudioFormat format, int bufferSize, ScaleFilter.Type scaleType,
+            SpectrumTransformer transformer) {
         this.bufferSize = bufferSize;
         try {
-            this.audioInputStream = audioInputStream;
-            this.format = audioInputStream.getFormat();
+            this.format = format;
             this.sampleSize = format.getSampleSizeInBits() / 8;
             this.channels = this.format.getFrameSize() / sampleSize;
             this.audioFloatConverter = AudioDoubleConverter.getConverter(this.format);
@@ -124,7 +196,6 @@ public class Spectrum {
         } catch (Exception e) {
             throw new RuntimeException("音频文件读取失败", e);
         }
-
     }
 
     public Spectrum(AudioInputStream audioInputStream, int bufferSize, ScaleFilter.Type scaleType) {
@@ -137,155 +208,832 @@ public class Spectrum {
 
     public void setSpectrumTransformer(SpectrumTransformer transformer) {
         this.spectrumTransformer = transformer;
+        this.transformBuffer = null;
+    }
+
+    /**
+     * 只计算[startTime, endTime)区间的频谱，直接定位到开始帧，之前的数据只读取第一帧需要的overlap帧，
+     * 结果与从头计算时同一位置的帧相同，timeline是相对音频开头的绝对时间
+     *
+     * @param startTime 开始时间，秒
+     * @param endTime   结束时间，秒，小于0表示到结尾
+     */
+    public void run(double startTime, double endTime) {
+        this.setTimeRange(startTime, endTime);
+        this.run();
+    }
+
+    /**
+     * 设置计算区间，run()和并行计算都只处理这个区间。
+     * 内存映射读取时可以随机访问，多次设置不同区间重复计算；音频流只能向后跳过，只能计算一次
+     *
+     * @param startTime 开始时间，秒
+     * @param endTime   结束时间，秒，小于0表示到结尾
+     */
+    public void setTimeRange(double startTime, double endTime) {
+        if (startTime < 0 || (endTime >= 0 && endTime < startTime)) {
+            throw new RuntimeException("时间区间错误[" + startTime + "," + endTime + ")");
+        }
+        // 取最近的帧，避免浮点误差多算或少算一帧
+        this.startFrame = Math.round(startTime * this.format.getSampleRate());
+        this.endFrame = endTime < 0 ? -1 : Math.round(endTime * this.format.getSampleRate());
+    }
+
+    /**
+     * 计算区间的开始时间，秒
+     */
+    public double getStartTime() {
+        return this.startFrame / this.format.getSampleRate();
     }
 
     public void run() {
-        if (this.mergeChannel) {
-            this.frequenciesData = new List[1];
-            this.amplitudeData = new List[1];
+        this.initData();
+        long totalBytes;
+        if (this.floatPipeline) {
+            totalBytes = this.readFloatFrames();
         } else {
-            this.frequenciesData = new List[this.channels];
-            this.amplitudeData = new List[this.channels];
+            this.channelTransformers = this.slidingTransformers();
+            try {
+                totalBytes = this.batchFrames > 1 ? this.readBatches() : this.readFrames(this::processStep);
+            } finally {
+                this.channelTransformers = null;
+            }
+        }
+        this.frameLength = totalBytes / this.format.getFrameSize();
+        this.duration = frameLength / this.format.getSampleRate();
+    }
+
+    /**
+     * 使用ForkJoinPool.commonPool()并行计算频谱，结果与run()完全一致(run()开启滑动dft时只差舍入误差)
+     *
+     * @param transformerFactory 转换器工厂，每个工作线程使用单独的转换器
+     */
+    public void runParallel(Supplier<SpectrumTransformer> transformerFactory) {
+        this.run(ForkJoinPool.commonPool(), transformerFactory);
+    }
+
+    /**
+     * 并行计算频谱，结果与run()完全一致(run()开启滑动dft时只差舍入误差，见setSlidingDft)。
+     * 音频读取和分段组装(包括overlap)在当前线程按顺序进行，组装好的分段每segmentFrames帧一组提交给executor，
+     * 声道拆分/合并、频域转换、滤波和db计算在工作线程完成，最后按顺序合并到frequenciesData和timeline
+     *
+     * @param executor           执行计算的线程池
+     * @param transformerFactory 转换器工厂，转换器内部有缓冲区不能在线程间共享，每个工作线程使用单独的转换器
+     */
+    public void run(ExecutorService executor, Supplier<SpectrumTransformer> transformerFactory) {
+        this.initData();
+        if (null != this.scale) {
+            // 提前构建滤波器组，工作线程只读
+            this.scale.getFilterBank();
+        }
+        // 限制未合并的分段数量，保证不保留数据时内存有上限
+        int maxPending = Runtime.getRuntime().availableProcessors() * 2;
+        Queue<SpectrumTransformer> transformers = new ConcurrentLinkedQueue<>();
+        Deque<Future<SegmentResult>> pending = new ArrayDeque<>();
+        List<double[]> segment = new ArrayList<>();
+        List<Double> segmentTimes = new ArrayList<>();
+        long totalBytes;
+        try {
+            totalBytes = this.readFrames((audioDoubleBuffer, bytesRead, time) -> {
+                segment.add(audioDoubleBuffer.clone());
+                segmentTimes.add(time);
+                if (segment.size() >= this.segmentFrames) {
+                    pending.add(this.submitSegment(executor, transformers, transformerFactory, segment, segmentTimes));
+                    segment.clear();
+                    segmentTimes.clear();
+                    while (!pending.isEmpty() && (pending.peek().isDone() || pending.size() > maxPending)) {
+                        this.collectSegment(pending.poll());
+                    }
+                }
+            });
+            if (!segment.isEmpty()) {
+                pending.add(this.submitSegment(executor, transformers, transformerFactory, segment, segmentTimes));
+            }
+            while (!pending.isEmpty()) {
+                this.collectSegment(pending.poll());
+            }
+        } catch (RuntimeException | Error e) {
+            // 读取或某个分段失败时取消其余分段，不再占用调用方的线程池和分段数据
+            for (Future<SegmentResult> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+            throw e;
+        }
+        this.frameLength = totalBytes / this.format.getFrameSize();
+        this.duration = frameLength / this.format.getSampleRate();
+    }
+
+    public void setSegmentFrames(int segmentFrames) {
+        this.segmentFrames = segmentFrames;
+    }
+
+    /**
+     * 设置顺序计算时每批转换的帧数，默认32，小于等于1时逐帧转换
+     */
+    public void setBatchFrames(int batchFrames) {
+        this.batchFrames = batchFrames;
+    }
+
+    /**
+     * 设置颜色表，默认roseus。可以用ColorMap.load读取自定义颜色表，例如viridis、magma
+     */
+    public void setColorMap(ColorMap colorMap) {
+        if (null == colorMap) {
+            throw new RuntimeException("colorMap不能为null");
+        }
+        this.colorMap = colorMap;
+    }
+
+    public ColorMap getColorMap() {
+        return this.colorMap;
+    }
+
+    /**
+     * 设置绘图时频谱在时间轴上重采样的方式，默认box。
+     * 图片宽度小于帧数时总是按重叠比例加权平均；宽度大于帧数时linear、cubic在相邻帧之间插值，box相当于最近邻
+     */
+    public void setTimeResample(TimeResampler.Type type) {
+        this.timeResampler = new TimeResampler(type);
+    }
+
+    public TimeResampler.Type getTimeResample() {
+        return this.timeResampler.getType();
+    }
+
+    /**
+     * 设置颜色映射的db范围，默认140，-rangeDB到0db对应颜色序号0到255。
+     * DbConverter.Type.colorIndex和金字塔使用计算或建立时的值，修改后需要重新计算或建立
+     */
+    public void setRangeDB(double rangeDB) {
+        if (rangeDB <= 0) {
+            throw new RuntimeException("rangeDB" + rangeDB + "错误");
+        }
+        this.rangeDB = rangeDB;
+    }
+
+    public double getRangeDB() {
+        return this.rangeDB;
+    }
+
+    /**
+     * 设置db的增益，默认0，下次计算时生效
+     */
+    public void setGainDB(double gainDB) {
+        this.gainDB = gainDB;
+    }
+
+    public double getGainDB() {
+        return this.gainDB;
+    }
+
+    /**
+     * 设置幅度转换为db的方式，默认exact。
+     * colorIndex只保留颜色映射需要的精度，使用计算开始时的rangeDB和gainDB，之后修改不会重新计算
+     */
+    public void setDbType(DbConverter.Type dbType) {
+        this.dbType = dbType;
+    }
+
+    /**
+     * 设置是否使用功率谱计算db，默认不使用。
+     * 使用时转换器直接输出幅度的平方，db = 10 * log10(功率)，省去每个点的开方，db与幅度计算的结果只差舍入误差。
+     * 转换器的isPowerNative()为false，或者刻度需要在两个fft点之间插值(linear以外的刻度)时不起作用，
+     * 插值要先开方，功率谱没有收益
+     */
+    public void setPowerSpectrum(boolean powerSpectrum) {
+        this.powerSpectrum = powerSpectrum;
+    }
+
+    /**
+     * 是否使用功率谱计算
+     */
+    private boolean usePower(SpectrumTransformer transformer) {
+        return this.powerSpectrum && transformer.isPowerNative()
+                && (null == this.scale || this.scale.getFilterBank().isSingleBin());
+    }
+
+    /**
+     * 设置run()是否在overlap接近bufferSize时使用滑动dft，默认不使用。
+     * 相邻两帧只相差hop = bufferSize - overlap个样本，滑动dft按移出和移入的样本递推更新频谱，每帧计算量为O(bufferSize * hop)，
+     * 并定期用fft重新计算以消除累积误差，结果与转换器只差舍入误差，因此开启后run()与并行计算的结果不再逐位相同。
+     * 转换器的sliding(hop)返回null(窗函数不支持或者hop太大不会更快)时不起作用；float处理和并行计算不使用
+     */
+    public void setSlidingDft(boolean slidingDft) {
+        this.slidingDft = slidingDft;
+    }
+
+    /**
+     * 每个声道一个滑动dft转换器，不使用滑动dft时返回null
+     */
+    private SpectrumTransformer[] slidingTransformers() {
+        if (!this.slidingDft || this.overlap <= 0) {
+            return null;
+        }
+        SpectrumTransformer[] transformers = new SpectrumTransformer[this.frequenciesData.length];
+        for (int c = 0; c < transformers.length; c++) {
+            transformers[c] = this.spectrumTransformer.sliding(this.bufferSize - this.overlap);
+            if (null == transformers[c]) {
+                return null;
+            }
+        }
+        return transformers;
+    }
+
+    /**
+     * 设置run()是否使用float处理，默认不使用。
+     * 使用时解码、分段、滤波和db计算都是float，数据按FLOAT存储(设置为DB16时仍用DB16)，存储减半，
+     * db误差远小于颜色映射的量化间隔(rangeDB / 255)。
+     * fft只有Radix4FFTTransformer、DspFFTTranformer用float计算，其他转换器每帧转换为double计算再转回float，
+     * 不分配内存，但fft部分的内存带宽与double处理相同。并行计算不受影响，仍使用double
+     */
+    public void setFloatPipeline(boolean floatPipeline) {
+        this.floatPipeline = floatPipeline;
+    }
+
+    /**
+     * 按批读取并转换，每批batchFrames帧按声道连续存放，调用transformBatch一次转换，结果与逐帧转换相同
+     *
+     * @return 读取的总字节数
+     */
+    private long readBatches() {
+        int dataChannels = this.frequenciesData.length;
+        double[][] input = new double[dataChannels][this.batchFrames * this.bufferSize];
+        double[][] output = new double[dataChannels][this.batchFrames * (this.bufferSize / 2)];
+        double[] times = new double[this.batchFrames];
+        int[] count = { 0 };
+        long totalBytes = this.readFrames((audioDoubleBuffer, bytesRead, time) -> {
+            int offset = count[0] * this.bufferSize;
+            if (this.mergeChannel) {
+                this.channelMerge(audioDoubleBuffer, input[0], offset);
+            } else {
+                this.channelSplit(audioDoubleBuffer, input, offset);
+            }
+            times[count[0]++] = time;
+            if (count[0] == this.batchFrames) {
+                this.processBatch(input, output, times, count[0]);
+                count[0] = 0;
+            }
+        });
+        if (count[0] > 0) {
+            this.processBatch(input, output, times, count[0]);
+        }
+        return totalBytes;
+    }
+
+    private void processBatch(double[][] input, double[][] output, double[] times, int count) {
+        int half = this.bufferSize / 2;
+        if (null == this.transformBuffer) {
+            this.transformBuffer = new double[half];
+        }
+        if (null == this.dbRowBuffer || this.dbRowBuffer.length != this.dbRowLength()) {
+            this.dbRowBuffer = new double[this.dbRowLength()];
+        }
+        boolean power = this.usePower(this.spectrumTransformer);
+        for (int c = 0; c < input.length; c++) {
+            SpectrumTransformer transformer = null != this.channelTransformers ? this.channelTransformers[c]
+                    : this.spectrumTransformer;
+            if (power) {
+                transformer.transformPowerBatch(input[c], this.bufferSize, count, output[c]);
+            } else {
+                transformer.transformBatch(input[c], this.bufferSize, count, output[c]);
+            }
+        }
+        double[] array = this.dbRowBuffer;
+        for (int k = 0; k < count; k++) {
+            if (this.retainData) {
+                this.addTime(times[k]);
+            }
+            this.currentTime = times[k];
+            for (int c = 0; c < input.length; c++) {
+                System.arraycopy(output[c], k * half, this.transformBuffer, 0, half);
+                this.toDbArray(this.transformBuffer, array, power);
+                if (this.retainData) {
+                    this.amplitudeData[c].addRow(input[c], k * this.bufferSize);
+                    this.frequenciesData[c].addRow(array);
+                }
+                this.fireFrame(c, this.currentTime, array);
+            }
+        }
+    }
+
+    private static class SegmentResult {
+        double[] times;
+        // [帧][声道]
+        double[][][] amplitudes;
+        double[][][] frequencies;
+    }
+
+    private Future<SegmentResult> submitSegment(ExecutorService executor, Queue<SpectrumTransformer> transformers,
+            Supplier<SpectrumTransformer> transformerFactory, List<double[]> segment, List<Double> segmentTimes) {
+        double[][] frames = segment.toArray(new double[segment.size()][]);
+        double[] times = segmentTimes.stream().mapToDouble(Double::doubleValue).toArray();
+        return executor.submit(() -> {
+            SpectrumTransformer transformer = transformers.poll();
+            if (null == transformer) {
+                transformer = transformerFactory.get();
+            }
+            double[] transformBuffer = new double[this.bufferSize / 2];
+            SegmentResult result = new SegmentResult();
+            result.times = times;
+            result.amplitudes = new double[frames.length][][];
+            result.frequencies = new double[frames.length][this.frequenciesData.length][];
+            for (int i = 0; i < frames.length; i++) {
+                double[][] channelDoubles = this.mergeChannel ? new double[][] { channelMerge(frames[i]) }
+                        : channelSplit(frames[i]);
+                result.amplitudes[i] = channelDoubles;
+                for (int c = 0; c < channelDoubles.length; c++) {
+                    result.frequencies[i][c] = this.toDbArray(transformer, channelDoubles[c], transformBuffer,
+                            new double[this.dbRowLength()]);
+                }
+            }
+            transformers.offer(transformer);
+            return result;
+        });
+    }
+
+    /**
+     * 等待分段计算完成，按顺序保存结果并通知监听器
+     */
+    private void collectSegment(Future<SegmentResult> future) {
+        SegmentResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("频谱计算被中断", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("频谱计算失败", e.getCause());
+        }
+        for (int i = 0; i < result.frequencies.length; i++) {
+            if (this.retainData) {
+                this.addTime(result.times[i]);
+            }
+            for (int c = 0; c < result.frequencies[i].length; c++) {
+                if (this.retainData) {
+                    this.amplitudeData[c].addRow(result.amplitudes[i][c]);
+                    this.frequenciesData[c].addRow(result.frequencies[i][c]);
+                }
+                this.fireFrame(c, result.times[i], result.frequencies[i][c]);
+            }
+        }
+    }
+
+    /**
+     * 添加频谱帧监听器，计算过程中每帧按时间顺序通知，可以在计算的同时做校验、绘制、导出
+     */
+    public void addSpectrumListener(SpectrumListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeSpectrumListener(SpectrumListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * 是否在内存中保留计算结果(frequenciesData、amplitudeData、timeline)，默认保留。
+     * 不保留时内存占用与音频长度无关，结果只能通过SpectrumListener获取
+     */
+    public void setRetainData(boolean retainData) {
+        this.retainData = retainData;
+    }
+
+    private void fireFrame(int channelIdx, double time, double[] dbRow) {
+        for (int i = 0; i < this.listeners.size(); i++) {
+            this.listeners.get(i).onFrame(channelIdx, time, dbRow);
         }
-        for (int i = 0; i < this.frequenciesData.length; i++) {
-            this.frequenciesData[i] = new ArrayList<>();
-            this.amplitudeData[i] = new ArrayList<>();
+    }
+
+    private int dbRowLength() {
+        return null != this.scale ? this.scale.getNumFilters() : this.bufferSize / 2;
+    }
+
+    private void initData() {
+        int dataChannels = this.mergeChannel ? 1 : this.channels;
+        this.frequenciesData = new SpectrumMatrix[dataChannels];
+        this.pyramids = null;
+        this.dataGeneration++;
+        this.amplitudeData = new SpectrumMatrix[dataChannels];
+        // 时域数据不是db值，不能用DB16存储
+        SpectrumMatrix.Precision amplitudePrecision = this.precision == SpectrumMatrix.Precision.DOUBLE
+                && !this.floatPipeline
+                        ? SpectrumMatrix.Precision.DOUBLE
+                        : SpectrumMatrix.Precision.FLOAT;
+        // float处理时结果本身只有float精度
+        SpectrumMatrix.Precision frequencyPrecision = this.precision == SpectrumMatrix.Precision.DOUBLE
+                && this.floatPipeline
+                        ? SpectrumMatrix.Precision.FLOAT
+                        : this.precision;
+        for (int i = 0; i < dataChannels; i++) {
+            this.frequenciesData[i] = SpectrumMatrix.create(this.dbRowLength(), frequencyPrecision);
+            this.amplitudeData[i] = SpectrumMatrix.create(this.bufferSize, amplitudePrecision);
         }
+        this.timelineSize = 0;
+        this.dbConverter = new DbConverter(this.dbType, this.rangeDB, this.gainDB);
         if (overlap >= bufferSize) {
             throw new RuntimeException("overlap过大,overlap必须小于bufferSize");
         }
+    }
+
+    private interface FrameConsumer {
+        void accept(double[] audioDoubleBuffer, int bytesRead, double time);
+    }
+
+    /**
+     * 按bufferSize和overlap分段读取音频，每段交给consumer处理，consumer不能持有audioDoubleBuffer的引用
+     *
+     * @return 读取的总字节数
+     */
+    private long readFrames(FrameConsumer consumer) {
         long totalBytes = 0;
         int onceFrameCount = this.bufferSize - this.overlap;
         int onceSampleCount = onceFrameCount * channels;
         int onceReadBytes = onceFrameCount * this.format.getFrameSize();
         int bytesRead = 0;
+        long maxBytes = this.endFrame < 0 ? Long.MAX_VALUE
+                : (this.endFrame - this.startFrame) * this.format.getFrameSize();
         byte[] audioByteBuffer = new byte[onceReadBytes];
         double[] audioDoubleBuffer = new double[bufferSize * channels];
         double[] tempDoubleBuffer = new double[onceSampleCount];
+        // 区间开始前的帧放在结尾，第一次前移后成为第一帧的前overlap帧
+        ByteBuffer leadFrames = this.readLeadFrames();
+        int leadSamples = leadFrames.remaining() / this.sampleSize;
+        if (leadSamples > 0) {
+            audioFloatConverter.toDoubleArray(leadFrames, 0, audioDoubleBuffer, audioDoubleBuffer.length - leadSamples,
+                    leadSamples);
+        }
         while (true) {
             try {
                 // 读取readBytes个字节，追加到结尾
-                bytesRead = this.audioInputStream.read(audioByteBuffer);
-                if (bytesRead == -1) {
+                int readBytes = (int) Math.min(onceReadBytes, maxBytes - totalBytes);
+                if (readBytes <= 0) {
                     break;
                 }
+                if (null != this.wavReader) {
+                    ByteBuffer frames = this.wavReader.getFrames(
+                            this.startFrame + totalBytes / this.format.getFrameSize(),
+                            readBytes / this.format.getFrameSize());
+                    bytesRead = frames.remaining();
+                    if (bytesRead == 0) {
+                        break;
+                    }
+                    audioFloatConverter.toDoubleArray(frames, 0, tempDoubleBuffer, 0, bytesRead / this.sampleSize);
+                } else {
+                    bytesRead = this.audioInputStream.read(audioByteBuffer, 0, readBytes);
+                    if (bytesRead == -1) {
+                        break;
+                    }
+                    audioFloatConverter.toDoubleArray(audioByteBuffer, tempDoubleBuffer);
+                }
                 totalBytes += bytesRead;
-                audioFloatConverter.toDoubleArray(audioByteBuffer, tempDoubleBuffer);
                 // 已读采样数小于一次需要读取的样本数，补0
                 int readSampleCount = bytesRead / this.sampleSize;
                 while (readSampleCount < onceSampleCount) {
                     tempDoubleBuffer[readSampleCount++] = 0.0d;
                 }
-                // 把后overlap个元素往前移到开头
-                System.arraycopy(audioDoubleBuffer, onceSampleCount, audioDoubleBuffer, 0, overlap);
-                System.arraycopy(tempDoubleBuffer, 0, audioDoubleBuffer, overlap, onceSampleCount);
-                this.processStep(audioDoubleBuffer, bytesRead,
-                        totalBytes / this.format.getFrameSize() / this.format.getSampleRate());
+                // 把后overlap帧的样本往前移到开头
+                System.arraycopy(audioDoubleBuffer, onceSampleCount, audioDoubleBuffer, 0, overlap * channels);
+                System.arraycopy(tempDoubleBuffer, 0, audioDoubleBuffer, overlap * channels, onceSampleCount);
+                consumer.accept(audioDoubleBuffer, bytesRead,
+                        (this.startFrame + totalBytes / this.format.getFrameSize()) / this.format.getSampleRate());
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
         }
-        this.frameLength = totalBytes / this.format.getFrameSize();
-        this.duration = frameLength / this.format.getSampleRate();
+        return totalBytes;
     }
 
-    public double[][] channelSplit(double[] audioDoubleBuffer) {
-        double[][] channelDoubles = new double[channels][bufferSize];
-        for (int i = 0; i < bufferSize; i++) {
-            for (int j = 0; j < channels; j++) {
-                channelDoubles[j][i] = audioDoubleBuffer[channels * i + j];
+    /**
+     * float版本的readFrames，分段后直接计算，不经过double
+     *
+     * @return 读取的总字节数
+     */
+    private long readFloatFrames() {
+        long totalBytes = 0;
+        int onceFrameCount = this.bufferSize - this.overlap;
+        int onceSampleCount = onceFrameCount * channels;
+        int onceReadBytes = onceFrameCount * this.format.getFrameSize();
+        int bytesRead = 0;
+        long maxBytes = this.endFrame < 0 ? Long.MAX_VALUE
+                : (this.endFrame - this.startFrame) * this.format.getFrameSize();
+        byte[] audioByteBuffer = new byte[onceReadBytes];
+        float[] audioFloatBuffer = new float[bufferSize * channels];
+        float[] tempFloatBuffer = new float[onceSampleCount];
+        ByteBuffer leadFrames = this.readLeadFrames();
+        int leadSamples = leadFrames.remaining() / this.sampleSize;
+        if (leadSamples > 0) {
+            audioFloatConverter.toFloatArray(leadFrames, 0, audioFloatBuffer, audioFloatBuffer.length - leadSamples,
+                    leadSamples);
+        }
+        FloatFrameBuffers buffers = new FloatFrameBuffers();
+        while (true) {
+            try {
+                int readBytes = (int) Math.min(onceReadBytes, maxBytes - totalBytes);
+                if (readBytes <= 0) {
+                    break;
+                }
+                if (null != this.wavReader) {
+                    ByteBuffer frames = this.wavReader.getFrames(
+                            this.startFrame + totalBytes / this.format.getFrameSize(),
+                            readBytes / this.format.getFrameSize());
+                    bytesRead = frames.remaining();
+                    if (bytesRead == 0) {
+                        break;
+                    }
+                    audioFloatConverter.toFloatArray(frames, 0, tempFloatBuffer, 0, bytesRead / this.sampleSize);
+                } else {
+                    bytesRead = this.audioInputStream.read(audioByteBuffer, 0, readBytes);
+                    if (bytesRead == -1) {
+                        break;
+                    }
+                    audioFloatConverter.toFloatArray(audioByteBuffer, tempFloatBuffer);
+                }
+                totalBytes += bytesRead;
+                int readSampleCount = bytesRead / this.sampleSize;
+                while (readSampleCount < onceSampleCount) {
+                    tempFloatBuffer[readSampleCount++] = 0f;
+                }
+                System.arraycopy(audioFloatBuffer, onceSampleCount, audioFloatBuffer, 0, overlap * channels);
+                System.arraycopy(tempFloatBuffer, 0, audioFloatBuffer, overlap * channels, onceSampleCount);
+                this.processFloatStep(audioFloatBuffer, buffers,
+                        (this.startFrame + totalBytes / this.format.getFrameSize()) / this.format.getSampleRate());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
             }
         }
-        return channelDoubles;
+        return totalBytes;
     }
 
-    public double[] channelMerge(double[] audioDoubleBuffer) {
-        double[] channelDoubles = new double[bufferSize];
-        for (int i = 0; i < bufferSize; i++) {
-            double total = 0;
-            for (int j = 0; j < channels; j++) {
-                total += audioDoubleBuffer[channels * i + j];
+    /**
+     * float处理每帧复用的缓冲区
+     */
+    private class FloatFrameBuffers {
+        final float[][] channels = new float[mergeChannel ? 1 : Spectrum.this.channels][bufferSize];
+        final float[] amplitudes = new float[bufferSize / 2];
+        final float[] row = new float[dbRowLength()];
+        // 通知监听器时转换为double
+        final double[] doubleRow = new double[dbRowLength()];
+    }
+
+    private void processFloatStep(float[] audioFloatBuffer, FloatFrameBuffers buffers, double time) {
+        if (this.retainData) {
+            this.addTime(time);
+        }
+        this.currentTime = time;
+        float[][] channelFloats = buffers.channels;
+        if (this.mergeChannel) {
+            Kernels.get().channelMerge(audioFloatBuffer, channels, channelFloats[0], 0, bufferSize);
+        } else {
+            Kernels.get().channelSplit(audioFloatBuffer, channels, channelFloats, 0, bufferSize);
+        }
+        float[] row = buffers.row;
+        boolean power = this.usePower(this.spectrumTransformer);
+        for (int c = 0; c < channelFloats.length; c++) {
+            float[] amplitudes = power ? this.spectrumTransformer.transformPower(channelFloats[c], buffers.amplitudes)
+                    : this.spectrumTransformer.transform(channelFloats[c], buffers.amplitudes);
+            this.toDbArray(amplitudes, row, power);
+            if (this.retainData) {
+                this.amplitudeData[c].addRow(channelFloats[c], 0);
+                this.frequenciesData[c].addRow(row, 0);
+            }
+            if (!this.listeners.isEmpty()) {
+                for (int j = 0; j < row.length; j++) {
+                    buffers.doubleRow[j] = row[j];
+                }
+                this.fireFrame(c, time, buffers.doubleRow);
             }
-            channelDoubles[i] = total / channels;
         }
-        return channelDoubles;
     }
 
-    private int[][] convertToColorMap(List<double[]> oldMatrix, int columnsNumber) {
-        // db转颜色，按比例转为0-255的颜色序号
-        double[][] colorMatrix = new double[oldMatrix.size()][oldMatrix.get(0).length];
-        for (int i = 0; i < oldMatrix.size(); i++) {
-            for (int j = 0; j < oldMatrix.get(i).length; j++) {
-                double valueDB = oldMatrix.get(i)[j];
-                if (valueDB < -this.rangeDB) {
-                    valueDB = -this.rangeDB;
-                } else if (valueDB > 0) {
-                    valueDB = 0;
+    /**
+     * float版本的toDbArray
+     */
+    private float[] toDbArray(float[] amplitudes, float[] array, boolean power) {
+        if (power) {
+            if (null != this.scale) {
+                this.scale.applyFilterBankPower(amplitudes, array);
+            } else {
+                System.arraycopy(amplitudes, 0, array, 0, amplitudes.length);
+            }
+            return this.dbConverter.powerToDb(array, array);
+        }
+        if (null != this.scale) {
+            this.scale.applyFilterBank(amplitudes, array);
+        } else {
+            System.arraycopy(amplitudes, 0, array, 0, amplitudes.length);
+        }
+        return this.dbConverter.toDb(array, array);
+    }
+
+    /**
+     * 读取计算区间开始前的overlap帧，第一帧与从头计算时同一位置的帧相同，区间从中间开始时左边缘不会补0。
+     * 开始帧之前不足overlap帧时只读取实际有的帧，其余仍补0。音频流读取后定位到开始帧
+     *
+     * @return 读取的帧，position为0
+     */
+    private ByteBuffer readLeadFrames() {
+        int leadFrames = (int) Math.min(this.overlap, this.startFrame);
+        if (null != this.wavReader) {
+            return this.wavReader.getFrames(this.startFrame - leadFrames, leadFrames);
+        }
+        this.skipFrames(this.startFrame - leadFrames);
+        byte[] bytes = new byte[leadFrames * this.format.getFrameSize()];
+        int bytesRead = 0;
+        try {
+            while (bytesRead < bytes.length) {
+                int read = this.audioInputStream.read(bytes, bytesRead, bytes.length - bytesRead);
+                if (read <= 0) {
+                    break;
                 }
-                colorMatrix[i][j] = valueDB / this.rangeDB * 255 + 255;
-            }
-        }
-        //
-        double oldPiece = 1d / colorMatrix.length;
-        double newPiece = 1d / columnsNumber;
-        int oldColumnsNumber = colorMatrix[0].length;
-        int[][] newMatrix = new int[columnsNumber][oldColumnsNumber];
-        for (int i = 0; i < columnsNumber; i++) {
-            double[] column = new double[oldColumnsNumber];
-
-            for (int j = 0; j < colorMatrix.length; j++) {
-                double oldStart = j * oldPiece;
-                double oldEnd = oldStart + oldPiece;
-                double newStart = i * newPiece;
-                double newEnd = newStart + newPiece;
-                double overlap = Math.max(0d, Math.min(oldEnd, newEnd) - Math.max(oldStart, newStart));
-
-                /* eslint-disable max-depth */
-                if (overlap > 0) {
-                    for (int k = 0; k < oldColumnsNumber; k++) {
-                        column[k] += (overlap / newPiece) * colorMatrix[j][k];
-                    }
+                bytesRead += read;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("音频流读取失败", e);
+        }
+        return ByteBuffer.wrap(bytes, 0, bytesRead - bytesRead % this.format.getFrameSize());
+    }
+
+    /**
+     * 音频流向后跳过frames帧，底层是文件时直接定位
+     */
+    private void skipFrames(long frames) {
+        long remaining = frames * this.format.getFrameSize();
+        try {
+            while (remaining > 0) {
+                long skipped = this.audioInputStream.skip(remaining);
+                if (skipped <= 0) {
+                    break;
                 }
-                /* eslint-enable max-depth */
+                remaining -= skipped;
             }
+        } catch (IOException e) {
+            throw new RuntimeException("音频流定位失败", e);
+        }
+    }
 
-            int[] intColumn = new int[oldColumnsNumber];
+    public double[][] channelSplit(double[] audioDoubleBuffer) {
+        double[][] channelDoubles = new double[channels][bufferSize];
+        this.channelSplit(audioDoubleBuffer, channelDoubles, 0);
+        return channelDoubles;
+    }
 
-            for (int m = 0; m < oldColumnsNumber; m++) {
-                intColumn[m] = (int) Math.round(column[m]);
-            }
-            newMatrix[i] = intColumn;
+    /**
+     * 按声道拆分，每个声道写入out[声道]的offset位置
+     */
+    private void channelSplit(double[] audioDoubleBuffer, double[][] out, int offset) {
+        Kernels.get().channelSplit(audioDoubleBuffer, channels, out, offset, bufferSize);
+    }
+
+    public double[] channelMerge(double[] audioDoubleBuffer) {
+        double[] channelDoubles = new double[bufferSize];
+        this.channelMerge(audioDoubleBuffer, channelDoubles, 0);
+        return channelDoubles;
+    }
+
+    /**
+     * 各声道取平均，写入out的offset位置
+     */
+    private void channelMerge(double[] audioDoubleBuffer, double[] out, int offset) {
+        Kernels.get().channelMerge(audioDoubleBuffer, channels, out, offset, bufferSize);
+    }
+
+    /**
+     * 为每个声道建立时间轴上的多分辨率金字塔，之后绘制任意时间区间和宽度时从最接近的层计算，
+     * 耗时与图片宽度成正比。重新计算后失效，需要重新建立
+     */
+    public void buildPyramid(SpectrumPyramid.Pooling pooling) {
+        if (null == this.frequenciesData || this.frequenciesData.length == 0
+                || this.frequenciesData[0].isEmpty()) {
+            throw new RuntimeException("金字塔创建错误，无数据");
+        }
+        SpectrumPyramid[] pyramids = new SpectrumPyramid[this.frequenciesData.length];
+        for (int c = 0; c < pyramids.length; c++) {
+            pyramids[c] = new SpectrumPyramid(this.frequenciesData[c], pooling, this.rangeDB, this.precision);
+        }
+        this.pyramids = pyramids;
+    }
+
+    public void clearPyramid() {
+        this.pyramids = null;
+    }
+
+    /**
+     * 每个声道的金字塔，没有建立时返回null
+     */
+    public SpectrumPyramid[] getPyramids() {
+        return this.pyramids;
+    }
+
+    /**
+     * 第c声道[fromFrame, toFrame)帧的颜色序号，重采样为width列。金字塔可用时从最接近的层计算
+     */
+    int[][] colorIndexes(int c, int fromFrame, int toFrame, int width) {
+        SpectrumPyramid pyramid = null != this.pyramids ? this.pyramids[c] : null;
+        if (null == pyramid || pyramid.getRangeDB() != this.rangeDB
+                || pyramid.getFrames() != this.frequenciesData[c].rows()) {
+            return this.convertToColorMap(this.frequenciesData[c], fromFrame, toFrame, width);
         }
-        return newMatrix;
+        int level = pyramid.selectLevel(fromFrame, toFrame, width);
+        return this.convertToColorMap(pyramid.getLevel(level), pyramid.fromRow(level, fromFrame),
+                pyramid.toRow(level, toFrame), width);
+    }
+
+    /**
+     * [fromRow, toRow)帧的db转为颜色序号，并在时间轴上重采样为columnsNumber列
+     *
+     * @return [列][频率点]
+     */
+    private int[][] convertToColorMap(SpectrumMatrix oldMatrix, int fromRow, int toRow, int columnsNumber) {
+        double rangeDB = this.rangeDB;
+        return this.timeResampler.resample((row, out) -> {
+            // db转颜色，按比例转为0-255的颜色序号
+            oldMatrix.getRow(fromRow + row, out);
+            for (int j = 0; j < out.length; j++) {
+                double valueDB = out[j];
+                if (valueDB < -rangeDB) {
+                    valueDB = -rangeDB;
+                } else if (valueDB > 0) {
+                    valueDB = 0;
+                }
+                out[j] = valueDB / rangeDB * 255 + 255;
+            }
+        }, toRow - fromRow, oldMatrix.columns(), columnsNumber);
     }
 
     public void processStep(double[] audioDoubleBuffer, int framesRead, double time) {
-        this.timeline.add(time);
+        if (this.retainData) {
+            this.addTime(time);
+        }
+        this.currentTime = time;
+        int dataChannels = this.mergeChannel ? 1 : this.channels;
+        if (null == this.stepChannelBuffer || this.stepChannelBuffer.length != dataChannels) {
+            this.stepChannelBuffer = new double[dataChannels][this.bufferSize];
+        }
+        double[][] channelDoubles = this.stepChannelBuffer;
         if (this.mergeChannel) {
-            double[] channelDoubles = channelMerge(audioDoubleBuffer);
-            this.processStepChannel(channelDoubles, 0, framesRead);
+            this.channelMerge(audioDoubleBuffer, channelDoubles[0], 0);
         } else {
-            double[][] channelDoubles = channelSplit(audioDoubleBuffer);
-            for (int i = 0; i < channels; i++) {
-                this.processStepChannel(channelDoubles[i], i, framesRead);
-            }
+            this.channelSplit(audioDoubleBuffer, channelDoubles, 0);
+        }
+        for (int i = 0; i < dataChannels; i++) {
+            this.processStepChannel(channelDoubles[i], i, framesRead);
         }
     }
 
     public void processStepChannel(double[] audioDoubleBuffer, int channelIdx, int framesRead) {
-        double[] amplitudes = this.spectrumTransformer.transform(audioDoubleBuffer);
-        if (null != this.scale) {
-            amplitudes = this.scale.applyFilterBank(amplitudes);
+        if (null == this.transformBuffer) {
+            this.transformBuffer = new double[this.bufferSize / 2];
+        }
+        if (null == this.dbRowBuffer || this.dbRowBuffer.length != this.dbRowLength()) {
+            this.dbRowBuffer = new double[this.dbRowLength()];
+        }
+        double[] array = this.dbRowBuffer;
+        SpectrumTransformer transformer = null != this.channelTransformers ? this.channelTransformers[channelIdx]
+                : this.spectrumTransformer;
+        this.toDbArray(transformer, audioDoubleBuffer, this.transformBuffer, array);
+        if (this.retainData) {
+            this.amplitudeData[channelIdx].addRow(audioDoubleBuffer);
+            this.frequenciesData[channelIdx].addRow(array);
+        }
+        this.fireFrame(channelIdx, this.currentTime, array);
+    }
+
+    /**
+     * 时域信号转换为按刻度滤波后的db数组
+     * 
+     * @param array 输出数组，长度为dbRowLength()
+     */
+    private double[] toDbArray(SpectrumTransformer transformer, double[] audioDoubleBuffer,
+            double[] transformBuffer, double[] array) {
+        if (this.usePower(transformer)) {
+            return this.toDbArray(transformer.transformPower(audioDoubleBuffer, transformBuffer), array, true);
         }
-        double[] array = new double[amplitudes.length];
-        for (int j = 0; j < array.length; j++) {
-            // Based on: https://manual.audacityteam.org/man/spectrogram_view.html
-            double magnitude = Math.max(Math.abs(amplitudes[j]), 1e-12);
-            double valueDB = 20 * Math.log10(magnitude);
-            array[j] = valueDB + this.gainDB;
+        return this.toDbArray(transformer.transform(audioDoubleBuffer, transformBuffer), array, false);
+    }
+
+    /**
+     * 频谱幅度按刻度滤波后转换为db数组
+     * 
+     * @param amplitudes 频谱幅度，power为true时是功率谱，可能被滤波器修改
+     * @param array      输出数组，长度为dbRowLength()
+     * @param power      amplitudes是否为功率谱
+     */
+    private double[] toDbArray(double[] amplitudes, double[] array, boolean power) {
+        if (power) {
+            if (null != this.scale) {
+                this.scale.applyFilterBankPower(amplitudes, array);
+            } else {
+                System.arraycopy(amplitudes, 0, array, 0, amplitudes.length);
+            }
+            return this.dbConverter.powerToDb(array, array);
+        }
+        if (null != this.scale) {
+            // 滤波结果直接写入结果数组，再原地转换为db
+            this.scale.applyFilterBank(amplitudes, array);
+        } else {
+            System.arraycopy(amplitudes, 0, array, 0, amplitudes.length);
         }
-        this.amplitudeData[channelIdx].add(audioDoubleBuffer);
-        this.frequenciesData[channelIdx].add(array);
+        return this.dbConverter.toDb(array, array);
     }
 
     private void drawFreqMark(Graphics g, int x, int y, int height, double frequencyMin, double frequencyMax) {
@@ -385,6 +1133,28 @@ public class Spectrum {
         }
     }
 
+    /**
+     * 按颜色序号直接写入TYPE_3BYTE_BGR图像的像素数组，第一个频率点在最下面一行
+     *
+     * @param pixels 颜色序号，[列][频率点]
+     */
+    void fillColorIndexes(BufferedImage image, int[][] pixels) {
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        byte[] bgr = this.colorMap.getBgrTable();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int i = 0; i < pixels.length; i++) {
+            int[] column = pixels[i];
+            for (int j = 0; j < column.length; j++) {
+                int pixel = ((height - j - 1) * width + i) * 3;
+                int color = column[j] * 3;
+                data[pixel] = bgr[color];
+                data[pixel + 1] = bgr[color + 1];
+                data[pixel + 2] = bgr[color + 2];
+            }
+        }
+    }
+
     /**
      * @param frequencyMin 图像中最小频率
      * @param frequencyMin 图像中最大频率
@@ -410,12 +1180,55 @@ public class Spectrum {
     public void drawSpctrogram(String output, double frequencyMin, double frequencyMax, int picWidth, int picHeight,
             int markLeftWidth, int markRightWidth,
             int markBottomHeight, int channelIdx) {
-        if (null == this.frequenciesData || this.frequenciesData.length == 0) {
+        this.checkDrawData(channelIdx);
+        this.drawSpctrogram(output, frequencyMin, frequencyMax, picWidth, picHeight, markLeftWidth, markRightWidth,
+                markBottomHeight, channelIdx, 0, this.frequenciesData[0].rows());
+    }
+
+    /**
+     * 绘制计算结果中的一段时间，建立了金字塔(buildPyramid)时从最接近图片宽度的层绘制
+     *
+     * @param startTime 开始时间，秒，与getStartTime()相同的时间轴
+     * @param endTime   结束时间，秒
+     */
+    public void drawSpctrogram(String output, double frequencyMin, double frequencyMax, int picWidth, int picHeight,
+            int markLeftWidth, int markRightWidth,
+            int markBottomHeight, int channelIdx, double startTime, double endTime) {
+        this.checkDrawData(channelIdx);
+        int rows = this.frequenciesData[0].rows();
+        double duration = this.drawDuration();
+        int fromFrame = (int) Math.max(0, Math.floor((startTime - this.getStartTime()) / duration * rows));
+        int toFrame = (int) Math.min(rows, Math.ceil((endTime - this.getStartTime()) / duration * rows));
+        if (fromFrame >= toFrame) {
+            throw new RuntimeException("频谱图绘制错误，时间区间[" + startTime + "," + endTime + ")没有数据");
+        }
+        this.drawSpctrogram(output, frequencyMin, frequencyMax, picWidth, picHeight, markLeftWidth, markRightWidth,
+                markBottomHeight, channelIdx, fromFrame, toFrame);
+    }
+
+    private void checkDrawData(int channelIdx) {
+        if (null == this.frequenciesData || this.frequenciesData.length == 0
+                || this.frequenciesData[0].isEmpty()) {
             throw new RuntimeException("频谱图绘制错误，无数据");
         }
         if (channelIdx >= this.frequenciesData.length) {
             throw new RuntimeException("频谱图绘制错误，声道" + channelIdx + "不存在");
         }
+    }
+
+    /**
+     * 图片时间轴对应的全部时长，秒
+     */
+    private double drawDuration() {
+        return (this.frameLength > 0 ? this.frameLength : this.sourceFrameLength()) / this.format.getSampleRate();
+    }
+
+    /**
+     * 绘制[fromFrame, toFrame)帧
+     */
+    private void drawSpctrogram(String output, double frequencyMin, double frequencyMax, int picWidth,
+            int picHeight, int markLeftWidth, int markRightWidth, int markBottomHeight, int channelIdx,
+            int fromFrame, int toFrame) {
         // Maximum frequency represented in `frequenciesData`
         int freqFrom = (int) this.format.getSampleRate() / 2;
         int width = markLeftWidth > 0 ? picWidth - markLeftWidth : picWidth;
@@ -441,18 +1254,11 @@ public class Spectrum {
             if (channelIdx >= 0 && channelIdx != c) {
                 continue;
             }
-            int[][] pixels = this.convertToColorMap(frequenciesData[c], width);
+            int[][] pixels = this.colorIndexes(c, fromFrame, toFrame, width);
             int bitmapHeight = pixels[0].length;
             BufferedImage cImage = new BufferedImage(width, bitmapHeight, BufferedImage.TYPE_3BYTE_BGR);
+            this.fillColorIndexes(cImage, pixels);
             Graphics cg = cImage.getGraphics();
-            for (int i = 0; i < pixels.length; i++) {
-                for (int j = 0; j < pixels[i].length; j++) {
-                    int hIndex = (bitmapHeight - j - 1);
-                    Color color = this.colorMap.getColor(pixels[i][j]);
-                    cg.setColor(color);
-                    cg.drawLine(i, hIndex, i, hIndex);
-                }
-            }
 
             // The relative positions of `freqMin` and `freqMax` in `imageData`
             double rMin = this.scale.hzToScale(frequencyMin) / this.scale.hzToScale(freqFrom);
@@ -480,16 +1286,16 @@ public class Spectrum {
                         Integer i = iter.next();
                         if(i-currentTimeIdx > 5){
                             if(preTimeIdx>=0){
-                                int x = (int)((double)preTimeIdx/frequenciesData[c].size()*(double)width);
-                                int x1 = (int)((double)currentTimeIdx/frequenciesData[c].size()*(double)width);
+                                int x = (int)((double)(preTimeIdx-fromFrame)/(toFrame-fromFrame)*(double)width);
+                                int x1 = (int)((double)(currentTimeIdx-fromFrame)/(toFrame-fromFrame)*(double)width);
                                 cg.drawRect(x, bitmapHeight-y-1,x1-x, y-y1);
                             }
                             preTimeIdx=i;
                         }
                         currentTimeIdx=i;
                      }
-                     int x = (int)((double)preTimeIdx/frequenciesData[c].size()*(double)width);
-                     int x1 = (int)((double)currentTimeIdx/frequenciesData[c].size()*(double)width);
+                     int x = (int)((double)(preTimeIdx-fromFrame)/(toFrame-fromFrame)*(double)width);
+                     int x1 = (int)((double)(currentTimeIdx-fromFrame)/(toFrame-fromFrame)*(double)width);
                      cg.drawRect(x, bitmapHeight-y-1,x1-x, y-y1);
                 }
             }
@@ -503,10 +1309,17 @@ public class Spectrum {
             }
         }
 
-        if (markBottomHeight >= 0)
+        if (markBottomHeight >= 0) {
+            double duration = this.drawDuration();
+            double startTime = this.getStartTime();
+            int rows = this.frequenciesData[0].rows();
+            if (fromFrame > 0 || toFrame < rows) {
+                startTime += duration * fromFrame / rows;
+                duration = duration * (toFrame - fromFrame) / rows;
+            }
             drawTimeMark(spectrCc, markLeftWidth < 0 ? 0 : markLeftWidth, picHeight - markBottomHeight / 2, width,
-                    (frameLength > 0 ? frameLength : audioInputStream.getFrameLength()) / this.format.getSampleRate(),
-                    0);
+                    duration, startTime);
+        }
         if (markRightWidth >= 0)
             drawDomainColorMark(spectrCc, picWidth - 35, 0, picHeight, false);
         try {
@@ -548,7 +1361,8 @@ public class Spectrum {
         // VideoCreator Video = new VideoCreator(output+".Video", picWidth, picHeight,
         // rate);
         VideoCreator video = new VideoCreator(output + ".mp4", picWidth, picHeight, 60.0, file);
-        for (int i = 0; i < frequenciesData[0].size(); i++) {
+        double[] dbRow = new double[frequenciesData[0].columns()];
+        for (int i = 0; i < frequenciesData[0].rows(); i++) {
             // Minimum and maximum frequency we want to draw
             BufferedImage image = new BufferedImage(picWidth, picHeight, BufferedImage.TYPE_3BYTE_BGR);
             Graphics spectrCc = image.getGraphics();
@@ -561,7 +1375,8 @@ public class Spectrum {
                     continue;
                 }
                 // int[][] pixels = this.convertToColorMap(frequenciesData[c], width);
-                int bitmapWidth = frequenciesData[c].get(0).length;
+                int bitmapWidth = frequenciesData[c].columns();
+                frequenciesData[c].getRow(i, dbRow);
                 BufferedImage cImage = new BufferedImage(bitmapWidth, innerHeight, BufferedImage.TYPE_3BYTE_BGR);
                 Graphics cg = cImage.getGraphics();
                 int[] x = new int[bitmapWidth + 2];
@@ -570,8 +1385,8 @@ public class Spectrum {
                 x[bitmapWidth + 1] = bitmapWidth - 1;
                 y[0] = innerHeight;
                 y[bitmapWidth + 1] = innerHeight;
-                for (int j = 0; j < frequenciesData[c].get(i).length; j++) {
-                    double doubleDb = frequenciesData[c].get(i)[j];
+                for (int j = 0; j < dbRow.length; j++) {
+                    double doubleDb = dbRow[j];
                     x[j + 1] = j;
                     y[j + 1] = (int) (innerHeight * (1 - (rangeDB + doubleDb) / (double) rangeDB));
                 }
@@ -601,7 +1416,7 @@ public class Spectrum {
                     NormalRange.AlarmInfo alarmInfo = range.getAlarmInfo(c);
                     if(!alarmInfo.alarmTimeIdxs.isEmpty()){
                         if(alarmInfo.alarmTimeIdxs.contains(i)){
-                            double [] amps = Arrays.copyOfRange(frequenciesData[c].get(i),startX,endX);
+                            double [] amps = Arrays.copyOfRange(dbRow,startX,endX);
                             double max = DoubleStream.of(amps).max().getAsDouble();
                             double min = DoubleStream.of(amps).min().getAsDouble();
                             if(min<range.getMinDb()){
@@ -630,12 +1445,12 @@ public class Spectrum {
                 drawFreqMarkH(spectrCc, markLeftWidth, picHeight, width, frequencyMin, frequencyMax);
                 // spectrCc.translate(-(picWidth - width), -picHeight);
             }
-            double endTime = this.timeline.get(i);
+            double endTime = this.getTime(i);
             double startTime = i == 0 ? 0 : endTime - bufferSize / this.format.getSampleRate();
             spectrCc.drawString(String.format("%.2fs", startTime), picWidth - 40, 10);
             // Video.addImage(image,(long)(endTime*1000));
             video.addImage(image, (long) (startTime * 1000000));
-            if (i == this.frequenciesData[0].size() - 1) {
+            if (i == this.frequenciesData[0].rows() - 1) {
                 video.addImage(image, (long) duration * 1000000);
             }
         }
@@ -650,7 +1465,7 @@ public class Spectrum {
         }
         int drawChannels = channelIdx < 0 ? this.amplitudeData.length : 1;
         int channelHeight = (picHeight - markBottomHeight) / drawChannels;
-        int channelWidth = amplitudeData[0].size();
+        int channelWidth = amplitudeData[0].rows();
         BufferedImage image = new BufferedImage(picWidth, picHeight,
                 BufferedImage.TYPE_3BYTE_BGR);
         Graphics g = image.getGraphics();
@@ -663,19 +1478,18 @@ public class Spectrum {
             Graphics g1 = cImage.getGraphics();
             g1.translate(0, channelHeight / 2);
             g1.setColor(frontColor);
-            int[] x = new int[this.amplitudeData[c].size() + 2];
-            int[] y = new int[this.amplitudeData[c].size() + 2];
-            int[] y1 = new int[this.amplitudeData[c].size() + 2];
+            int[] x = new int[this.amplitudeData[c].rows() + 2];
+            int[] y = new int[this.amplitudeData[c].rows() + 2];
+            int[] y1 = new int[this.amplitudeData[c].rows() + 2];
             x[0] = 0;
             y[0] = 0;
             y1[0] = 0;
             x[x.length - 1] = x.length - 3;
             y[x.length - 1] = 0;
             y1[x.length - 1] = 0;
-            for (int i = 0; i < this.amplitudeData[c].size(); i++) {
+            for (int i = 0; i < this.amplitudeData[c].rows(); i++) {
                 x[i + 1] = i;
-                double[] temp = new double[amplitudeData[c].get(i).length];
-                System.arraycopy(amplitudeData[c].get(i), 0, temp, 0, temp.length);
+                double[] temp = amplitudeData[c].getRow(i);
                 // WindowFun.getWindowFunction("hann", null).apply(temp);
                 double ampValue = Math.sqrt(Arrays.stream(temp).map(d -> Math.pow(d, 2)).average().orElse(0));
                 int vy = (int) (channelHeight / 2 * ampValue);
@@ -694,8 +1508,8 @@ public class Spectrum {
         }
         if (markBottomHeight >= 0)
             drawTimeMark(g, markLeftWidth, picHeight, picWidth - markLeftWidth,
-                    (frameLength > 0 ? frameLength : audioInputStream.getFrameLength()) / this.format.getSampleRate(),
-                    0);
+                    (frameLength > 0 ? frameLength : this.sourceFrameLength()) / this.format.getSampleRate(),
+                    this.getStartTime());
         try {
             ImageIO.write(image, "png", new File(filePath + ".png"));
         } catch (Exception e) {
@@ -710,7 +1524,7 @@ public class Spectrum {
         }
         int drawChannels = channelIdx < 0 ? this.amplitudeData.length : 1;
         int channelHeight = (picHeight - markBottomHeight) / drawChannels;
-        int channelWidth = amplitudeData[0].size();
+        int channelWidth = amplitudeData[0].rows();
         BufferedImage image = new BufferedImage(picWidth, picHeight,
                 BufferedImage.TYPE_3BYTE_BGR);
         Graphics g = image.getGraphics();
@@ -722,16 +1536,15 @@ public class Spectrum {
             BufferedImage cImage = new BufferedImage(channelWidth, channelHeight, BufferedImage.TYPE_3BYTE_BGR);
             Graphics g1 = cImage.getGraphics();
             g1.setColor(frontColor);
-            int[] x = new int[this.amplitudeData[c].size() + 2];
-            int[] y1 = new int[this.amplitudeData[c].size() + 2];
+            int[] x = new int[this.amplitudeData[c].rows() + 2];
+            int[] y1 = new int[this.amplitudeData[c].rows() + 2];
             x[0] = 0;
             y1[0] = channelHeight;
             x[x.length - 1] = x.length - 3;
             y1[x.length - 1] = channelHeight;
-            for (int i = 0; i < this.amplitudeData[c].size(); i++) {
+            for (int i = 0; i < this.amplitudeData[c].rows(); i++) {
                 x[i + 1] = i;
-                double[] temp = new double[amplitudeData[c].get(i).length];
-                System.arraycopy(amplitudeData[c].get(i), 0, temp, 0, temp.length);
+                double[] temp = amplitudeData[c].getRow(i);
                 // WindowFun.getWindowFunction("hann", null).apply(temp);
                 double ampValue = Math.sqrt(Arrays.stream(temp).map(d -> Math.pow(d, 2)).average().orElse(0));
                 double valueDB = 20 * Math.log10(Math.max(Math.abs(ampValue), 1e-12));
@@ -756,7 +1569,7 @@ public class Spectrum {
         if (markBottomHeight >= 0)
             drawTimeMark(g, markLeftWidth, picHeight, picWidth - markLeftWidth,
                     duration,
-                    0);
+                    this.getStartTime());
         try {
             ImageIO.write(image, "png", new File(filePath + ".png"));
         } catch (Exception e) {
@@ -772,9 +1585,10 @@ public class Spectrum {
         }
         int drawChannels = channelIdx < 0 ? this.amplitudeData.length : 1;
         int channelHeight = (picHeight - markBottomHeight) / drawChannels;
-        int channelWidth = this.amplitudeData[0].get(0).length;
+        int channelWidth = this.amplitudeData[0].columns();
         VideoCreator video = new VideoCreator(filePath + ".mp4", picWidth, picHeight, 60.0, file);
-        for (int j = 0; j < this.amplitudeData[0].size(); j++) {
+        double[] ampRow = new double[channelWidth];
+        for (int j = 0; j < this.amplitudeData[0].rows(); j++) {
             BufferedImage image = new BufferedImage(picWidth, picHeight,
                     BufferedImage.TYPE_3BYTE_BGR);
             Graphics g = image.getGraphics();
@@ -787,18 +1601,19 @@ public class Spectrum {
                 Graphics g1 = cImage.getGraphics();
                 g1.translate(0, channelHeight / 2);
                 g1.setColor(frontColor);
-                int[] x = new int[this.amplitudeData[c].get(j).length + 2];
-                int[] y = new int[this.amplitudeData[c].get(j).length + 2];
-                int[] y1 = new int[this.amplitudeData[c].get(j).length + 2];
+                this.amplitudeData[c].getRow(j, ampRow);
+                int[] x = new int[ampRow.length + 2];
+                int[] y = new int[ampRow.length + 2];
+                int[] y1 = new int[ampRow.length + 2];
                 x[0] = 0;
                 y[0] = 0;
                 y1[0] = 0;
                 x[x.length - 1] = x.length - 3;
                 y[x.length - 1] = 0;
                 y1[x.length - 1] = 0;
-                for (int i = 0; i < this.amplitudeData[c].get(j).length; i++) {
+                for (int i = 0; i < ampRow.length; i++) {
                     x[i + 1] = i;
-                    double ampValue = this.amplitudeData[c].get(j)[i];
+                    double ampValue = ampRow[i];
                     int vy = (int) (channelHeight / 2 * ampValue);
                     y[i + 1] = vy;
                     y1[i + 1] = -vy;
@@ -814,7 +1629,7 @@ public class Spectrum {
                 this.drawDomainMark(g, 0, channelHeight * c + channelHeight / 2, channelHeight / 2, 1, false);
                 this.drawDomainMark(g, 0, channelHeight * c + channelHeight / 2, channelHeight / 2, 1, true);
             }
-            double endTime = this.timeline.get(j);
+            double endTime = this.getTime(j);
             double startTime = endTime - this.bufferSize / this.format.getSampleRate();
             if (markBottomHeight >= 0)
                 drawTimeMark(g, markLeftWidth, picHeight, picWidth - markLeftWidth,
@@ -822,7 +1637,7 @@ public class Spectrum {
             g.drawString(String.format("%.2fs", startTime), picWidth - 40, 10);
             // Video.addImage(image,(long)(endTime*1000));
             video.addImage(image, (long) (startTime * 1000000));
-            if (j == this.amplitudeData[0].size() - 1) {
+            if (j == this.amplitudeData[0].rows() - 1) {
                 video.addImage(image, (long) (endTime * 1000000));
             }
         }
@@ -836,9 +1651,10 @@ public class Spectrum {
         }
         int drawChannels = channelIdx < 0 ? this.amplitudeData.length : 1;
         int channelHeight = (picHeight - markBottomHeight) / drawChannels;
-        int channelWidth = this.amplitudeData[0].get(0).length;
+        int channelWidth = this.amplitudeData[0].columns();
         VideoCreator video = new VideoCreator(filePath + ".mp4", picWidth, picHeight, 60.0, file);
-        for (int j = 0; j < this.amplitudeData[0].size(); j++) {
+        double[] ampRow = new double[channelWidth];
+        for (int j = 0; j < this.amplitudeData[0].rows(); j++) {
             BufferedImage image = new BufferedImage(picWidth, picHeight,
                     BufferedImage.TYPE_3BYTE_BGR);
             Graphics g = image.getGraphics();
@@ -850,14 +1666,15 @@ public class Spectrum {
                 BufferedImage cImage = new BufferedImage(channelWidth, channelHeight, BufferedImage.TYPE_3BYTE_BGR);
                 Graphics g1 = cImage.getGraphics();
                 g1.setColor(frontColor);
-                int[] x = new int[this.amplitudeData[c].get(j).length + 2];
-                int[] y1 = new int[this.amplitudeData[c].get(j).length + 2];
+                this.amplitudeData[c].getRow(j, ampRow);
+                int[] x = new int[ampRow.length + 2];
+                int[] y1 = new int[ampRow.length + 2];
                 x[0] = 0;
                 y1[0] = channelHeight;
                 x[x.length - 1] = x.length - 3;
                 y1[x.length - 1] = channelHeight;
-                for (int i = 0; i < this.amplitudeData[c].get(j).length; i++) {
-                    double valueDB = 20 * Math.log10(Math.max(Math.abs(amplitudeData[c].get(j)[i]), 1e-12));
+                for (int i = 0; i < ampRow.length; i++) {
+                    double valueDB = 20 * Math.log10(Math.max(Math.abs(ampRow[i]), 1e-12));
                     valueDB += this.gainDB;
                     if (valueDB < -this.rangeDB) {
                         valueDB = -this.rangeDB;
@@ -877,7 +1694,7 @@ public class Spectrum {
             for (int c = 0; c < drawChannels; c++) {
                 this.drawDomainMark(g, markLeftWidth, channelHeight * c, channelHeight, rangeDB, false);
             }
-            double endTime = this.timeline.get(j);
+            double endTime = this.getTime(j);
             double startTime = endTime - this.bufferSize / this.format.getSampleRate();
             if (markBottomHeight >= 0)
                 drawTimeMark(g, markLeftWidth, picHeight, picWidth - markLeftWidth,
@@ -885,7 +1702,7 @@ public class Spectrum {
             g.drawString(String.format("%.2fs", startTime), picWidth - 40, 10);
             // Video.addImage(image,(long)(endTime*1000));
             video.addImage(image, (long) (endTime * 1000000));
-            if (j == this.amplitudeData[0].size() - 1) {
+            if (j == this.amplitudeData[0].rows() - 1) {
                 video.addImage(image, (long) (endTime * 1000000));
             }
         }
@@ -897,10 +1714,53 @@ public class Spectrum {
                 : String.valueOf(Math.round(freq)) + " Hz";
     }
 
-    public List<double[]>[] getFrequenciesData() {
+    public SpectrumMatrix[] getFrequenciesData() {
         return this.frequenciesData;
     }
 
+    public SpectrumMatrix[] getAmplitudeData() {
+        return this.amplitudeData;
+    }
+
+    /**
+     * 数据的版本，run()和并行计算每次开始时加1，版本不同时数据可能不同
+     */
+    public long getDataGeneration() {
+        return this.dataGeneration;
+    }
+
+    /**
+     * 帧数
+     */
+    public int getTimelineSize() {
+        return this.timelineSize;
+    }
+
+    /**
+     * 第i帧结束的时间，单位秒
+     */
+    public double getTime(int i) {
+        if (i < 0 || i >= this.timelineSize) {
+            throw new IndexOutOfBoundsException("time index " + i + " out of " + this.timelineSize);
+        }
+        return this.timeline[i];
+    }
+
+    private void addTime(double time) {
+        if (this.timelineSize == this.timeline.length) {
+            this.timeline = Arrays.copyOf(this.timeline, this.timeline.length * 2);
+        }
+        this.timeline[this.timelineSize++] = time;
+    }
+
+    /**
+     * 频谱数据的存储精度，在run之前设置，默认DOUBLE。
+     * FLOAT和DB16分别把频谱数据的内存降为1/2和1/4，时域数据在非DOUBLE时使用FLOAT存储
+     */
+    public void setPrecision(SpectrumMatrix.Precision precision) {
+        this.precision = precision;
+    }
+
     public double idxToHz(int idx, int length) {
         return this.scale
                 .scaleToHz((double) (idx) / length * (this.scale.hzToScale(this.format.getSampleRate() / 2)));
@@ -922,15 +1782,52 @@ public class Spectrum {
         this.overlap = overlap;
     }
 
+    /**
+     * 设置是否把各声道取平均后计算一个频谱，默认合并；不合并时每个声道单独计算
+     */
+    public void setMergeChannel(boolean mergeChannel) {
+        this.mergeChannel = mergeChannel;
+    }
+
     public AudioInputStream getAudioInputStream() {
         return this.audioInputStream;
     }
 
+    public MappedWavReader getWavReader() {
+        return this.wavReader;
+    }
+
+    // 音频源的总帧数
+    private long sourceFrameLength() {
+        return null != this.wavReader ? this.wavReader.getFrameLength() : this.audioInputStream.getFrameLength();
+    }
+
     public AudioFormat getAudioFormat() {
         return this.format;
     }
 
     public void validate() {
+        Map<Double, Integer> idxCache = this.normalRangeIdxCache();
+        for (int c = 0; c < this.frequenciesData.length; c++) {
+            double[] row = new double[this.frequenciesData[c].columns()];
+            for (int i = 0; i < this.frequenciesData[c].rows(); i++) {
+                this.validateRow(c, i, this.getTime(i), frequenciesData[c].getRow(i, row), idxCache);
+            }
+        }
+    }
+
+    /**
+     * 创建增量校验的监听器，通过addSpectrumListener添加后在计算过程中校验，
+     * 不保留数据时也能得到与validate()相同的告警信息
+     */
+    public SpectrumListener createValidator() {
+        Map<Double, Integer> idxCache = this.normalRangeIdxCache();
+        int[] frameIdxs = new int[Math.max(1, this.channels)];
+        return (channelIdx, time, dbRow) -> this.validateRow(channelIdx, frameIdxs[channelIdx]++, time, dbRow,
+                idxCache);
+    }
+
+    private Map<Double, Integer> normalRangeIdxCache() {
         Map<Double, Integer> idxCache = new HashMap<>();
         this.normalRanges.forEach(range -> {
             idxCache.computeIfAbsent(Double.valueOf(range.getMinFreq()),
@@ -938,20 +1835,20 @@ public class Spectrum {
             idxCache.computeIfAbsent(Double.valueOf(range.getMaxFreq()),
                     (k) -> hzToIdx(k, bufferSize));
         });
-        for (int c = 0; c < this.frequenciesData.length; c++) {
-            for (int i = 0; i < this.frequenciesData[c].size(); i++) {
-                int len = frequenciesData[c].get(i).length;
-                for (int j = 0; j < len; j++) {
-                    for (NormalRange range : this.normalRanges) {
-                        int idxMin = idxCache.get(range.getMinFreq());
-                        int idxMax = idxCache.get(range.getMaxFreq());
-                        if (idxMin <= j && idxMax > j) {
-                            double db = frequenciesData[c].get(i)[j];
-                            if (db < range.getMinDb() || db > range.getMaxDb()) {
-                                range.getAlarmInfo(c).addAlarmIdx(i);
-                                range.getAlarmInfo(c).addAlarmTime(this.timeline.get(i));
-                            }
-                        }
+        return idxCache;
+    }
+
+    private void validateRow(int c, int i, double time, double[] row, Map<Double, Integer> idxCache) {
+        int len = row.length;
+        for (int j = 0; j < len; j++) {
+            for (NormalRange range : this.normalRanges) {
+                int idxMin = idxCache.get(range.getMinFreq());
+                int idxMax = idxCache.get(range.getMaxFreq());
+                if (idxMin <= j && idxMax > j) {
+                    double db = row[j];
+                    if (db < range.getMinDb() || db > range.getMaxDb()) {
+                        range.getAlarmInfo(c).addAlarmIdx(i);
+                        range.getAlarmInfo(c).addAlarmTime(time);
                     }
                 }
             }
@@ -0,0 +1,15 @@
+package com.github.robinZhao.sound;
+
+/**
+ * 频谱帧监听器，每计算完一个声道的一帧调用一次，按时间顺序调用
+ */
+public interface SpectrumListener {
+
+    /**
+     * @param channelIdx 声道序号，合并声道时为0
+     * @param time       帧结束的时间，单位秒
+     * @param dbRow      按刻度滤波后的db数据，数组会被复用，需要保留时自行复制
+     */
+    void onFrame(int channelIdx, double time, double[] dbRow);
+
+}
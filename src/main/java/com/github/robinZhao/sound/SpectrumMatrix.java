@@ -0,0 +1,280 @@
+package com.github.robinZhao.sound;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 频谱数据矩阵，每行是一帧，按行连续存放在基本类型数组中，
+ * 按块增长，避免每帧一个数组对象，也避免扩容时复制全部数据
+ */
+public abstract class SpectrumMatrix {
+
+    public static enum Precision {
+        /** double存储 */
+        DOUBLE,
+        /** float存储，内存减半 */
+        FLOAT,
+        /** 16位定点存储db值，精度0.01db，范围±327db，内存为double的1/4，只适用于db数据 */
+        DB16
+    }
+
+    // 每块大约存放的元素个数
+    private static final int CHUNK_ELEMENTS = 1 << 18;
+
+    protected final int columns;
+    protected final int chunkRows;
+    protected int rows;
+
+    protected SpectrumMatrix(int columns) {
+        this.columns = columns;
+        this.chunkRows = Math.max(1, CHUNK_ELEMENTS / Math.max(1, columns));
+    }
+
+    public static SpectrumMatrix create(int columns, Precision precision) {
+        switch (precision) {
+            case FLOAT:
+                return new FloatMatrix(columns);
+            case DB16:
+                return new Db16Matrix(columns);
+            case DOUBLE:
+            default:
+                return new DoubleMatrix(columns);
+        }
+    }
+
+    /**
+     * 行数，即帧数
+     */
+    public int rows() {
+        return this.rows;
+    }
+
+    /**
+     * 列数，即每帧的数据个数
+     */
+    public int columns() {
+        return this.columns;
+    }
+
+    public boolean isEmpty() {
+        return this.rows == 0;
+    }
+
+    /**
+     * 追加一行，数据会被复制，row可以复用
+     */
+    public void addRow(double[] row) {
+        this.addRow(row, 0);
+    }
+
+    /**
+     * 追加一行，数据从data的offset位置开始复制columns个
+     */
+    public void addRow(double[] data, int offset) {
+        int chunk = this.rows / this.chunkRows;
+        if (chunk == this.chunkCount()) {
+            this.addChunk(this.chunkRows * this.columns);
+        }
+        this.writeRow(chunk, (this.rows % this.chunkRows) * this.columns, data, offset);
+        this.rows++;
+    }
+
+    /**
+     * 追加一行float数据，数据从data的offset位置开始复制columns个
+     */
+    public void addRow(float[] data, int offset) {
+        int chunk = this.rows / this.chunkRows;
+        if (chunk == this.chunkCount()) {
+            this.addChunk(this.chunkRows * this.columns);
+        }
+        this.writeRow(chunk, (this.rows % this.chunkRows) * this.columns, data, offset);
+        this.rows++;
+    }
+
+    public double get(int row, int column) {
+        this.checkRow(row);
+        return this.read(row / this.chunkRows, (row % this.chunkRows) * this.columns + column);
+    }
+
+    /**
+     * 复制一行到out
+     *
+     * @param out 输出数组，长度不小于columns
+     * @return out
+     */
+    public double[] getRow(int row, double[] out) {
+        this.checkRow(row);
+        this.readRow(row / this.chunkRows, (row % this.chunkRows) * this.columns, out);
+        return out;
+    }
+
+    /**
+     * 复制一行到新数组
+     */
+    public double[] getRow(int row) {
+        return this.getRow(row, new double[this.columns]);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= this.rows) {
+            throw new IndexOutOfBoundsException("row " + row + " out of " + this.rows);
+        }
+    }
+
+    protected abstract int chunkCount();
+
+    protected abstract void addChunk(int size);
+
+    protected abstract void writeRow(int chunk, int offset, double[] row, int rowOffset);
+
+    protected abstract void writeRow(int chunk, int offset, float[] row, int rowOffset);
+
+    protected abstract double read(int chunk, int offset);
+
+    protected abstract void readRow(int chunk, int offset, double[] out);
+
+    private static class DoubleMatrix extends SpectrumMatrix {
+        private final List<double[]> chunks = new ArrayList<>();
+
+        DoubleMatrix(int columns) {
+            super(columns);
+        }
+
+        @Override
+        protected int chunkCount() {
+            return chunks.size();
+        }
+
+        @Override
+        protected void addChunk(int size) {
+            chunks.add(new double[size]);
+        }
+
+        @Override
+        protected void writeRow(int chunk, int offset, double[] row, int rowOffset) {
+            System.arraycopy(row, rowOffset, chunks.get(chunk), offset, columns);
+        }
+
+        @Override
+        protected void writeRow(int chunk, int offset, float[] row, int rowOffset) {
+            double[] data = chunks.get(chunk);
+            for (int i = 0; i < columns; i++) {
+                data[offset + i] = row[rowOffset + i];
+            }
+        }
+
+        @Override
+        protected double read(int chunk, int offset) {
+            return chunks.get(chunk)[offset];
+        }
+
+        @Override
+        protected void readRow(int chunk, int offset, double[] out) {
+            System.arraycopy(chunks.get(chunk), offset, out, 0, columns);
+        }
+    }
+
+    private static class FloatMatrix extends SpectrumMatrix {
+        private final List<float[]> chunks = new ArrayList<>();
+
+        FloatMatrix(int columns) {
+            super(columns);
+        }
+
+        @Override
+        protected int chunkCount() {
+            return chunks.size();
+        }
+
+        @Override
+        protected void addChunk(int size) {
+            chunks.add(new float[size]);
+        }
+
+        @Override
+        protected void writeRow(int chunk, int offset, double[] row, int rowOffset) {
+            float[] data = chunks.get(chunk);
+            for (int i = 0; i < columns; i++) {
+                data[offset + i] = (float) row[rowOffset + i];
+            }
+        }
+
+        @Override
+        protected void writeRow(int chunk, int offset, float[] row, int rowOffset) {
+            System.arraycopy(row, rowOffset, chunks.get(chunk), offset, columns);
+        }
+
+        @Override
+        protected double read(int chunk, int offset) {
+            return chunks.get(chunk)[offset];
+        }
+
+        @Override
+        protected void readRow(int chunk, int offset, double[] out) {
+            float[] data = chunks.get(chunk);
+            for (int i = 0; i < columns; i++) {
+                out[i] = data[offset + i];
+            }
+        }
+    }
+
+    private static class Db16Matrix extends SpectrumMatrix {
+        private static final double SCALE = 100d;
+        private final List<short[]> chunks = new ArrayList<>();
+
+        Db16Matrix(int columns) {
+            super(columns);
+        }
+
+        @Override
+        protected int chunkCount() {
+            return chunks.size();
+        }
+
+        @Override
+        protected void addChunk(int size) {
+            chunks.add(new short[size]);
+        }
+
+        @Override
+        protected void writeRow(int chunk, int offset, double[] row, int rowOffset) {
+            short[] data = chunks.get(chunk);
+            for (int i = 0; i < columns; i++) {
+                long value = Math.round(row[rowOffset + i] * SCALE);
+                if (value > Short.MAX_VALUE) {
+                    value = Short.MAX_VALUE;
+                } else if (value < Short.MIN_VALUE) {
+                    value = Short.MIN_VALUE;
+                }
+                data[offset + i] = (short) value;
+            }
+        }
+
+        @Override
+        protected void writeRow(int chunk, int offset, float[] row, int rowOffset) {
+            short[] data = chunks.get(chunk);
+            for (int i = 0; i < columns; i++) {
+                long value = Math.round(row[rowOffset + i] * SCALE);
+                if (value > Short.MAX_VALUE) {
+                    value = Short.MAX_VALUE;
+                } else if (value < Short.MIN_VALUE) {
+                    value = Short.MIN_VALUE;
+                }
+                data[offset + i] = (short) value;
+            }
+        }
+
+        @Override
+        protected double read(int chunk, int offset) {
+            return chunks.get(chunk)[offset] / SCALE;
+        }
+
+        @Override
+        protected void readRow(int chunk, int offset, double[] out) {
+            short[] data = chunks.get(chunk);
+            for (int i = 0; i < columns; i++) {
+                out[i] = data[offset + i] / SCALE;
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.robinZhao.sound;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 频谱在时间轴上的多分辨率金字塔。第0层是原始的db矩阵，第level层每行合并原始的2^level帧，
+ * 行数为原始帧数除以2^level向上取整，各层合计约为原始数据的1倍内存。
+ * 绘制某个时间区间时选每列至少对应ROWS_PER_COLUMN行的最粗一层，计算量与图片宽度成正比，与帧数无关。
+ * 合并前db截取到[-rangeDB, 0]。列的边界落在某一行中间时该行按比例分到两列，与从原始数据平均相比有误差，
+ * 每列的行数越多误差越小，8行时颜色序号一般只差1到2
+ * 创建后不再修改，原始数据追加了帧需要重新创建
+ */
+public class SpectrumPyramid {
+
+    public static enum Pooling {
+        /** 取最大值，缩小后仍能看到短暂的峰值 */
+        max,
+        /** 按帧数取平均，接近不使用金字塔的box重采样，列边界落在行中间时颜色序号可能有1到2的差别 */
+        mean
+    }
+
+    // 选择的层每列至少对应的行数
+    private static final int ROWS_PER_COLUMN = 8;
+    private final Pooling pooling;
+    private final double rangeDB;
+    private final int frames;
+    private final List<SpectrumMatrix> levels = new ArrayList<>();
+
+    /**
+     * @param source    原始db矩阵，每行一帧
+     * @param pooling   合并方式
+     * @param rangeDB   合并前截取的db范围，与绘制时的rangeDB一致
+     * @param precision 第1层开始的存储精度
+     */
+    public SpectrumPyramid(SpectrumMatrix source, Pooling pooling, double rangeDB,
+            SpectrumMatrix.Precision precision) {
+        if (null == source || source.isEmpty()) {
+            throw new RuntimeException("金字塔创建错误，无数据");
+        }
+        this.pooling = pooling;
+        this.rangeDB = rangeDB;
+        this.frames = source.rows();
+        this.levels.add(source);
+        int columns = source.columns();
+        double[] first = new double[columns];
+        double[] second = new double[columns];
+        SpectrumMatrix previous = source;
+        for (int level = 1; previous.rows() > 1; level++) {
+            SpectrumMatrix current = SpectrumMatrix.create(columns, precision);
+            // 上一层每行对应的原始帧数，最后一行可能不足
+            int span = 1 << (level - 1);
+            for (int r = 0; r < previous.rows(); r += 2) {
+                previous.getRow(r, first);
+                if (level == 1) {
+                    this.clip(first);
+                }
+                if (r + 1 < previous.rows()) {
+                    previous.getRow(r + 1, second);
+                    if (level == 1) {
+                        this.clip(second);
+                    }
+                    double secondWeight = (double) (Math.min((r + 2) * span, this.frames) - (r + 1) * span) / span;
+                    this.pool(first, second, secondWeight);
+                }
+                current.addRow(first);
+            }
+            this.levels.add(current);
+            previous = current;
+        }
+    }
+
+    private void clip(double[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] < -this.rangeDB) {
+                row[i] = -this.rangeDB;
+            } else if (row[i] > 0) {
+                row[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * 合并两行写入first，secondWeight为second对应的帧数与first之比，只有最后一行小于1
+     */
+    private void pool(double[] first, double[] second, double secondWeight) {
+        if (this.pooling == Pooling.max) {
+            for (int i = 0; i < first.length; i++) {
+                first[i] = Math.max(first[i], second[i]);
+            }
+        } else {
+            double total = 1 + secondWeight;
+            for (int i = 0; i < first.length; i++) {
+                first[i] = (first[i] + second[i] * secondWeight) / total;
+            }
+        }
+    }
+
+    public Pooling getPooling() {
+        return this.pooling;
+    }
+
+    public double getRangeDB() {
+        return this.rangeDB;
+    }
+
+    /**
+     * 原始帧数
+     */
+    public int getFrames() {
+        return this.frames;
+    }
+
+    public int getLevelCount() {
+        return this.levels.size();
+    }
+
+    /**
+     * 第level层，第0层是原始数据，调用方不能修改
+     */
+    public SpectrumMatrix getLevel(int level) {
+        return this.levels.get(level);
+    }
+
+    /**
+     * 把原始帧区间[fromFrame, toFrame)绘制为width列时使用的层：每列至少对应ROWS_PER_COLUMN行的最粗一层
+     */
+    public int selectLevel(int fromFrame, int toFrame, int width) {
+        int level = 0;
+        while (level + 1 < this.levels.size()
+                && ((long) width * ROWS_PER_COLUMN << (level + 1)) <= toFrame - fromFrame) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * 原始帧fromFrame所在的行
+     */
+    public int fromRow(int level, int fromFrame) {
+        return fromFrame >> level;
+    }
+
+    /**
+     * 原始帧区间[fromFrame, toFrame)在第level层的结束行(不含)
+     */
+    public int toRow(int level, int toFrame) {
+        return (int) (((long) toFrame + (1 << level) - 1) >> level);
+    }
+}
@@ -4,4 +4,112 @@ public interface SpectrumTransformer {
 
     double[] transform(double[] audioDoubleBuffer);
 
+    /**
+     * 转换结果写入out，实现类复用内部的临时缓冲区，稳定运行时不分配内存。
+     * 实现类因此不是线程安全的，多线程使用时每个线程需要单独的实例
+     * 
+     * @param audioDoubleBuffer 时域信号，不会被修改
+     * @param out               输出数组，长度不小于audioDoubleBuffer.length / 2
+     * @return out
+     */
+    double[] transform(double[] audioDoubleBuffer, double[] out);
+
+    /**
+     * float精度转换，用于float处理模式。默认转换为double计算后再转回float，每次调用分配double数组，
+     * 实现类应当重写：fft有float实现的直接用float计算(Radix4FFTTransformer、DspFFTTranformer)，
+     * 否则用复用的缓冲区转换(FFTPlan.transformFloat)
+     *
+     * @param audioFloatBuffer 时域信号，不会被修改
+     * @param out              输出数组，长度不小于audioFloatBuffer.length / 2
+     * @return out
+     */
+    default float[] transform(float[] audioFloatBuffer, float[] out) {
+        double[] samples = new double[audioFloatBuffer.length];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = audioFloatBuffer[i];
+        }
+        double[] amplitudes = this.transform(samples, new double[samples.length / 2]);
+        for (int i = 0; i < amplitudes.length; i++) {
+            out[i] = (float) amplitudes[i];
+        }
+        return out;
+    }
+
+    /**
+     * 是否直接计算功率谱。为true时transformPower不开方，比transform再平方快；
+     * 为false时使用默认实现，Spectrum的功率谱模式不会使用
+     */
+    default boolean isPowerNative() {
+        return false;
+    }
+
+    /**
+     * 输出功率谱，即transform结果的平方，10 * log10(功率) 与 20 * log10(幅度) 相等。
+     * 默认先计算幅度再平方，实现类可以直接输出实部虚部的平方和，省去开方
+     *
+     * @param audioDoubleBuffer 时域信号，不会被修改
+     * @param out               输出数组，长度不小于audioDoubleBuffer.length / 2
+     * @return out
+     */
+    default double[] transformPower(double[] audioDoubleBuffer, double[] out) {
+        this.transform(audioDoubleBuffer, out);
+        for (int i = 0, n = audioDoubleBuffer.length / 2; i < n; i++) {
+            out[i] *= out[i];
+        }
+        return out;
+    }
+
+    /**
+     * float版本的transformPower
+     */
+    default float[] transformPower(float[] audioFloatBuffer, float[] out) {
+        this.transform(audioFloatBuffer, out);
+        for (int i = 0, n = audioFloatBuffer.length / 2; i < n; i++) {
+            out[i] *= out[i];
+        }
+        return out;
+    }
+
+    /**
+     * 相邻两帧只相差hop个样本时使用的滑动计算转换器，结果与本转换器只差舍入误差，
+     * 按时间顺序转换同一个声道的帧时比本转换器快。不支持或者估计不会更快时返回null，默认返回null
+     *
+     * @param hop 相邻两帧相差的样本数，即bufferSize - overlap
+     */
+    default SpectrumTransformer sliding(int hop) {
+        return null;
+    }
+
+    /**
+     * 批量输出功率谱，参数与transformBatch相同
+     */
+    default double[] transformPowerBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        this.transformBatch(frames, frameSize, frameCount, out);
+        for (int i = 0, n = frameSize / 2 * frameCount; i < n; i++) {
+            out[i] *= out[i];
+        }
+        return out;
+    }
+
+    /**
+     * 批量转换frameCount帧。frames按帧连续存放，每帧frameSize个样本；结果按帧连续写入out，每帧frameSize / 2个值。
+     * 默认逐帧调用transform，每次调用分配一帧的缓冲区，实现类应当重写：复用缓冲区，或者按块处理以减少每帧的开销
+     * 
+     * @param frames     时域信号，长度不小于frameSize * frameCount，不会被修改
+     * @param frameSize  每帧样本数
+     * @param frameCount 帧数
+     * @param out        输出数组，长度不小于frameSize / 2 * frameCount
+     * @return out
+     */
+    default double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        double[] frame = new double[frameSize];
+        double[] row = new double[frameSize / 2];
+        for (int i = 0; i < frameCount; i++) {
+            System.arraycopy(frames, i * frameSize, frame, 0, frameSize);
+            this.transform(frame, row);
+            System.arraycopy(row, 0, out, i * row.length, row.length);
+        }
+        return out;
+    }
+
 }
@@ -0,0 +1,199 @@
+package com.github.robinZhao.sound;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 本地磁盘上的瓦片缓存，总大小超过maxBytes时删除最久没有访问的文件。
+ * 键是相对于目录的路径，格式为 参数的uuid/声道/缩放级别/x.png。
+ * 缓存只读取和删除符合这个格式的文件，目录中的其他文件不受影响。
+ * 访问时更新文件的修改时间，重新创建时按修改时间恢复访问顺序。线程安全
+ */
+public class TileCache {
+    // 缓存管理的文件，uuid/声道/缩放级别/x.png
+    private static final Pattern KEY = Pattern
+            .compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}/\\d+/\\d+/\\d+\\.png");
+    private final File directory;
+    private final long maxBytes;
+    private long totalBytes;
+    // 键到文件大小，按访问顺序排列，最久没有访问的在前
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param directory 缓存目录，不存在时创建，已有的符合键格式的文件作为缓存
+     * @param maxBytes  缓存文件的总大小上限
+     */
+    public TileCache(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new RuntimeException("缓存大小" + maxBytes + "错误");
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("缓存目录创建失败" + directory);
+        }
+        this.load();
+        this.evict();
+    }
+
+    private void load() {
+        Path root = this.directory.toPath();
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile).filter(p -> isKey(key(root, p)))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("缓存目录读取失败" + this.directory, e);
+        }
+        files.sort((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+        for (Path file : files) {
+            String key = key(root, file);
+            long size = file.toFile().length();
+            this.entries.put(key, size);
+            this.totalBytes += size;
+        }
+    }
+
+    private static String key(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 是否是缓存管理的键，格式为 uuid/声道/缩放级别/x.png
+     */
+    public static boolean isKey(String key) {
+        return KEY.matcher(key).matches();
+    }
+
+    /**
+     * 读取缓存，不存在时返回null
+     */
+    public synchronized byte[] get(String key) {
+        // 按访问顺序排列时get才会把键移到最后，containsKey不会
+        if (null == this.entries.get(key)) {
+            return null;
+        }
+        File file = this.file(key);
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            // 文件被外部删除
+            this.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存，先写临时文件再重命名，读取时不会读到不完整的文件
+     */
+    public synchronized void put(String key, byte[] data) {
+        if (!isKey(key)) {
+            throw new RuntimeException("缓存键" + key + "格式错误");
+        }
+        File file = this.file(key);
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new RuntimeException("缓存目录创建失败" + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        try {
+            Files.write(temp.toPath(), data);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            temp.delete();
+            throw new RuntimeException("缓存写入失败" + file, e);
+        }
+        Long old = this.entries.put(key, (long) data.length);
+        this.totalBytes += data.length - (null == old ? 0 : old);
+        this.evict();
+    }
+
+    /**
+     * 删除不满足条件的缓存
+     */
+    public synchronized void retain(Predicate<String> keep) {
+        List<String> removed = new ArrayList<>();
+        for (String key : this.entries.keySet()) {
+            if (!keep.test(key)) {
+                removed.add(key);
+            }
+        }
+        for (String key : removed) {
+            this.remove(key);
+        }
+    }
+
+    /**
+     * 删除全部缓存的瓦片，目录中的其他文件不受影响
+     */
+    public synchronized void clear() {
+        this.retain(key -> false);
+    }
+
+    /**
+     * 缓存文件的总大小
+     */
+    public synchronized long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iter = this.entries.entrySet().iterator();
+        while (this.totalBytes > this.maxBytes && iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            iter.remove();
+            this.totalBytes -= entry.getValue();
+            this.delete(entry.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        Long size = this.entries.remove(key);
+        if (null != size) {
+            this.totalBytes -= size;
+            this.delete(key);
+        }
+    }
+
+    /**
+     * 删除文件和变空的上级目录
+     */
+    private void delete(String key) {
+        File file = this.file(key);
+        file.delete();
+        File parent = file.getParentFile();
+        while (null != parent && !parent.equals(this.directory)) {
+            String[] children = parent.list();
+            if (null == children || children.length > 0 || !parent.delete()) {
+                break;
+            }
+            parent = parent.getParentFile();
+        }
+    }
+
+    private File file(String key) {
+        return new File(this.directory, key);
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.robinZhao.sound;
+
+/**
+ * 频谱在时间轴上重采样为指定的列数，每列是一帧各频率点的颜色值。
+ * 缩小时按时间区间重叠的比例加权平均(盒式滤波)，输入帧和输出列各用一个指针顺序前进，每帧只读取一次，
+ * 计算量为O((帧数 + 列数) * 频率点数)。放大时可以选择线性或三次插值，默认与缩小相同
+ */
+public class TimeResampler {
+
+    public static enum Type {
+        /** 按重叠比例加权平均，放大时相当于最近邻 */
+        box,
+        /** 放大时在相邻两帧之间线性插值，缩小时同box */
+        linear,
+        /** 放大时Catmull-Rom三次插值，缩小时同box */
+        cubic
+    }
+
+    /**
+     * 按行读取输入，每行是一帧各频率点的值
+     */
+    public static interface RowReader {
+        /**
+         * 读取第row行写入out，out长度为频率点数
+         */
+        void read(int row, double[] out);
+    }
+
+    private Type type;
+
+    public TimeResampler(Type type) {
+        this.type = type;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * 重采样并四舍五入为颜色序号，线性和三次插值的结果限制在0到255
+     *
+     * @param reader        输入
+     * @param rows          输入的帧数
+     * @param bins          每帧的频率点数
+     * @param columnsNumber 输出的列数
+     * @return [列][频率点]
+     */
+    public int[][] resample(RowReader reader, int rows, int bins, int columnsNumber) {
+        if (rows <= 0 || columnsNumber <= 0) {
+            throw new RuntimeException("重采样错误，帧数" + rows + "，列数" + columnsNumber);
+        }
+        if (columnsNumber > rows && this.type != Type.box) {
+            return this.interpolate(reader, rows, bins, columnsNumber);
+        }
+        return this.box(reader, rows, bins, columnsNumber);
+    }
+
+    /**
+     * 盒式滤波。按帧顺序把每帧加到与它重叠的列上，每列仍按帧的顺序累加，与逐列计算全部帧的结果逐位相同
+     */
+    private int[][] box(RowReader reader, int rows, int bins, int columnsNumber) {
+        double oldPiece = 1d / rows;
+        double newPiece = 1d / columnsNumber;
+        double[][] columns = new double[columnsNumber][bins];
+        double[] row = new double[bins];
+        // 第一个可能与当前帧重叠的列，帧和列的区间都单调递增，只向前移动
+        int first = 0;
+        for (int j = 0; j < rows; j++) {
+            double oldStart = j * oldPiece;
+            double oldEnd = oldStart + oldPiece;
+            while (first < columnsNumber - 1 && first * newPiece + newPiece <= oldStart) {
+                first++;
+            }
+            boolean read = false;
+            for (int i = first; i < columnsNumber; i++) {
+                double newStart = i * newPiece;
+                if (newStart >= oldEnd) {
+                    break;
+                }
+                double newEnd = newStart + newPiece;
+                double overlap = Math.max(0d, Math.min(oldEnd, newEnd) - Math.max(oldStart, newStart));
+                if (overlap > 0) {
+                    if (!read) {
+                        reader.read(j, row);
+                        read = true;
+                    }
+                    double weight = overlap / newPiece;
+                    double[] column = columns[i];
+                    for (int k = 0; k < bins; k++) {
+                        column[k] += weight * row[k];
+                    }
+                }
+            }
+        }
+        int[][] result = new int[columnsNumber][bins];
+        for (int i = 0; i < columnsNumber; i++) {
+            for (int k = 0; k < bins; k++) {
+                result[i][k] = (int) Math.round(columns[i][k]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 放大时插值，列中心对应的帧位置为 (i + 0.5) * rows / columnsNumber - 0.5，超出首尾的取首尾帧。
+     * 最近读取的4帧按下标循环存放，列的位置单调递增，每帧只读取一次
+     */
+    private int[][] interpolate(RowReader reader, int rows, int bins, int columnsNumber) {
+        double[][] cache = new double[4][bins];
+        int[] cached = new int[] { -1, -1, -1, -1 };
+        int[][] result = new int[columnsNumber][bins];
+        double ratio = (double) rows / columnsNumber;
+        boolean cubic = this.type == Type.cubic;
+        for (int i = 0; i < columnsNumber; i++) {
+            double position = Math.max(0d, Math.min(rows - 1, (i + 0.5) * ratio - 0.5));
+            int j = Math.min((int) position, rows - 1);
+            double t = position - j;
+            int[] column = result[i];
+            if (cubic) {
+                double[] p0 = row(reader, Math.max(0, j - 1), cache, cached);
+                double[] p1 = row(reader, j, cache, cached);
+                double[] p2 = row(reader, Math.min(rows - 1, j + 1), cache, cached);
+                double[] p3 = row(reader, Math.min(rows - 1, j + 2), cache, cached);
+                double w0 = ((-t + 2) * t - 1) * t / 2;
+                double w1 = ((3 * t - 5) * t * t + 2) / 2;
+                double w2 = ((-3 * t + 4) * t + 1) * t / 2;
+                double w3 = (t - 1) * t * t / 2;
+                for (int k = 0; k < bins; k++) {
+                    column[k] = clip(Math.round(w0 * p0[k] + w1 * p1[k] + w2 * p2[k] + w3 * p3[k]));
+                }
+            } else {
+                double[] p1 = row(reader, j, cache, cached);
+                double[] p2 = row(reader, Math.min(rows - 1, j + 1), cache, cached);
+                for (int k = 0; k < bins; k++) {
+                    column[k] = clip(Math.round(p1[k] + (p2[k] - p1[k]) * t));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static double[] row(RowReader reader, int row, double[][] cache, int[] cached) {
+        int slot = row & 3;
+        if (cached[slot] != row) {
+            reader.read(row, cache[slot]);
+            cached[slot] = row;
+        }
+        return cache[slot];
+    }
+
+    private static int clip(long value) {
+        return (int) Math.max(0, Math.min(255, value));
+    }
+}
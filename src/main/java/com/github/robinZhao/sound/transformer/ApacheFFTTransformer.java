@@ -1,33 +1,139 @@
 package com.github.robinZhao.sound.transformer;
 
-import org.apache.commons.math3.complex.Complex;
+import java.util.Arrays;
+
 import org.apache.commons.math3.transform.DftNormalization;
 import org.apache.commons.math3.transform.FastFourierTransformer;
 import org.apache.commons.math3.transform.TransformType;
 
+import com.github.robinZhao.sound.Kernels;
 import com.github.robinZhao.sound.SpectrumTransformer;
 
 public class ApacheFFTTransformer implements SpectrumTransformer {
 
-    private FastFourierTransformer fft;
     private WindowFun windowFun;
+    // 实部和虚部缓冲区，原地变换，每次转换复用
+    private double[][] dataRI;
+    // 单帧的double样本和结果，float版本和批量转换复用
+    private double[] frame;
+    private double[] row;
 
     public ApacheFFTTransformer(int bufferSize,String windowFun) {
-        this.fft = new FastFourierTransformer(DftNormalization.STANDARD);
         this.windowFun = WindowFun.getWindowFunction(windowFun, null);
+        this.dataRI = new double[2][bufferSize];
     }
 
     @Override
     public double[] transform(double[] audioDoubleBuffer) {
+        return this.transform(audioDoubleBuffer, new double[audioDoubleBuffer.length / 2]);
+    }
+
+    @Override
+    public double[] transform(double[] audioDoubleBuffer, double[] amplitudes) {
+        int bufferSize = this.fft(audioDoubleBuffer);
+        Kernels.get().magnitude(this.dataRI[0], this.dataRI[1], 2d / bufferSize, amplitudes, bufferSize / 2);
+        return amplitudes;
+    }
+
+    @Override
+    public boolean isPowerNative() {
+        return true;
+    }
+
+    @Override
+    public SpectrumTransformer sliding(int hop) {
+        return SlidingDFTTransformer.create(this.dataRI[0].length, this.windowFun, hop);
+    }
+
+    @Override
+    public double[] transformPower(double[] audioDoubleBuffer, double[] out) {
+        int bufferSize = this.fft(audioDoubleBuffer);
+        Kernels.get().power(this.dataRI[0], this.dataRI[1], 4d / ((double) bufferSize * bufferSize), out,
+                bufferSize / 2);
+        return out;
+    }
+
+    /**
+     * fft只有double实现，float样本转换为double后计算，缓冲区复用，不分配内存
+     */
+    @Override
+    public float[] transform(float[] audioFloatBuffer, float[] out) {
+        return this.transformFloat(audioFloatBuffer, out, false);
+    }
+
+    @Override
+    public float[] transformPower(float[] audioFloatBuffer, float[] out) {
+        return this.transformFloat(audioFloatBuffer, out, true);
+    }
+
+    private float[] transformFloat(float[] audioFloatBuffer, float[] out, boolean power) {
+        int bufferSize = audioFloatBuffer.length;
+        this.frameBuffers(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            this.frame[i] = audioFloatBuffer[i];
+        }
+        if (power) {
+            this.transformPower(this.frame, this.row);
+        } else {
+            this.transform(this.frame, this.row);
+        }
+        for (int i = 0; i < this.row.length; i++) {
+            out[i] = (float) this.row[i];
+        }
+        return out;
+    }
+
+    /**
+     * 逐帧复制到复用的缓冲区后转换，不分配内存
+     */
+    @Override
+    public double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, false);
+    }
+
+    @Override
+    public double[] transformPowerBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, true);
+    }
+
+    private double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out, boolean power) {
+        this.frameBuffers(frameSize);
+        int half = frameSize / 2;
+        for (int i = 0; i < frameCount; i++) {
+            System.arraycopy(frames, i * frameSize, this.frame, 0, frameSize);
+            if (power) {
+                this.transformPower(this.frame, this.row);
+            } else {
+                this.transform(this.frame, this.row);
+            }
+            System.arraycopy(this.row, 0, out, i * half, half);
+        }
+        return out;
+    }
+
+    private void frameBuffers(int bufferSize) {
+        if (null == this.frame || this.frame.length != bufferSize) {
+            this.frame = new double[bufferSize];
+            this.row = new double[bufferSize / 2];
+        }
+    }
+
+    /**
+     * 加窗后做fft，结果在dataRI中
+     *
+     * @return bufferSize
+     */
+    private int fft(double[] audioDoubleBuffer) {
         int bufferSize = audioDoubleBuffer.length;
-        double[] amplitudes = new double[audioDoubleBuffer.length / 2];
-        windowFun.apply(audioDoubleBuffer);
-        Complex[] result = fft.transform(audioDoubleBuffer, TransformType.FORWARD);
-        for (int i = 0; i < amplitudes.length; i++) {
-            amplitudes[i] = 2d / bufferSize
-                    * Math.sqrt(Math.pow(result[i].getReal(), 2) + Math.pow(result[i].getImaginary(), 2));
+        if (this.dataRI[0].length != bufferSize) {
+            this.dataRI = new double[2][bufferSize];
         }
-        return amplitudes;
+        double[] real = this.dataRI[0];
+        double[] imag = this.dataRI[1];
+        windowFun.apply(audioDoubleBuffer, real);
+        Arrays.fill(imag, 0d);
+        FastFourierTransformer.transformInPlace(this.dataRI, DftNormalization.STANDARD, TransformType.FORWARD);
+        return bufferSize;
     }
 
 }
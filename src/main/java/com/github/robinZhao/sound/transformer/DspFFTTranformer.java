@@ -1,79 +1,93 @@
 package com.github.robinZhao.sound.transformer;
 
-import java.util.Optional;
-
 import com.github.robinZhao.sound.SpectrumTransformer;
 
-import be.tarsos.dsp.util.fft.BartlettHannWindow;
-import be.tarsos.dsp.util.fft.BartlettWindow;
-import be.tarsos.dsp.util.fft.BlackmanWindow;
-import be.tarsos.dsp.util.fft.CosineWindow;
 import be.tarsos.dsp.util.fft.FFT;
-import be.tarsos.dsp.util.fft.GaussWindow;
-import be.tarsos.dsp.util.fft.HammingWindow;
-import be.tarsos.dsp.util.fft.HannWindow;
-import be.tarsos.dsp.util.fft.LanczosWindow;
-import be.tarsos.dsp.util.fft.RectangularWindow;
-import be.tarsos.dsp.util.fft.TriangularWindow;
-import be.tarsos.dsp.util.fft.WindowFunction;
 
 public class DspFFTTranformer implements SpectrumTransformer {
 
     private FFT fft;
     int bufferSize;
-    private double alpha;
+    private String windowName;
+    // 窗函数系数表，与其他转换器共享
+    private double[] windowValues;
+    // fft输入输出缓冲区，每次转换复用
+    private float[] transformData;
+    private float[] famplitudes;
 
     public DspFFTTranformer(int bufferSize, String windowFun) {
         this.bufferSize = bufferSize;
-        this.fft = new be.tarsos.dsp.util.fft.FFT(bufferSize, this.getWindowFunction(windowFun));
+        this.windowName = windowFun;
+        // 加窗在转换为float时完成，fft不再加窗
+        this.fft = new FFT(bufferSize);
+        this.windowValues = WindowFun.getWindowFunction(windowFun, null).getValues(bufferSize);
+        this.transformData = new float[bufferSize];
+        this.famplitudes = new float[bufferSize / 2];
     }
 
+    /**
+     * 设置blackman、gauss窗函数的alpha
+     */
     public void setAlpha(double alpha) {
-        this.alpha = alpha;
+        this.windowValues = WindowFun.getWindowFunction(this.windowName, alpha).getValues(bufferSize);
     }
 
-    public WindowFunction getWindowFunction(String windowFunc) {
-        switch (windowFunc) {
-            case "bartlett":
-                return new BartlettWindow();
-            case "bartlettHann":
-                return new BartlettHannWindow();
-            case "blackman":
-                float alpha = Optional.ofNullable((float) this.alpha).orElse(0.16f);
-                return new BlackmanWindow(alpha);
-            case "cosine":
-                return new CosineWindow();
-            case "gauss":
-                alpha = Optional.ofNullable((float) this.alpha).orElse(0.25f);
-                return new GaussWindow(alpha);
-            case "hamming":
-                return new HammingWindow();
-            case "hann":
-            case "":
-                return new HannWindow();
-            case "lanczoz":
-                return new LanczosWindow();
-            case "rectangular":
-                return new RectangularWindow();
-            case "triangular":
-                return new TriangularWindow();
-            default:
-                throw new RuntimeException("No such window function " + windowFunc);
-        }
+    @Override
+    public double[] transform(double[] audioDoubleBuffer) {
+        return this.transform(audioDoubleBuffer, new double[bufferSize / 2]);
     }
 
     @Override
-    public double[] transform(double[] audioDoubleBuffer) {
-        float[] transformData = new float[bufferSize];
+    public double[] transform(double[] audioDoubleBuffer, double[] amplitudes) {
+        return this.transform(audioDoubleBuffer, 0, amplitudes, 0);
+    }
+
+    /**
+     * 直接按偏移读取每帧、写入结果，使用已有的缓冲区，不分配内存
+     */
+    @Override
+    public double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        if (frameSize != this.bufferSize) {
+            throw new RuntimeException("帧大小" + frameSize + "与bufferSize" + this.bufferSize + "不一致");
+        }
+        int half = bufferSize / 2;
+        for (int i = 0; i < frameCount; i++) {
+            this.transform(frames, i * bufferSize, out, i * half);
+        }
+        return out;
+    }
+
+    private double[] transform(double[] samples, int offset, double[] amplitudes, int outOffset) {
+        float[] transformData = this.transformData;
+        float[] famplitudes = this.famplitudes;
+        double[] windowValues = this.windowValues;
         for (int i = 0; i < bufferSize; i++) {
-            transformData[i] = (float) audioDoubleBuffer[i];
+            transformData[i] = (float) (samples[offset + i] * windowValues[i]);
         }
         fft.forwardTransform(transformData);
-        float[] famplitudes = new float[bufferSize / 2];
         fft.modulus(transformData, famplitudes);
-        double[] amplitudes = new double[famplitudes.length];
         for (int i = 0; i < famplitudes.length; i++) {
-            amplitudes[i] = 2d / bufferSize * famplitudes[i];
+            amplitudes[outOffset + i] = 2d / bufferSize * famplitudes[i];
+        }
+        return amplitudes;
+    }
+
+    /**
+     * tarsos的fft本身是float，float版本不再经过double转换
+     */
+    @Override
+    public float[] transform(float[] audioFloatBuffer, float[] amplitudes) {
+        float[] transformData = this.transformData;
+        double[] windowValues = this.windowValues;
+        for (int i = 0; i < bufferSize; i++) {
+            transformData[i] = (float) (audioFloatBuffer[i] * windowValues[i]);
+        }
+        fft.forwardTransform(transformData);
+        // modulus按输出数组的长度计算，使用长度正好的缓冲区
+        fft.modulus(transformData, this.famplitudes);
+        float scale = 2f / bufferSize;
+        for (int i = 0; i < this.famplitudes.length; i++) {
+            amplitudes[i] = scale * this.famplitudes[i];
         }
         return amplitudes;
     }
@@ -0,0 +1,200 @@
+package com.github.robinZhao.sound.transformer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import com.github.robinZhao.sound.SpectrumTransformer;
+
+/**
+ * fft计划，按(引擎, 长度, 窗函数, alpha)在进程内全局缓存。
+ * 计划保存不可变的预计算表和窗函数系数，可以在线程间共享；计算用的临时缓冲区每个线程一份，
+ * 同一线程上同一计划的转换器共用。重复创建同样参数的转换器不再重新计算表，也不重复占用内存。
+ * 计划和表的缓存个数有上限，超过时删除最久没有使用的，已创建的转换器继续持有自己的计划。
+ * 临时缓冲区保存在计划的ThreadLocal中，线程池的线程使用过某个计划后，缓冲区一直保留到计划不再被引用
+ *
+ * @param <T> 引擎的预计算表
+ */
+public final class FFTPlan<T> {
+    // 每个线程每个计划的临时缓冲区个数，0到3给转换器使用，4、5给transformFloat使用
+    private static final int SCRATCH_SLOTS = 6;
+    private static final int FLOAT_SAMPLES_SLOT = 4;
+    private static final int FLOAT_RESULT_SLOT = 5;
+    // 缓存的计划和表的个数上限，alpha可以任意取值，不限制时缓存会一直增长
+    private static final int MAX_PLANS = 64;
+    private static final int MAX_TABLES = 64;
+    // 引擎的预计算表，key为 引擎:长度，与窗函数无关，不同窗函数的计划共用
+    private static final Map<String, Object> TABLES = lru(MAX_TABLES);
+    // key为 引擎:长度:窗函数:alpha
+    private static final Map<String, FFTPlan<?>> PLANS = lru(MAX_PLANS);
+
+    private final int size;
+    private final T tables;
+    private final WindowFun windowFun;
+    private final double[] windowValues;
+    // 只有float计算的转换器使用，第一次获取时创建
+    private volatile float[] floatWindowValues;
+    private final ThreadLocal<double[][]> scratch = ThreadLocal.withInitial(() -> new double[SCRATCH_SLOTS][]);
+    private final ThreadLocal<float[][]> floatScratch = ThreadLocal.withInitial(() -> new float[SCRATCH_SLOTS][]);
+
+    private FFTPlan(int size, T tables, WindowFun windowFun, double[] windowValues) {
+        this.size = size;
+        this.tables = tables;
+        this.windowFun = windowFun;
+        this.windowValues = windowValues;
+    }
+
+    /**
+     * 按访问顺序删除最久没有使用的元素的缓存，线程安全
+     */
+    private static <V> Map<String, V> lru(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return this.size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * 获取计划，不存在时创建。同样的参数在进程内只计算一次
+     *
+     * @param engine  引擎名称
+     * @param size    fft长度
+     * @param window  窗函数名称
+     * @param alpha   blackman、gauss窗函数的alpha，可以为null
+     * @param factory 按长度创建引擎的预计算表，创建的表不能再被修改
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> FFTPlan<T> get(String engine, int size, String window, Double alpha, IntFunction<T> factory) {
+        String key = engine + ":" + size + ":" + window + ":" + alpha;
+        FFTPlan<?> plan = PLANS.get(key);
+        if (null == plan) {
+            WindowFun windowFun = WindowFun.getWindowFunction(window, alpha);
+            plan = new FFTPlan<>(size, tables(engine, size, factory), windowFun, windowFun.getValues(size));
+            FFTPlan<?> exists = PLANS.putIfAbsent(key, plan);
+            if (null != exists) {
+                plan = exists;
+            }
+        }
+        return (FFTPlan<T>) plan;
+    }
+
+    /**
+     * 获取引擎的预计算表，不存在时创建。
+     * 不用computeIfAbsent，创建时可能递归获取其他长度的表
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T tables(String engine, int size, IntFunction<T> factory) {
+        String key = engine + ":" + size;
+        Object tables = TABLES.get(key);
+        if (null == tables) {
+            tables = factory.apply(size);
+            Object exists = TABLES.putIfAbsent(key, tables);
+            if (null != exists) {
+                tables = exists;
+            }
+        }
+        return (T) tables;
+    }
+
+    /**
+     * 清空所有缓存的计划和表，释放内存时调用，已创建的转换器不受影响。
+     * 各线程的临时缓冲区在计划不再被转换器引用后随ThreadLocal回收
+     */
+    public static void clear() {
+        PLANS.clear();
+        TABLES.clear();
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    public T getTables() {
+        return this.tables;
+    }
+
+    public WindowFun getWindowFun() {
+        return this.windowFun;
+    }
+
+    /**
+     * 窗函数系数，长度为size，调用方不能修改
+     */
+    public double[] getWindowValues() {
+        return this.windowValues;
+    }
+
+    /**
+     * float版本的窗函数系数，第一次调用时创建，调用方不能修改
+     */
+    public float[] getFloatWindowValues() {
+        float[] values = this.floatWindowValues;
+        if (null == values) {
+            // 多个线程同时创建时结果相同，保留任意一个
+            values = this.windowFun.getFloatValues(this.size);
+            this.floatWindowValues = values;
+        }
+        return values;
+    }
+
+    /**
+     * 当前线程的第slot个临时缓冲区，长度不小于length，内容不确定。
+     * 同一线程上使用同一计划的转换器共用，只能在一次转换内使用，不能跨调用保存
+     *
+     * @param slot 缓冲区编号，0到3
+     */
+    public double[] scratch(int slot, int length) {
+        double[][] buffers = this.scratch.get();
+        double[] buffer = buffers[slot];
+        if (null == buffer || buffer.length < length) {
+            buffer = new double[length];
+            buffers[slot] = buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * fft只有double实现的转换器的float版本：样本转为double写入临时缓冲区，按double转换后结果转回float，不分配内存。
+     * 转换器只能使用0到3号临时缓冲区
+     *
+     * @param power 为true时调用transformPower
+     */
+    public float[] transformFloat(SpectrumTransformer transformer, float[] samples, float[] out, boolean power) {
+        double[] doubleSamples = this.scratch(FLOAT_SAMPLES_SLOT, samples.length);
+        if (doubleSamples.length != samples.length) {
+            // 转换器按输入长度检查帧大小
+            doubleSamples = new double[samples.length];
+            this.scratch.get()[FLOAT_SAMPLES_SLOT] = doubleSamples;
+        }
+        for (int i = 0; i < samples.length; i++) {
+            doubleSamples[i] = samples[i];
+        }
+        int n = samples.length / 2;
+        double[] result = this.scratch(FLOAT_RESULT_SLOT, n);
+        if (power) {
+            transformer.transformPower(doubleSamples, result);
+        } else {
+            transformer.transform(doubleSamples, result);
+        }
+        for (int i = 0; i < n; i++) {
+            out[i] = (float) result[i];
+        }
+        return out;
+    }
+
+    /**
+     * float版本的临时缓冲区，与double版本相互独立
+     */
+    public float[] floatScratch(int slot, int length) {
+        float[][] buffers = this.floatScratch.get();
+        float[] buffer = buffers[slot];
+        if (null == buffer || buffer.length < length) {
+            buffer = new float[length];
+            buffers[slot] = buffer;
+        }
+        return buffer;
+    }
+}
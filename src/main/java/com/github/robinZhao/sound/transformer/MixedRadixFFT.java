@@ -0,0 +1,465 @@
+package com.github.robinZhao.sound.transformer;
+
+import java.util.Arrays;
+
+/**
+ * 任意长度的复数fft。长度只含2、3、5因子时按基4、2、3、5混合基按时间抽取计算，
+ * 不超过13的其他质因子用通用蝶形，含更大的质因子时用Bluestein算法转换为2的幂长度的卷积。
+ * 计划只保存不可变的表，按长度在FFTPlan中缓存，可以在线程间共享，计算用的缓冲区由调用方提供
+ */
+public final class MixedRadixFFT {
+    // 用通用蝶形计算的最大质因子，更大时通用蝶形比Bluestein慢
+    private static final int MAX_GENERIC_RADIX = 13;
+
+    private final int size;
+    // 每一级的基p和剩余长度m，依次存放
+    private final int[] factors;
+    // 通用蝶形的最大基，没有时为0
+    private final int maxGenericRadix;
+    // 旋转因子 e^(-2πik/n)，交错存放实部和虚部
+    private final double[] twiddles;
+    // Bluestein用的2的幂长度的fft，长度能分解时为null
+    private final MixedRadixFFT inner;
+    // chirp e^(-πik²/n)
+    private final double[] chirp;
+    // 卷积核的频谱，已除以inner长度
+    private final double[] kernel;
+
+    private MixedRadixFFT(int size) {
+        if (size < 1) {
+            throw new RuntimeException("Invalid buffer size " + size);
+        }
+        this.size = size;
+        int[] factors = factorize(size);
+        if (null != factors) {
+            this.factors = factors;
+            int maxGeneric = 0;
+            for (int i = 0; i < factors.length; i += 2) {
+                if (factors[i] > 5) {
+                    maxGeneric = Math.max(maxGeneric, factors[i]);
+                }
+            }
+            this.maxGenericRadix = maxGeneric;
+            this.twiddles = new double[size * 2];
+            for (int i = 0; i < size; i++) {
+                double angle = -2 * Math.PI * i / size;
+                this.twiddles[2 * i] = Math.cos(angle);
+                this.twiddles[2 * i + 1] = Math.sin(angle);
+            }
+            this.inner = null;
+            this.chirp = null;
+            this.kernel = null;
+        } else {
+            this.factors = null;
+            this.maxGenericRadix = 0;
+            this.twiddles = null;
+            int m = Integer.highestOneBit(size * 2 - 1);
+            if (m < size * 2 - 1) {
+                m <<= 1;
+            }
+            this.inner = getInstance(m);
+            this.chirp = new double[size * 2];
+            long n2 = size * 2L;
+            for (int k = 0; k < size; k++) {
+                // k²对2n取模后再算角度，避免k较大时丢失精度
+                double angle = -Math.PI * ((long) k * k % n2) / size;
+                this.chirp[2 * k] = Math.cos(angle);
+                this.chirp[2 * k + 1] = Math.sin(angle);
+            }
+            double[] b = new double[m * 2];
+            for (int k = 0; k < size; k++) {
+                b[2 * k] = this.chirp[2 * k];
+                b[2 * k + 1] = -this.chirp[2 * k + 1];
+                if (k > 0) {
+                    b[2 * (m - k)] = b[2 * k];
+                    b[2 * (m - k) + 1] = b[2 * k + 1];
+                }
+            }
+            this.kernel = new double[m * 2];
+            this.inner.transform(b, this.kernel, null);
+            for (int i = 0; i < m * 2; i++) {
+                this.kernel[i] /= m;
+            }
+        }
+    }
+
+    /**
+     * 获取长度为size的计划，同一长度只计算一次
+     */
+    public static MixedRadixFFT getInstance(int size) {
+        // Bluestein会递归获取内部的计划
+        return FFTPlan.tables("mixedRadixComplex", size, MixedRadixFFT::new);
+    }
+
+    /**
+     * 分解为4、2、3、5以及不超过MAX_GENERIC_RADIX的质因子的乘积，含更大的质因子时返回null
+     */
+    private static int[] factorize(int n) {
+        int[] factors = new int[64];
+        int count = 0;
+        int[] radixes = { 4, 2, 3, 5, 7, 11, 13 };
+        for (int p : radixes) {
+            while (n % p == 0 && n > 1) {
+                n /= p;
+                factors[count++] = p;
+                factors[count++] = n;
+            }
+        }
+        if (n > 1) {
+            return null;
+        }
+        if (count == 0) {
+            // 长度为1
+            return new int[] { 1, 1 };
+        }
+        int[] result = new int[count];
+        System.arraycopy(factors, 0, result, 0, count);
+        return result;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * transform需要的临时缓冲区长度，只含2、3、5因子时为0
+     */
+    public int getScratchSize() {
+        return null == this.inner ? this.maxGenericRadix * 4 : this.inner.size * 4;
+    }
+
+    /**
+     * 计算复数fft，输入输出都交错存放实部和虚部
+     *
+     * @param in      输入，长度不小于2n，不会被修改
+     * @param out     输出，长度不小于2n，不能和in是同一个数组
+     * @param scratch 临时缓冲区，长度不小于getScratchSize()
+     */
+    public void transform(double[] in, double[] out, double[] scratch) {
+        if (null != this.inner) {
+            this.bluestein(in, out, scratch);
+        } else if (this.size == 1) {
+            out[0] = in[0];
+            out[1] = in[1];
+        } else {
+            this.work(out, 0, in, 0, 1, 0, scratch);
+        }
+    }
+
+    private void bluestein(double[] in, double[] out, double[] scratch) {
+        int n2 = this.size * 2;
+        int m2 = this.inner.size * 2;
+        double[] chirp = this.chirp;
+        double[] kernel = this.kernel;
+        // scratch前一半存放乘chirp并补零后的序列，后一半存放它的频谱
+        for (int i = 0; i < n2; i += 2) {
+            double xr = in[i];
+            double xi = in[i + 1];
+            double wr = chirp[i];
+            double wi = chirp[i + 1];
+            scratch[i] = xr * wr - xi * wi;
+            scratch[i + 1] = xr * wi + xi * wr;
+        }
+        Arrays.fill(scratch, n2, m2, 0);
+        this.inner.work(scratch, m2 / 2, scratch, 0, 1, 0, null);
+        // 乘卷积核后取共轭，再做一次正变换，结果的共轭就是逆变换
+        for (int i = m2; i < m2 * 2; i += 2) {
+            double ar = scratch[i];
+            double ai = scratch[i + 1];
+            double br = kernel[i - m2];
+            double bi = kernel[i - m2 + 1];
+            scratch[i] = ar * br - ai * bi;
+            scratch[i + 1] = -(ar * bi + ai * br);
+        }
+        this.inner.work(scratch, 0, scratch, m2 / 2, 1, 0, null);
+        for (int i = 0; i < n2; i += 2) {
+            double cr = scratch[i];
+            double ci = -scratch[i + 1];
+            double wr = chirp[i];
+            double wi = chirp[i + 1];
+            out[i] = cr * wr - ci * wi;
+            out[i + 1] = cr * wi + ci * wr;
+        }
+    }
+
+    /**
+     * 递归按时间抽取，下标都以复数为单位
+     */
+    private void work(double[] out, int outPos, double[] in, int inPos, int fstride, int stage, double[] scratch) {
+        int p = this.factors[stage * 2];
+        int m = this.factors[stage * 2 + 1];
+        if (m == 1) {
+            this.leaf(out, outPos, in, inPos, fstride, p, scratch);
+            return;
+        }
+        for (int o = outPos, i = inPos, end = outPos + p * m; o < end; o += m, i += fstride) {
+            this.work(out, o, in, i, fstride * p, stage + 1, scratch);
+        }
+        switch (p) {
+            case 2:
+                this.butterfly2(out, outPos, fstride, m);
+                break;
+            case 3:
+                this.butterfly3(out, outPos, fstride, m);
+                break;
+            case 4:
+                this.butterfly4(out, outPos, fstride, m);
+                break;
+            case 5:
+                this.butterfly5(out, outPos, fstride, m);
+                break;
+            default:
+                this.butterflyGeneric(out, outPos, fstride, m, p, scratch);
+                break;
+        }
+    }
+
+    /**
+     * 最后一级，从输入按步长读取p个点直接做p点dft，基2和基4不需要旋转因子，单独展开
+     */
+    private void leaf(double[] out, int outPos, double[] in, int inPos, int fstride, int p, double[] scratch) {
+        int o = outPos * 2;
+        int a = inPos * 2;
+        int s = fstride * 2;
+        if (p == 2) {
+            int b = a + s;
+            out[o] = in[a] + in[b];
+            out[o + 1] = in[a + 1] + in[b + 1];
+            out[o + 2] = in[a] - in[b];
+            out[o + 3] = in[a + 1] - in[b + 1];
+        } else if (p == 4) {
+            int b = a + s;
+            int c = b + s;
+            int d = c + s;
+            double sr = in[a] + in[c];
+            double si = in[a + 1] + in[c + 1];
+            double dr = in[a] - in[c];
+            double di = in[a + 1] - in[c + 1];
+            double pr = in[b] + in[d];
+            double pi = in[b + 1] + in[d + 1];
+            double ur = in[b] - in[d];
+            double ui = in[b + 1] - in[d + 1];
+            out[o] = sr + pr;
+            out[o + 1] = si + pi;
+            out[o + 4] = sr - pr;
+            out[o + 5] = si - pi;
+            out[o + 2] = dr + ui;
+            out[o + 3] = di - ur;
+            out[o + 6] = dr - ui;
+            out[o + 7] = di + ur;
+        } else {
+            for (int q = 0; q < p; q++, o += 2, a += s) {
+                out[o] = in[a];
+                out[o + 1] = in[a + 1];
+            }
+            switch (p) {
+                case 3:
+                    this.butterfly3(out, outPos, fstride, 1);
+                    break;
+                case 5:
+                    this.butterfly5(out, outPos, fstride, 1);
+                    break;
+                default:
+                    this.butterflyGeneric(out, outPos, fstride, 1, p, scratch);
+                    break;
+            }
+        }
+    }
+
+    private void butterfly2(double[] d, int pos, int fstride, int m) {
+        double[] tw = this.twiddles;
+        for (int k = 0, t = 0; k < m; k++, t += 2 * fstride) {
+            int a = 2 * (pos + k);
+            int b = a + 2 * m;
+            double wr = tw[t];
+            double wi = tw[t + 1];
+            double br = d[b] * wr - d[b + 1] * wi;
+            double bi = d[b] * wi + d[b + 1] * wr;
+            d[b] = d[a] - br;
+            d[b + 1] = d[a + 1] - bi;
+            d[a] += br;
+            d[a + 1] += bi;
+        }
+    }
+
+    private void butterfly3(double[] d, int pos, int fstride, int m) {
+        double[] tw = this.twiddles;
+        // sin(-2π/3)
+        double epi3 = tw[2 * fstride * m + 1];
+        int m2 = 2 * m;
+        for (int k = 0, t1 = 0, t2 = 0; k < m; k++, t1 += 2 * fstride, t2 += 4 * fstride) {
+            int a = 2 * (pos + k);
+            int b = a + m2;
+            int c = b + m2;
+            double s1r = d[b] * tw[t1] - d[b + 1] * tw[t1 + 1];
+            double s1i = d[b] * tw[t1 + 1] + d[b + 1] * tw[t1];
+            double s2r = d[c] * tw[t2] - d[c + 1] * tw[t2 + 1];
+            double s2i = d[c] * tw[t2 + 1] + d[c + 1] * tw[t2];
+            double s3r = s1r + s2r;
+            double s3i = s1i + s2i;
+            double s0r = (s1r - s2r) * epi3;
+            double s0i = (s1i - s2i) * epi3;
+            double br = d[a] - s3r * 0.5;
+            double bi = d[a + 1] - s3i * 0.5;
+            d[a] += s3r;
+            d[a + 1] += s3i;
+            d[c] = br + s0i;
+            d[c + 1] = bi - s0r;
+            d[b] = br - s0i;
+            d[b + 1] = bi + s0r;
+        }
+    }
+
+    private void butterfly4(double[] d, int pos, int fstride, int m) {
+        double[] tw = this.twiddles;
+        int m2 = 2 * m;
+        for (int k = 0, t1 = 0, t2 = 0, t3 = 0; k < m; k++, t1 += 2 * fstride, t2 += 4 * fstride, t3 += 6 * fstride) {
+            int a = 2 * (pos + k);
+            int b = a + m2;
+            int c = b + m2;
+            int e = c + m2;
+            double s0r = d[b] * tw[t1] - d[b + 1] * tw[t1 + 1];
+            double s0i = d[b] * tw[t1 + 1] + d[b + 1] * tw[t1];
+            double s1r = d[c] * tw[t2] - d[c + 1] * tw[t2 + 1];
+            double s1i = d[c] * tw[t2 + 1] + d[c + 1] * tw[t2];
+            double s2r = d[e] * tw[t3] - d[e + 1] * tw[t3 + 1];
+            double s2i = d[e] * tw[t3 + 1] + d[e + 1] * tw[t3];
+            double s5r = d[a] - s1r;
+            double s5i = d[a + 1] - s1i;
+            double ar = d[a] + s1r;
+            double ai = d[a + 1] + s1i;
+            double s3r = s0r + s2r;
+            double s3i = s0i + s2i;
+            double s4r = s0r - s2r;
+            double s4i = s0i - s2i;
+            d[c] = ar - s3r;
+            d[c + 1] = ai - s3i;
+            d[a] = ar + s3r;
+            d[a + 1] = ai + s3i;
+            d[b] = s5r + s4i;
+            d[b + 1] = s5i - s4r;
+            d[e] = s5r - s4i;
+            d[e + 1] = s5i + s4r;
+        }
+    }
+
+    private void butterfly5(double[] d, int pos, int fstride, int m) {
+        double[] tw = this.twiddles;
+        // e^(-2πi/5)和e^(-4πi/5)
+        double yar = tw[2 * fstride * m];
+        double yai = tw[2 * fstride * m + 1];
+        double ybr = tw[4 * fstride * m];
+        double ybi = tw[4 * fstride * m + 1];
+        int m2 = 2 * m;
+        for (int u = 0; u < m; u++) {
+            int a = 2 * (pos + u);
+            int b = a + m2;
+            int c = b + m2;
+            int e = c + m2;
+            int f = e + m2;
+            int t1 = 2 * u * fstride;
+            int t2 = 2 * t1;
+            int t3 = 3 * t1;
+            int t4 = 4 * t1;
+            double s0r = d[a];
+            double s0i = d[a + 1];
+            double s1r = d[b] * tw[t1] - d[b + 1] * tw[t1 + 1];
+            double s1i = d[b] * tw[t1 + 1] + d[b + 1] * tw[t1];
+            double s2r = d[c] * tw[t2] - d[c + 1] * tw[t2 + 1];
+            double s2i = d[c] * tw[t2 + 1] + d[c + 1] * tw[t2];
+            double s3r = d[e] * tw[t3] - d[e + 1] * tw[t3 + 1];
+            double s3i = d[e] * tw[t3 + 1] + d[e + 1] * tw[t3];
+            double s4r = d[f] * tw[t4] - d[f + 1] * tw[t4 + 1];
+            double s4i = d[f] * tw[t4 + 1] + d[f + 1] * tw[t4];
+            double s7r = s1r + s4r;
+            double s7i = s1i + s4i;
+            double s10r = s1r - s4r;
+            double s10i = s1i - s4i;
+            double s8r = s2r + s3r;
+            double s8i = s2i + s3i;
+            double s9r = s2r - s3r;
+            double s9i = s2i - s3i;
+            d[a] = s0r + s7r + s8r;
+            d[a + 1] = s0i + s7i + s8i;
+            double s5r = s0r + s7r * yar + s8r * ybr;
+            double s5i = s0i + s7i * yar + s8i * ybr;
+            double s6r = s10i * yai + s9i * ybi;
+            double s6i = -s10r * yai - s9r * ybi;
+            d[b] = s5r - s6r;
+            d[b + 1] = s5i - s6i;
+            d[f] = s5r + s6r;
+            d[f + 1] = s5i + s6i;
+            double s11r = s0r + s7r * ybr + s8r * yar;
+            double s11i = s0i + s7i * ybr + s8i * yar;
+            double s12r = -s10i * ybi + s9i * yai;
+            double s12i = s10r * ybi - s9r * yai;
+            d[c] = s11r + s12r;
+            d[c + 1] = s11i + s12i;
+            d[e] = s11r - s12r;
+            d[e + 1] = s11i - s12i;
+        }
+    }
+
+    /**
+     * 奇质数基p的蝶形，第j和第p-j个输入成对合并，利用cos、sin的对称性减少乘法
+     */
+    private void butterflyGeneric(double[] d, int pos, int fstride, int m, int p, double[] scratch) {
+        double[] tw = this.twiddles;
+        int h = (p - 1) / 2;
+        // e^(-2πir/p)在twiddles中的步长
+        int rootStride = fstride * m;
+        // scratch依次存放p个乘过旋转因子的输入、h个和、h个差
+        int sums = 2 * p;
+        int diffs = sums + 2 * h;
+        for (int u = 0; u < m; u++) {
+            for (int q = 0, k = pos + u, t = 0; q < p; q++, k += m, t += 2 * u * fstride) {
+                double xr = d[2 * k];
+                double xi = d[2 * k + 1];
+                scratch[2 * q] = xr * tw[t] - xi * tw[t + 1];
+                scratch[2 * q + 1] = xr * tw[t + 1] + xi * tw[t];
+            }
+            double x0r = scratch[0];
+            double x0i = scratch[1];
+            double sumr = x0r;
+            double sumi = x0i;
+            for (int j = 1; j <= h; j++) {
+                int a = 2 * j;
+                int b = 2 * (p - j);
+                double ar = scratch[a] + scratch[b];
+                double ai = scratch[a + 1] + scratch[b + 1];
+                scratch[sums + a - 2] = ar;
+                scratch[sums + a - 1] = ai;
+                scratch[diffs + a - 2] = scratch[a] - scratch[b];
+                scratch[diffs + a - 1] = scratch[a + 1] - scratch[b + 1];
+                sumr += ar;
+                sumi += ai;
+            }
+            d[2 * (pos + u)] = sumr;
+            d[2 * (pos + u) + 1] = sumi;
+            for (int q = 1; q <= h; q++) {
+                double rr = x0r;
+                double ri = x0i;
+                double ir = 0;
+                double ii = 0;
+                for (int j = 1, r = q; j <= h; j++, r += q) {
+                    if (r >= p) {
+                        r -= p;
+                    }
+                    double cos = tw[2 * r * rootStride];
+                    double sin = -tw[2 * r * rootStride + 1];
+                    int a = 2 * (j - 1);
+                    rr += scratch[sums + a] * cos;
+                    ri += scratch[sums + a + 1] * cos;
+                    ir += scratch[diffs + a + 1] * sin;
+                    ii -= scratch[diffs + a] * sin;
+                }
+                int k = pos + u + q * m;
+                int l = pos + u + (p - q) * m;
+                d[2 * k] = rr + ir;
+                d[2 * k + 1] = ri + ii;
+                d[2 * l] = rr - ir;
+                d[2 * l + 1] = ri - ii;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.robinZhao.sound.transformer;
+
+import com.github.robinZhao.sound.Kernels;
+import com.github.robinZhao.sound.SpectrumTransformer;
+
+/**
+ * 支持任意bufferSize的转换器，例如44.1kHz下10ms的441点、48kHz下20ms的960点。
+ * bufferSize为偶数时把实数样本打包成一半长度的复数再拆分，奇数时直接做复数fft，
+ * 输出前bufferSize/2个点的幅值，缩放方式与WavesurferTransformer一致
+ */
+public class MixedRadixFFTTransformer implements SpectrumTransformer {
+    int bufferSize;
+    MixedRadixFFT fft;
+    double[] windowValues;
+    // 偶数长度时拆分实数频谱用的旋转因子 e^(-2πik/N)
+    double[] splitCos;
+    double[] splitSin;
+    // 表从全局计划缓存获取，fft的输入输出和临时缓冲区每个线程一份
+    FFTPlan<Tables> plan;
+    int fftSize;
+
+    public MixedRadixFFTTransformer(int bufferSize, String windowFun) {
+        this(bufferSize, windowFun, null);
+    }
+
+    public MixedRadixFFTTransformer(int bufferSize, String windowFun, Double alpha) {
+        if (bufferSize < 2) {
+            throw new RuntimeException("Invalid buffer size " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.plan = FFTPlan.get("mixedRadix", bufferSize, windowFun, alpha, Tables::new);
+        this.windowValues = this.plan.getWindowValues();
+        this.fft = this.plan.getTables().fft;
+        this.splitCos = this.plan.getTables().splitCos;
+        this.splitSin = this.plan.getTables().splitSin;
+        this.fftSize = this.fft.getSize();
+    }
+
+    /**
+     * 与窗函数无关的预计算表，创建后不再修改
+     */
+    static final class Tables {
+        final MixedRadixFFT fft;
+        final double[] splitCos;
+        final double[] splitSin;
+
+        Tables(int bufferSize) {
+            int fftSize = bufferSize % 2 == 0 ? bufferSize / 2 : bufferSize;
+            this.fft = MixedRadixFFT.getInstance(fftSize);
+            if (bufferSize % 2 == 0) {
+                this.splitCos = new double[fftSize];
+                this.splitSin = new double[fftSize];
+                for (int k = 0; k < fftSize; k++) {
+                    this.splitCos[k] = Math.cos(2 * Math.PI * k / bufferSize);
+                    this.splitSin[k] = -Math.sin(2 * Math.PI * k / bufferSize);
+                }
+            } else {
+                this.splitCos = null;
+                this.splitSin = null;
+            }
+        }
+    }
+
+    @Override
+    public double[] transform(double[] audioDoubleBuffer) {
+        return this.transform(audioDoubleBuffer, new double[bufferSize / 2]);
+    }
+
+    @Override
+    public double[] transform(double[] audioDoubleBuffer, double[] out) {
+        this.checkSize(audioDoubleBuffer.length);
+        return this.transform(audioDoubleBuffer, 0, out, 0, false);
+    }
+
+    @Override
+    public double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, false);
+    }
+
+    @Override
+    public boolean isPowerNative() {
+        return true;
+    }
+
+    @Override
+    public SpectrumTransformer sliding(int hop) {
+        return SlidingDFTTransformer.create(bufferSize, this.plan.getWindowFun(), hop);
+    }
+
+    @Override
+    public double[] transformPower(double[] audioDoubleBuffer, double[] out) {
+        this.checkSize(audioDoubleBuffer.length);
+        return this.transform(audioDoubleBuffer, 0, out, 0, true);
+    }
+
+    /**
+     * fft只有double实现，float样本经计划的临时缓冲区转换，不分配内存
+     */
+    @Override
+    public float[] transform(float[] audioFloatBuffer, float[] out) {
+        return this.plan.transformFloat(this, audioFloatBuffer, out, false);
+    }
+
+    @Override
+    public float[] transformPower(float[] audioFloatBuffer, float[] out) {
+        return this.plan.transformFloat(this, audioFloatBuffer, out, true);
+    }
+
+    @Override
+    public double[] transformPowerBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, true);
+    }
+
+    private double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out, boolean power) {
+        if (frameSize != this.bufferSize) {
+            throw new RuntimeException("帧大小" + frameSize + "与bufferSize" + this.bufferSize + "不一致");
+        }
+        int half = bufferSize / 2;
+        for (int i = 0; i < frameCount; i++) {
+            this.transform(frames, i * bufferSize, out, i * half, power);
+        }
+        return out;
+    }
+
+    private void checkSize(int length) {
+        if (bufferSize != length) {
+            throw new RuntimeException(
+                    "Supplied buffer is not the same size as defined FFT. FFT Size: " +
+                            bufferSize +
+                            " Buffer Size: " +
+                            length);
+        }
+    }
+
+    /**
+     * @param power 为true时输出幅度的平方，不开方
+     */
+    private double[] transform(double[] samples, int offset, double[] out, int outOffset, boolean power) {
+        double[] input = this.plan.scratch(0, fftSize * 2);
+        double[] window = this.windowValues;
+        if (null != this.splitCos) {
+            // 偶数样本作为实部，奇数样本作为虚部
+            Kernels.get().window(samples, offset, window, input, 0, bufferSize);
+        } else {
+            for (int i = 0; i < bufferSize; i++) {
+                input[2 * i] = samples[offset + i] * window[i];
+                input[2 * i + 1] = 0;
+            }
+        }
+        double[] z = this.plan.scratch(1, fftSize * 2);
+        this.fft.transform(input, z, this.plan.scratch(2, this.fft.getScratchSize()));
+        double bSi = 2d / this.bufferSize;
+        double scale = bSi * bSi;
+        int n = bufferSize / 2;
+        if (null == this.splitCos) {
+            if (power) {
+                Kernels.get().power(z, scale, out, outOffset, n);
+            } else {
+                Kernels.get().magnitude(z, bSi, out, outOffset, n);
+            }
+            return out;
+        }
+        for (int k = 0; k < n; k++) {
+            int m = k == 0 ? 0 : n - k;
+            double zkr = z[2 * k];
+            double zki = z[2 * k + 1];
+            double zmr = z[2 * m];
+            double zmi = z[2 * m + 1];
+            // 偶数序列频谱 (Z[k] + conj(Z[M-k])) / 2，奇数序列频谱 (Z[k] - conj(Z[M-k])) / 2i
+            double er = (zkr + zmr) * 0.5;
+            double ei = (zki - zmi) * 0.5;
+            double or = (zki + zmi) * 0.5;
+            double oi = (zmr - zkr) * 0.5;
+            double wr = splitCos[k];
+            double wi = splitSin[k];
+            double rval = er + wr * or - wi * oi;
+            double ival = ei + wr * oi + wi * or;
+            out[outOffset + k] = power ? scale * (rval * rval + ival * ival)
+                    : bSi * Math.sqrt(rval * rval + ival * ival);
+        }
+        return out;
+    }
+}
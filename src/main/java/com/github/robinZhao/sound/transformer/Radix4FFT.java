@@ -0,0 +1,388 @@
+package com.github.robinZhao.sound.transformer;
+
+/**
+ * 实数输入fft：N个实数样本打包为N/2个复数，用基4(级数为奇数时先做一级基2)按时间抽取的fft计算，
+ * 再拆分出实数信号的频谱。原地计算，下标都是int，每一级的旋转因子预先算好并连续存放。
+ * 只保存不可变的表，可以在线程间共享，计算用的缓冲区由调用方提供
+ */
+public final class Radix4FFT {
+    // 实数样本数N
+    private final int size;
+    // 复数fft长度M = N/2
+    private final int half;
+    private final int[] reverse;
+    private final boolean radix2First;
+    // 每一级基4的旋转因子，按j每6个一组存放w^j、w^2j、w^3j的实部和虚部
+    private final double[][] stageTwiddles;
+    // 拆分实数频谱用的旋转因子 e^(-2πik/N)
+    private final double[] splitCos;
+    private final double[] splitSin;
+    // float计算用的同样的表
+    private final float[][] floatStageTwiddles;
+    private final float[] floatSplitCos;
+    private final float[] floatSplitSin;
+
+    public Radix4FFT(int size) {
+        if (size < 2 || (size & (size - 1)) != 0) {
+            throw new RuntimeException("Invalid buffer size, must be a power of 2.");
+        }
+        this.size = size;
+        this.half = size / 2;
+        int bits = Integer.numberOfTrailingZeros(half);
+        this.reverse = new int[half];
+        for (int i = 0; i < half; i++) {
+            this.reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        this.radix2First = (bits & 1) == 1;
+        this.stageTwiddles = new double[bits / 2][];
+        int l = this.radix2First ? 2 : 1;
+        for (int s = 0; s < this.stageTwiddles.length; s++, l *= 4) {
+            double[] twiddles = new double[l * 6];
+            for (int j = 0; j < l; j++) {
+                for (int r = 1; r <= 3; r++) {
+                    double angle = -2 * Math.PI * r * j / (4 * l);
+                    twiddles[j * 6 + (r - 1) * 2] = Math.cos(angle);
+                    twiddles[j * 6 + (r - 1) * 2 + 1] = Math.sin(angle);
+                }
+            }
+            this.stageTwiddles[s] = twiddles;
+        }
+        this.splitCos = new double[half];
+        this.splitSin = new double[half];
+        for (int k = 0; k < half; k++) {
+            this.splitCos[k] = Math.cos(2 * Math.PI * k / size);
+            this.splitSin[k] = -Math.sin(2 * Math.PI * k / size);
+        }
+        this.floatStageTwiddles = new float[this.stageTwiddles.length][];
+        for (int s = 0; s < this.stageTwiddles.length; s++) {
+            this.floatStageTwiddles[s] = toFloat(this.stageTwiddles[s]);
+        }
+        this.floatSplitCos = toFloat(this.splitCos);
+        this.floatSplitSin = toFloat(this.splitSin);
+    }
+
+    private static float[] toFloat(double[] values) {
+        float[] result = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (float) values[i];
+        }
+        return result;
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * 计算加窗后实数信号频谱的前N/2个点，结果交错存放实部和虚部
+     *
+     * @param samples 实数样本，从offset开始取N个，不会被修改
+     * @param offset  起始位置
+     * @param window  窗函数系数，长度N
+     * @param data    输出，长度不小于N，第k个点的实部是data[2k]，虚部是data[2k+1]
+     */
+    public void forward(double[] samples, int offset, double[] window, double[] data) {
+        this.complexForward(samples, offset, window, data);
+        this.split(data);
+    }
+
+    /**
+     * 复数fft，第一级蝶形运算直接从样本按位反转顺序读取并加窗，偶数样本作为实部，奇数样本作为虚部
+     */
+    private void complexForward(double[] samples, int offset, double[] window, double[] data) {
+        int n2 = this.size;
+        int[] reverse = this.reverse;
+        int l2 = 2;
+        int stage = 0;
+        if (this.half == 1) {
+            data[0] = samples[offset] * window[0];
+            data[1] = samples[offset + 1] * window[1];
+            return;
+        }
+        if (this.radix2First) {
+            for (int i = 0, r = 0; i < n2; i += 4, r += 2) {
+                int a = reverse[r] * 2;
+                int b = reverse[r + 1] * 2;
+                double ar = samples[offset + a] * window[a];
+                double ai = samples[offset + a + 1] * window[a + 1];
+                double br = samples[offset + b] * window[b];
+                double bi = samples[offset + b + 1] * window[b + 1];
+                data[i] = ar + br;
+                data[i + 1] = ai + bi;
+                data[i + 2] = ar - br;
+                data[i + 3] = ai - bi;
+            }
+            l2 = 4;
+        } else {
+            // 第一级基4的旋转因子都是1，不做乘法
+            for (int i = 0, r = 0; i < n2; i += 8, r += 4) {
+                int a = reverse[r] * 2;
+                int b = reverse[r + 1] * 2;
+                int c = reverse[r + 2] * 2;
+                int d = reverse[r + 3] * 2;
+                double t0r = samples[offset + a] * window[a];
+                double t0i = samples[offset + a + 1] * window[a + 1];
+                double t2r = samples[offset + b] * window[b];
+                double t2i = samples[offset + b + 1] * window[b + 1];
+                double t1r = samples[offset + c] * window[c];
+                double t1i = samples[offset + c + 1] * window[c + 1];
+                double t3r = samples[offset + d] * window[d];
+                double t3i = samples[offset + d + 1] * window[d + 1];
+                double ar = t0r + t2r;
+                double ai = t0i + t2i;
+                double sr = t0r - t2r;
+                double si = t0i - t2i;
+                double pr = t1r + t3r;
+                double pi = t1i + t3i;
+                double ur = t1r - t3r;
+                double ui = t1i - t3i;
+                data[i] = ar + pr;
+                data[i + 1] = ai + pi;
+                data[i + 4] = ar - pr;
+                data[i + 5] = ai - pi;
+                data[i + 2] = sr + ui;
+                data[i + 3] = si - ur;
+                data[i + 6] = sr - ui;
+                data[i + 7] = si + ur;
+            }
+            l2 = 8;
+            stage = 1;
+        }
+        for (; stage < this.stageTwiddles.length; stage++) {
+            double[] twiddles = this.stageTwiddles[stage];
+            // l2是子序列长度的2倍，即交错存放时一段的长度
+            int l8 = l2 * 4;
+            for (int base = 0; base < n2; base += l8) {
+                for (int j = 0, t = 0; j < l2; j += 2, t += 6) {
+                    // 位反转顺序下4段依次是第0、2、1、3类子序列的频谱
+                    int i0 = base + j;
+                    int i1 = i0 + l2;
+                    int i2 = i1 + l2;
+                    int i3 = i2 + l2;
+                    double w1r = twiddles[t];
+                    double w1i = twiddles[t + 1];
+                    double w2r = twiddles[t + 2];
+                    double w2i = twiddles[t + 3];
+                    double w3r = twiddles[t + 4];
+                    double w3i = twiddles[t + 5];
+                    double t0r = data[i0];
+                    double t0i = data[i0 + 1];
+                    double cr = data[i2];
+                    double ci = data[i2 + 1];
+                    double t1r = cr * w1r - ci * w1i;
+                    double t1i = cr * w1i + ci * w1r;
+                    double br = data[i1];
+                    double bi = data[i1 + 1];
+                    double t2r = br * w2r - bi * w2i;
+                    double t2i = br * w2i + bi * w2r;
+                    double dr = data[i3];
+                    double di = data[i3 + 1];
+                    double t3r = dr * w3r - di * w3i;
+                    double t3i = dr * w3i + di * w3r;
+                    double ar = t0r + t2r;
+                    double ai = t0i + t2i;
+                    double sr = t0r - t2r;
+                    double si = t0i - t2i;
+                    double pr = t1r + t3r;
+                    double pi = t1i + t3i;
+                    double ur = t1r - t3r;
+                    double ui = t1i - t3i;
+                    data[i0] = ar + pr;
+                    data[i0 + 1] = ai + pi;
+                    data[i2] = ar - pr;
+                    data[i2 + 1] = ai - pi;
+                    // (t0 - t2) - i(t1 - t3)
+                    data[i1] = sr + ui;
+                    data[i1 + 1] = si - ur;
+                    // (t0 - t2) + i(t1 - t3)
+                    data[i3] = sr - ui;
+                    data[i3 + 1] = si + ur;
+                }
+            }
+            l2 = l8;
+        }
+    }
+
+    /**
+     * 由N/2点复数fft结果Z原地拆分出实数信号的频谱X，k和M-k成对计算
+     */
+    private void split(double[] data) {
+        double[] splitCos = this.splitCos;
+        double[] splitSin = this.splitSin;
+        data[0] = data[0] + data[1];
+        data[1] = 0;
+        for (int k = 1, m = half - 1; k <= m; k++, m--) {
+            double zkr = data[2 * k];
+            double zki = data[2 * k + 1];
+            double zmr = data[2 * m];
+            double zmi = data[2 * m + 1];
+            // 偶数序列频谱 (Z[k] + conj(Z[M-k])) / 2，奇数序列频谱 (Z[k] - conj(Z[M-k])) / 2i
+            double er = (zkr + zmr) * 0.5;
+            double ei = (zki - zmi) * 0.5;
+            double or = (zki + zmi) * 0.5;
+            double oi = (zmr - zkr) * 0.5;
+            double wr = splitCos[k];
+            double wi = splitSin[k];
+            data[2 * k] = er + wr * or - wi * oi;
+            data[2 * k + 1] = ei + wr * oi + wi * or;
+            if (k != m) {
+                // M-k处偶数序列频谱是conj(E[k])，奇数序列频谱是conj(O[k])
+                wr = splitCos[m];
+                wi = splitSin[m];
+                data[2 * m] = er + wr * or + wi * oi;
+                data[2 * m + 1] = -ei - wr * oi + wi * or;
+            }
+        }
+    }
+
+    /**
+     * float版本，计算方式与double版本相同，表和数据都是float，内存带宽减半
+     */
+    public void forward(float[] samples, int offset, float[] window, float[] data) {
+        this.complexForward(samples, offset, window, data);
+        this.split(data);
+    }
+
+    private void complexForward(float[] samples, int offset, float[] window, float[] data) {
+        int n2 = this.size;
+        int[] reverse = this.reverse;
+        int l2 = 2;
+        int stage = 0;
+        if (this.half == 1) {
+            data[0] = samples[offset] * window[0];
+            data[1] = samples[offset + 1] * window[1];
+            return;
+        }
+        if (this.radix2First) {
+            for (int i = 0, r = 0; i < n2; i += 4, r += 2) {
+                int a = reverse[r] * 2;
+                int b = reverse[r + 1] * 2;
+                float ar = samples[offset + a] * window[a];
+                float ai = samples[offset + a + 1] * window[a + 1];
+                float br = samples[offset + b] * window[b];
+                float bi = samples[offset + b + 1] * window[b + 1];
+                data[i] = ar + br;
+                data[i + 1] = ai + bi;
+                data[i + 2] = ar - br;
+                data[i + 3] = ai - bi;
+            }
+            l2 = 4;
+        } else {
+            // 第一级基4的旋转因子都是1，不做乘法
+            for (int i = 0, r = 0; i < n2; i += 8, r += 4) {
+                int a = reverse[r] * 2;
+                int b = reverse[r + 1] * 2;
+                int c = reverse[r + 2] * 2;
+                int d = reverse[r + 3] * 2;
+                float t0r = samples[offset + a] * window[a];
+                float t0i = samples[offset + a + 1] * window[a + 1];
+                float t2r = samples[offset + b] * window[b];
+                float t2i = samples[offset + b + 1] * window[b + 1];
+                float t1r = samples[offset + c] * window[c];
+                float t1i = samples[offset + c + 1] * window[c + 1];
+                float t3r = samples[offset + d] * window[d];
+                float t3i = samples[offset + d + 1] * window[d + 1];
+                float ar = t0r + t2r;
+                float ai = t0i + t2i;
+                float sr = t0r - t2r;
+                float si = t0i - t2i;
+                float pr = t1r + t3r;
+                float pi = t1i + t3i;
+                float ur = t1r - t3r;
+                float ui = t1i - t3i;
+                data[i] = ar + pr;
+                data[i + 1] = ai + pi;
+                data[i + 4] = ar - pr;
+                data[i + 5] = ai - pi;
+                data[i + 2] = sr + ui;
+                data[i + 3] = si - ur;
+                data[i + 6] = sr - ui;
+                data[i + 7] = si + ur;
+            }
+            l2 = 8;
+            stage = 1;
+        }
+        for (; stage < this.floatStageTwiddles.length; stage++) {
+            float[] twiddles = this.floatStageTwiddles[stage];
+            // l2是子序列长度的2倍，即交错存放时一段的长度
+            int l8 = l2 * 4;
+            for (int base = 0; base < n2; base += l8) {
+                for (int j = 0, t = 0; j < l2; j += 2, t += 6) {
+                    // 位反转顺序下4段依次是第0、2、1、3类子序列的频谱
+                    int i0 = base + j;
+                    int i1 = i0 + l2;
+                    int i2 = i1 + l2;
+                    int i3 = i2 + l2;
+                    float w1r = twiddles[t];
+                    float w1i = twiddles[t + 1];
+                    float w2r = twiddles[t + 2];
+                    float w2i = twiddles[t + 3];
+                    float w3r = twiddles[t + 4];
+                    float w3i = twiddles[t + 5];
+                    float t0r = data[i0];
+                    float t0i = data[i0 + 1];
+                    float cr = data[i2];
+                    float ci = data[i2 + 1];
+                    float t1r = cr * w1r - ci * w1i;
+                    float t1i = cr * w1i + ci * w1r;
+                    float br = data[i1];
+                    float bi = data[i1 + 1];
+                    float t2r = br * w2r - bi * w2i;
+                    float t2i = br * w2i + bi * w2r;
+                    float dr = data[i3];
+                    float di = data[i3 + 1];
+                    float t3r = dr * w3r - di * w3i;
+                    float t3i = dr * w3i + di * w3r;
+                    float ar = t0r + t2r;
+                    float ai = t0i + t2i;
+                    float sr = t0r - t2r;
+                    float si = t0i - t2i;
+                    float pr = t1r + t3r;
+                    float pi = t1i + t3i;
+                    float ur = t1r - t3r;
+                    float ui = t1i - t3i;
+                    data[i0] = ar + pr;
+                    data[i0 + 1] = ai + pi;
+                    data[i2] = ar - pr;
+                    data[i2 + 1] = ai - pi;
+                    // (t0 - t2) - i(t1 - t3)
+                    data[i1] = sr + ui;
+                    data[i1 + 1] = si - ur;
+                    // (t0 - t2) + i(t1 - t3)
+                    data[i3] = sr - ui;
+                    data[i3 + 1] = si + ur;
+                }
+            }
+            l2 = l8;
+        }
+    }
+
+    private void split(float[] data) {
+        float[] splitCos = this.floatSplitCos;
+        float[] splitSin = this.floatSplitSin;
+        data[0] = data[0] + data[1];
+        data[1] = 0;
+        for (int k = 1, m = half - 1; k <= m; k++, m--) {
+            float zkr = data[2 * k];
+            float zki = data[2 * k + 1];
+            float zmr = data[2 * m];
+            float zmi = data[2 * m + 1];
+            // 偶数序列频谱 (Z[k] + conj(Z[M-k])) / 2，奇数序列频谱 (Z[k] - conj(Z[M-k])) / 2i
+            float er = (zkr + zmr) * 0.5f;
+            float ei = (zki - zmi) * 0.5f;
+            float or = (zki + zmi) * 0.5f;
+            float oi = (zmr - zkr) * 0.5f;
+            float wr = splitCos[k];
+            float wi = splitSin[k];
+            data[2 * k] = er + wr * or - wi * oi;
+            data[2 * k + 1] = ei + wr * oi + wi * or;
+            if (k != m) {
+                // M-k处偶数序列频谱是conj(E[k])，奇数序列频谱是conj(O[k])
+                wr = splitCos[m];
+                wi = splitSin[m];
+                data[2 * m] = er + wr * or + wi * oi;
+                data[2 * m + 1] = -ei - wr * oi + wi * or;
+            }
+        }
+    }
+}
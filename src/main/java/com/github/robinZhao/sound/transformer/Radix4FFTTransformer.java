@@ -0,0 +1,122 @@
+package com.github.robinZhao.sound.transformer;
+
+import com.github.robinZhao.sound.Kernels;
+import com.github.robinZhao.sound.SpectrumTransformer;
+
+/**
+ * 基于Radix4FFT的转换器，输出与WavesurferTransformer一致，速度更快
+ */
+public class Radix4FFTTransformer implements SpectrumTransformer {
+    int bufferSize;
+    Radix4FFT fft;
+    double[] windowValues;
+    // 表从全局计划缓存获取，交错存放实部和虚部的fft缓冲区每个线程一份
+    FFTPlan<Radix4FFT> plan;
+
+    public Radix4FFTTransformer(int bufferSize, String windowFun) {
+        this(bufferSize, windowFun, null);
+    }
+
+    public Radix4FFTTransformer(int bufferSize, String windowFun, Double alpha) {
+        this.bufferSize = bufferSize;
+        this.plan = FFTPlan.get("radix4", bufferSize, windowFun, alpha, Radix4FFT::new);
+        this.fft = this.plan.getTables();
+        this.windowValues = this.plan.getWindowValues();
+    }
+
+    @Override
+    public double[] transform(double[] audioDoubleBuffer) {
+        return this.transform(audioDoubleBuffer, new double[bufferSize / 2]);
+    }
+
+    @Override
+    public double[] transform(double[] audioDoubleBuffer, double[] out) {
+        this.checkSize(audioDoubleBuffer.length);
+        return this.transform(audioDoubleBuffer, 0, out, 0, false);
+    }
+
+    @Override
+    public double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, false);
+    }
+
+    @Override
+    public boolean isPowerNative() {
+        return true;
+    }
+
+    @Override
+    public SpectrumTransformer sliding(int hop) {
+        return SlidingDFTTransformer.create(bufferSize, this.plan.getWindowFun(), hop);
+    }
+
+    @Override
+    public double[] transformPower(double[] audioDoubleBuffer, double[] out) {
+        this.checkSize(audioDoubleBuffer.length);
+        return this.transform(audioDoubleBuffer, 0, out, 0, true);
+    }
+
+    @Override
+    public double[] transformPowerBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, true);
+    }
+
+    private double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out, boolean power) {
+        if (frameSize != this.bufferSize) {
+            throw new RuntimeException("帧大小" + frameSize + "与bufferSize" + this.bufferSize + "不一致");
+        }
+        int half = bufferSize / 2;
+        for (int i = 0; i < frameCount; i++) {
+            this.transform(frames, i * bufferSize, out, i * half, power);
+        }
+        return out;
+    }
+
+    private void checkSize(int length) {
+        if (bufferSize != length) {
+            throw new RuntimeException(
+                    "Supplied buffer is not the same size as defined FFT. FFT Size: " +
+                            bufferSize +
+                            " Buffer Size: " +
+                            length);
+        }
+    }
+
+    /**
+     * float版本，使用float的fft
+     */
+    @Override
+    public float[] transform(float[] audioFloatBuffer, float[] out) {
+        this.checkSize(audioFloatBuffer.length);
+        float[] data = this.plan.floatScratch(0, bufferSize);
+        fft.forward(audioFloatBuffer, 0, this.plan.getFloatWindowValues(), data);
+        float bSi = 2f / this.bufferSize;
+        Kernels.get().magnitude(data, bSi, out, 0, bufferSize / 2);
+        return out;
+    }
+
+    @Override
+    public float[] transformPower(float[] audioFloatBuffer, float[] out) {
+        this.checkSize(audioFloatBuffer.length);
+        float[] data = this.plan.floatScratch(0, bufferSize);
+        fft.forward(audioFloatBuffer, 0, this.plan.getFloatWindowValues(), data);
+        float bSi = 2f / this.bufferSize;
+        Kernels.get().power(data, bSi * bSi, out, 0, bufferSize / 2);
+        return out;
+    }
+
+    /**
+     * @param power 为true时输出幅度的平方，不开方
+     */
+    private double[] transform(double[] samples, int offset, double[] out, int outOffset, boolean power) {
+        double[] data = this.plan.scratch(0, bufferSize);
+        fft.forward(samples, offset, this.windowValues, data);
+        double bSi = 2d / this.bufferSize;
+        if (power) {
+            Kernels.get().power(data, bSi * bSi, out, outOffset, bufferSize / 2);
+        } else {
+            Kernels.get().magnitude(data, bSi, out, outOffset, bufferSize / 2);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,305 @@
+package com.github.robinZhao.sound.transformer;
+
+import java.util.Arrays;
+
+import com.github.robinZhao.sound.Kernels;
+import com.github.robinZhao.sound.SpectrumTransformer;
+
+/**
+ * 滑动dft，相邻两帧只相差hop个样本时按移出和移入的样本递推更新频谱，每帧计算量为O(bufferSize * hop)，
+ * hop远小于bufferSize时比每帧做一次fft快。
+ * 窗函数写成复指数之和(WindowFun.getExponentialTerms)，每一项在每个频率点上是一个矩形窗的滑动dft，加权求和即加窗后的频谱。
+ * 递推的舍入误差会累积，每resyncInterval帧用fft重新计算一次；输入不是上一帧后移hop个样本时也重新计算。
+ * 输出的幅度缩放与WavesurferTransformer一致，与fft转换器的结果只差舍入误差。
+ * 有状态，只能按时间顺序转换同一个声道的帧，不能在线程间共享
+ */
+public class SlidingDFTTransformer implements SpectrumTransformer {
+    // 默认每256帧用fft重新计算一次，误差远小于db的显示精度
+    private static final int DEFAULT_RESYNC_INTERVAL = 256;
+    // 每帧的递推次数 项数 * hop 不超过 log2(bufferSize) * FFT_COST_RATIO 时使用滑动dft，
+    // 实测hann窗在hop约为7时与Radix4FFTTransformer持平，留一些余量
+    private static final double FFT_COST_RATIO = 1.5;
+    // 递推时每块的频率点数，状态和系数共6个数组，一块占用24KB
+    private static final int SLIDE_BLOCK = 512;
+    int bufferSize;
+    int hop;
+    int half;
+    // 窗函数各项的系数
+    double[] coefReal;
+    double[] coefImag;
+    // 每项每个频率点一个递推，下标为[项][频率点]
+    // 递推系数 e^(2πi·f) 和 e^(-2πi·f·(bufferSize-1))，f为该递推的频率
+    double[][] stepReal;
+    double[][] stepImag;
+    double[][] inReal;
+    double[][] inImag;
+    // 递推状态，当前帧各项的dft
+    double[][] sumReal;
+    double[][] sumImag;
+    // 重新计算时各项对样本的调制 e^(2πi·g·n/(bufferSize-1))，g为0的项为null
+    double[][] modReal;
+    double[][] modImag;
+    MixedRadixFFT fft;
+    double[] fftIn;
+    double[] fftOut;
+    double[] fftScratch;
+    // 加权求和后的频谱
+    double[] spectrumReal;
+    double[] spectrumImag;
+    // 上一帧的样本
+    double[] previous;
+    boolean synced;
+    int framesSinceSync;
+    int resyncInterval = DEFAULT_RESYNC_INTERVAL;
+
+    /**
+     * @param bufferSize 每帧样本数
+     * @param windowFun  窗函数，必须支持getExponentialTerms
+     * @param hop        相邻两帧相差的样本数，即bufferSize - overlap
+     */
+    public SlidingDFTTransformer(int bufferSize, WindowFun windowFun, int hop) {
+        if (bufferSize < 2 || hop < 1 || hop >= bufferSize) {
+            throw new RuntimeException("bufferSize" + bufferSize + "或hop" + hop + "错误");
+        }
+        double[][] terms = windowFun.getExponentialTerms();
+        if (null == terms) {
+            throw new RuntimeException("窗函数" + windowFun.getClass().getSimpleName() + "不支持滑动dft");
+        }
+        this.bufferSize = bufferSize;
+        this.hop = hop;
+        this.half = bufferSize / 2;
+        this.coefReal = new double[terms.length];
+        this.coefImag = new double[terms.length];
+        this.stepReal = new double[terms.length][half];
+        this.stepImag = new double[terms.length][half];
+        this.inReal = new double[terms.length][half];
+        this.inImag = new double[terms.length][half];
+        this.sumReal = new double[terms.length][half];
+        this.sumImag = new double[terms.length][half];
+        this.modReal = new double[terms.length][];
+        this.modImag = new double[terms.length][];
+        double n = bufferSize;
+        for (int r = 0; r < terms.length; r++) {
+            this.coefReal[r] = terms[r][0];
+            this.coefImag[r] = terms[r][1];
+            double g = terms[r][2];
+            for (int k = 0; k < half; k++) {
+                // f = k/N - g/(N-1)
+                double f = (k * (n - 1) - g * n) / (n * (n - 1));
+                this.stepReal[r][k] = Math.cos(2 * Math.PI * f);
+                this.stepImag[r][k] = Math.sin(2 * Math.PI * f);
+                // e^(-2πi·f·(N-1)) = e^(2πi·k/N) * e^(2πi·g)
+                double in = k / n + g;
+                this.inReal[r][k] = Math.cos(2 * Math.PI * in);
+                this.inImag[r][k] = Math.sin(2 * Math.PI * in);
+            }
+            if (g != 0) {
+                this.modReal[r] = new double[bufferSize];
+                this.modImag[r] = new double[bufferSize];
+                for (int i = 0; i < bufferSize; i++) {
+                    this.modReal[r][i] = Math.cos(2 * Math.PI * g * i / (n - 1));
+                    this.modImag[r][i] = Math.sin(2 * Math.PI * g * i / (n - 1));
+                }
+            }
+        }
+        this.fft = MixedRadixFFT.getInstance(bufferSize);
+        this.fftIn = new double[bufferSize * 2];
+        this.fftOut = new double[bufferSize * 2];
+        this.fftScratch = new double[this.fft.getScratchSize()];
+        this.previous = new double[bufferSize];
+        this.spectrumReal = new double[half];
+        this.spectrumImag = new double[half];
+    }
+
+    /**
+     * 创建滑动dft转换器，窗函数不支持或者估计不比fft快时返回null
+     */
+    public static SlidingDFTTransformer create(int bufferSize, WindowFun windowFun, int hop) {
+        if (bufferSize < 2 || hop < 1 || hop >= bufferSize) {
+            return null;
+        }
+        double[][] terms = windowFun.getExponentialTerms();
+        if (null == terms || !isFaster(bufferSize, hop, terms.length)) {
+            return null;
+        }
+        return new SlidingDFTTransformer(bufferSize, windowFun, hop);
+    }
+
+    /**
+     * 估计滑动dft是否比fft快。滑动dft每帧约 terms * bufferSize/2 * hop 次复数乘加，
+     * fft每帧约 bufferSize/2 * log2(bufferSize) 次蝶形运算，再加上加窗和求幅度
+     */
+    public static boolean isFaster(int bufferSize, int hop, int terms) {
+        double log2 = Math.log(bufferSize) / Math.log(2);
+        return terms * hop <= log2 * FFT_COST_RATIO;
+    }
+
+    /**
+     * 设置每隔多少帧用fft重新计算一次，默认256
+     */
+    public void setResyncInterval(int resyncInterval) {
+        this.resyncInterval = Math.max(1, resyncInterval);
+    }
+
+    /**
+     * 丢弃递推状态，下一帧用fft重新计算
+     */
+    public void reset() {
+        this.synced = false;
+    }
+
+    @Override
+    public double[] transform(double[] audioDoubleBuffer) {
+        return this.transform(audioDoubleBuffer, new double[half]);
+    }
+
+    @Override
+    public double[] transform(double[] audioDoubleBuffer, double[] out) {
+        this.checkSize(audioDoubleBuffer.length);
+        this.update(audioDoubleBuffer, 0);
+        return this.output(out, 0, false);
+    }
+
+    /**
+     * 按顺序逐帧递推，不复制帧
+     */
+    @Override
+    public double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, false);
+    }
+
+    @Override
+    public boolean isPowerNative() {
+        return true;
+    }
+
+    @Override
+    public double[] transformPower(double[] audioDoubleBuffer, double[] out) {
+        this.checkSize(audioDoubleBuffer.length);
+        this.update(audioDoubleBuffer, 0);
+        return this.output(out, 0, true);
+    }
+
+    @Override
+    public double[] transformPowerBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, true);
+    }
+
+    private double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out, boolean power) {
+        this.checkSize(frameSize);
+        for (int i = 0; i < frameCount; i++) {
+            this.update(frames, i * frameSize);
+            this.output(out, i * half, power);
+        }
+        return out;
+    }
+
+    private void checkSize(int frameSize) {
+        if (frameSize != this.bufferSize) {
+            throw new RuntimeException("帧大小" + frameSize + "与bufferSize" + this.bufferSize + "不一致");
+        }
+    }
+
+    /**
+     * 更新到frames中offset位置开始的一帧：是上一帧后移hop个样本时递推，否则重新计算
+     */
+    private void update(double[] frames, int offset) {
+        int n = this.bufferSize;
+        if (this.synced && this.framesSinceSync < this.resyncInterval
+                && Arrays.equals(frames, offset, offset + n - hop, this.previous, hop, n)) {
+            this.slide(frames, offset);
+            this.framesSinceSync++;
+        } else {
+            this.resync(frames, offset);
+            this.synced = true;
+            this.framesSinceSync = 0;
+        }
+        System.arraycopy(frames, offset, this.previous, 0, n);
+    }
+
+    /**
+     * 逐个样本递推：S' = e^(2πi·f) * (S - 移出的样本) + 移入的样本 * e^(-2πi·f·(N-1))
+     */
+    private void slide(double[] frames, int offset) {
+        double[] previous = this.previous;
+        int start = offset + this.bufferSize - this.hop;
+        for (int r = 0; r < this.coefReal.length; r++) {
+            double[] sumReal = this.sumReal[r];
+            double[] sumImag = this.sumImag[r];
+            double[] stepReal = this.stepReal[r];
+            double[] stepImag = this.stepImag[r];
+            double[] inReal = this.inReal[r];
+            double[] inImag = this.inImag[r];
+            // 按块处理，一块的状态和系数在hop个样本的递推中保持在L1缓存
+            for (int block = 0; block < half; block += SLIDE_BLOCK) {
+                int end = Math.min(half, block + SLIDE_BLOCK);
+                for (int t = 0; t < this.hop; t++) {
+                    double out = previous[t];
+                    double in = frames[start + t];
+                    for (int k = block; k < end; k++) {
+                        double re = sumReal[k] - out;
+                        double im = sumImag[k];
+                        sumReal[k] = stepReal[k] * re - stepImag[k] * im + in * inReal[k];
+                        sumImag[k] = stepImag[k] * re + stepReal[k] * im + in * inImag[k];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 用fft直接计算各项的dft，清除累积的误差
+     */
+    private void resync(double[] frames, int offset) {
+        int n = this.bufferSize;
+        double[] fftIn = this.fftIn;
+        double[] fftOut = this.fftOut;
+        for (int r = 0; r < this.coefReal.length; r++) {
+            double[] modReal = this.modReal[r];
+            double[] modImag = this.modImag[r];
+            for (int i = 0; i < n; i++) {
+                double x = frames[offset + i];
+                if (null == modReal) {
+                    fftIn[2 * i] = x;
+                    fftIn[2 * i + 1] = 0;
+                } else {
+                    fftIn[2 * i] = x * modReal[i];
+                    fftIn[2 * i + 1] = x * modImag[i];
+                }
+            }
+            this.fft.transform(fftIn, fftOut, this.fftScratch);
+            for (int k = 0; k < half; k++) {
+                this.sumReal[r][k] = fftOut[2 * k];
+                this.sumImag[r][k] = fftOut[2 * k + 1];
+            }
+        }
+    }
+
+    /**
+     * 各项加权求和得到加窗后的频谱，输出幅度或功率，写入out的offset位置
+     */
+    private double[] output(double[] out, int offset, boolean power) {
+        double[] real = this.spectrumReal;
+        double[] imag = this.spectrumImag;
+        Arrays.fill(real, 0d);
+        Arrays.fill(imag, 0d);
+        for (int r = 0; r < this.coefReal.length; r++) {
+            double cr = this.coefReal[r];
+            double ci = this.coefImag[r];
+            double[] sumReal = this.sumReal[r];
+            double[] sumImag = this.sumImag[r];
+            for (int k = 0; k < half; k++) {
+                real[k] += cr * sumReal[k] - ci * sumImag[k];
+                imag[k] += cr * sumImag[k] + ci * sumReal[k];
+            }
+        }
+        double scale = 2d / this.bufferSize;
+        if (power) {
+            Kernels.get().power(real, imag, scale * scale, real, half);
+        } else {
+            Kernels.get().magnitude(real, imag, scale, real, half);
+        }
+        System.arraycopy(real, 0, out, offset, half);
+        return out;
+    }
+}
@@ -1,34 +1,219 @@
 package com.github.robinZhao.sound.transformer;
 
+import com.github.robinZhao.sound.Kernels;
 import com.github.robinZhao.sound.SpectrumTransformer;
 
 public class SunFFTTransformer implements SpectrumTransformer {
+    // 批量转换时每块fft缓冲区的总字节数，一块的数据能放进L2缓存
+    private static final int TILE_BYTES = 1 << 18;
     SunFFT fft;
     int bufferSize;
     WindowFun windowFun;
+    // 表从全局计划缓存获取，交错存放实部和虚部的fft缓冲区每个线程一份
+    FFTPlan<Tables> plan;
+    // fft缓冲区长度
+    int dataLength;
+    // 实数输入模式：N个实数样本打包为N/2个复数做fft，再拆分出实数信号的频谱
+    boolean realInput;
+    // 窗函数系数，长度为bufferSize
+    double[] windowValues;
+    // 实数输入模式下拆分频谱用的旋转因子 e^(-2πik/N)
+    double[] cosTable;
+    double[] sinTable;
+    // 批量转换的fft缓冲区，每帧一个
+    double[][] tile;
 
     public SunFFTTransformer(int bufferSize,String windowFun) {
+        this(bufferSize, windowFun, false);
+    }
+
+    /**
+     * @param bufferSize 每个分段多少帧，必须是2的幂
+     * @param windowFun  窗函数名称
+     * @param realInput  是否使用实数输入fft，只做一半长度的复数fft，计算量约为原来的一半
+     */
+    public SunFFTTransformer(int bufferSize, String windowFun, boolean realInput) {
         this.bufferSize = bufferSize;
-        this.fft = new SunFFT(this.bufferSize, -1);
         this.windowFun = WindowFun.getWindowFunction(windowFun, null);
+        this.realInput = realInput;
+        if (realInput) {
+            this.plan = FFTPlan.get("sunReal", bufferSize, windowFun, null, n -> new Tables(n, true));
+            this.dataLength = bufferSize;
+        } else {
+            this.plan = FFTPlan.get("sun", bufferSize, windowFun, null, n -> new Tables(n, false));
+            this.dataLength = bufferSize * 2;
+        }
+        this.windowValues = this.plan.getWindowValues();
+        this.fft = this.plan.getTables().fft;
+        this.cosTable = this.plan.getTables().cosTable;
+        this.sinTable = this.plan.getTables().sinTable;
+    }
+
+    /**
+     * 与窗函数无关的预计算表，创建后不再修改。SunFFT只保存不可变的表，可以共享
+     */
+    static final class Tables {
+        final SunFFT fft;
+        final double[] cosTable;
+        final double[] sinTable;
+
+        Tables(int bufferSize, boolean realInput) {
+            if (realInput) {
+                int half = bufferSize / 2;
+                this.fft = new SunFFT(half, -1);
+                this.cosTable = new double[half];
+                this.sinTable = new double[half];
+                for (int k = 0; k < half; k++) {
+                    this.cosTable[k] = Math.cos(2 * Math.PI * k / bufferSize);
+                    this.sinTable[k] = -Math.sin(2 * Math.PI * k / bufferSize);
+                }
+            } else {
+                this.fft = new SunFFT(bufferSize, -1);
+                this.cosTable = null;
+                this.sinTable = null;
+            }
+        }
     }
 
     @Override
     public double[] transform(double[] audioDoubleBuffer) {
-        double[] temp = new double[audioDoubleBuffer.length];
-        System.arraycopy(audioDoubleBuffer, 0, temp, 0, audioDoubleBuffer.length);
-        //windowFun.apply(temp);
-        double[] transformData = new double[bufferSize * 2];
-        for (int i = 0; i < bufferSize; i++) {
-            transformData[2 * i] = temp[i];
-            transformData[2 * i + 1] = 0;
-        }
-        windowFun.apply(transformData);
-        fft.transform(transformData);
-        double[] amplitudes = new double[bufferSize / 2];
-        for (int i = 0; i < amplitudes.length; i++) {
-            amplitudes[i] = 2d / this.bufferSize
-                    * Math.sqrt(Math.pow(transformData[2 * i], 2) + Math.pow(transformData[2 * i + 1], 2));
+        return this.transform(audioDoubleBuffer, new double[bufferSize / 2]);
+    }
+
+    @Override
+    public double[] transform(double[] audioDoubleBuffer, double[] amplitudes) {
+        double[] data = this.plan.scratch(0, this.dataLength);
+        this.window(audioDoubleBuffer, 0, data);
+        fft.transform(data);
+        return this.magnitudes(data, amplitudes, 0, false);
+    }
+
+    @Override
+    public boolean isPowerNative() {
+        return true;
+    }
+
+    @Override
+    public SpectrumTransformer sliding(int hop) {
+        return SlidingDFTTransformer.create(bufferSize, this.windowFun, hop);
+    }
+
+    /**
+     * fft只有double实现，float样本经计划的临时缓冲区转换，不分配内存
+     */
+    @Override
+    public float[] transform(float[] audioFloatBuffer, float[] out) {
+        return this.plan.transformFloat(this, audioFloatBuffer, out, false);
+    }
+
+    @Override
+    public float[] transformPower(float[] audioFloatBuffer, float[] out) {
+        return this.plan.transformFloat(this, audioFloatBuffer, out, true);
+    }
+
+    @Override
+    public double[] transformPower(double[] audioDoubleBuffer, double[] out) {
+        double[] data = this.plan.scratch(0, this.dataLength);
+        this.window(audioDoubleBuffer, 0, data);
+        fft.transform(data);
+        return this.magnitudes(data, out, 0, true);
+    }
+
+    /**
+     * 按块批量转换：一块内先全部加窗，再全部fft，最后全部求幅度，每个阶段的表和缓冲区在一块内保持在缓存中
+     */
+    @Override
+    public double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, false);
+    }
+
+    @Override
+    public double[] transformPowerBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, true);
+    }
+
+    private double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out, boolean power) {
+        if (frameSize != this.bufferSize) {
+            throw new RuntimeException("帧大小" + frameSize + "与bufferSize" + this.bufferSize + "不一致");
+        }
+        int dataLength = this.dataLength;
+        int tileFrames = Math.max(1, Math.min(frameCount, TILE_BYTES / 8 / dataLength));
+        if (null == this.tile || this.tile.length < tileFrames) {
+            this.tile = new double[tileFrames][dataLength];
+        }
+        double[][] tile = this.tile;
+        int half = bufferSize / 2;
+        for (int start = 0; start < frameCount; start += tileFrames) {
+            int n = Math.min(tileFrames, frameCount - start);
+            for (int t = 0; t < n; t++) {
+                this.window(frames, (start + t) * bufferSize, tile[t]);
+            }
+            for (int t = 0; t < n; t++) {
+                fft.transform(tile[t]);
+            }
+            for (int t = 0; t < n; t++) {
+                this.magnitudes(tile[t], out, (start + t) * half, power);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 加窗并写入fft缓冲区
+     */
+    private void window(double[] samples, int offset, double[] data) {
+        double[] windowValues = this.windowValues;
+        if (this.realInput) {
+            // 偶数样本作为实部，奇数样本作为虚部
+            Kernels.get().window(samples, offset, windowValues, data, 0, bufferSize);
+        } else {
+            // 窗函数作用在bufferSize个实数样本上，虚部为0
+            for (int i = 0; i < bufferSize; i++) {
+                data[2 * i] = samples[offset + i] * windowValues[i];
+                data[2 * i + 1] = 0;
+            }
+        }
+    }
+
+    /**
+     * fft结果转换为幅度，写入amplitudes的offset位置
+     *
+     * @param power 为true时输出幅度的平方，不开方
+     */
+    private double[] magnitudes(double[] data, double[] amplitudes, int offset, boolean power) {
+        if (this.realInput) {
+            return this.realMagnitudes(data, amplitudes, offset, power);
+        }
+        if (power) {
+            Kernels.get().power(data, 4d / ((double) this.bufferSize * this.bufferSize), amplitudes, offset,
+                    bufferSize / 2);
+        } else {
+            Kernels.get().magnitude(data, 2d / this.bufferSize, amplitudes, offset, bufferSize / 2);
+        }
+        return amplitudes;
+    }
+
+    private double[] realMagnitudes(double[] data, double[] amplitudes, int offset, boolean power) {
+        int half = bufferSize / 2;
+        double scale = 2d / this.bufferSize;
+        double powerScale = scale * scale;
+        for (int k = 0; k < half; k++) {
+            int m = k == 0 ? 0 : half - k;
+            double zr = data[2 * k];
+            double zi = data[2 * k + 1];
+            double zmr = data[2 * m];
+            double zmi = data[2 * m + 1];
+            // 偶数序列频谱 (Z[k] + conj(Z[M-k])) / 2
+            double er = (zr + zmr) * 0.5;
+            double ei = (zi - zmi) * 0.5;
+            // 奇数序列频谱 (Z[k] - conj(Z[M-k])) / 2i
+            double or = (zi + zmi) * 0.5;
+            double oi = (zmr - zr) * 0.5;
+            double wr = cosTable[k];
+            double wi = sinTable[k];
+            double xr = er + wr * or - wi * oi;
+            double xi = ei + wr * oi + wi * or;
+            amplitudes[offset + k] = power ? powerScale * (xr * xr + xi * xi) : scale * Math.sqrt(xr * xr + xi * xi);
         }
         return amplitudes;
     }
@@ -1,6 +1,6 @@
 package com.github.robinZhao.sound.transformer;
 
-import java.util.Optional;
+import com.github.robinZhao.sound.Kernels;
 
 public class WavesurferFFT {
     static final double LN2 = Math.log(2.0d);
@@ -11,6 +11,8 @@ public class WavesurferFFT {
     double[] cosTable;
     double[] windowValues;
     long[] reverseTable;
+    // 表从全局计划缓存获取，实部、虚部缓冲区每个线程一份
+    FFTPlan<Tables> plan;
     double peak;
     int peakBand;
 
@@ -20,105 +22,80 @@ public class WavesurferFFT {
 
     public WavesurferFFT(int bufferSize, String windowFunc, Double alpha) {
         this.bufferSize = bufferSize;
-        this.sinTable = new double[bufferSize];
-        this.cosTable = new double[bufferSize];
-        this.windowValues = new double[bufferSize];
-        this.reverseTable = new long[bufferSize];
+        this.plan = FFTPlan.get("wavesurfer", bufferSize, windowFunc, alpha, Tables::new);
+        this.sinTable = this.plan.getTables().sinTable;
+        this.cosTable = this.plan.getTables().cosTable;
+        this.reverseTable = this.plan.getTables().reverseTable;
 
         this.peakBand = 0;
         this.peak = 0;
 
-        switch (windowFunc) {
-            case "bartlett":
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = (2d / (bufferSize - 1))
-                            * ((bufferSize - 1) / 2d - Math.abs(i - (bufferSize - 1) / 2d));
-                }
-                break;
-            case "bartlettHann":
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = 0.62 - 0.48 * Math.abs(i / (bufferSize - 1) - 0.5)
-                            - 0.38 * Math.cos((Math.PI * 2 * i) / (bufferSize - 1));
-                }
-                break;
-            case "blackman":
-                alpha = Optional.ofNullable(alpha).orElse(0.16d);
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = (1 - alpha) / 2 -
-                            0.5 * Math.cos((Math.PI * 2 * i) / (bufferSize - 1)) +
-                            (alpha / 2) * Math.cos((4 * Math.PI * i) / (bufferSize - 1));
-                }
-                break;
-            case "cosine":
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = Math.cos((Math.PI * i) / (bufferSize - 1) - Math.PI / 2d);
-                }
-                break;
-            case "gauss":
-                alpha = Optional.ofNullable(alpha).orElse(0.25d);
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = Math.pow(
-                            Math.E,
-                            -0.5 * Math.pow((i - (bufferSize - 1) / 2d) / ((alpha * (bufferSize - 1)) / 2d), 2));
-                }
-                break;
-            case "hamming":
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = 0.54 - 0.46 * Math.cos((Math.PI * 2 * i) / (bufferSize - 1));
-                }
-                break;
-            case "hann":
-            case "":
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = 0.5 * (1 - Math.cos((Math.PI * 2d * i) / (bufferSize - 1)));
-                }
-                break;
-            case "lanczoz":
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = Math.sin(Math.PI * ((2d * i) / (bufferSize - 1) - 1))
-                            / (Math.PI * ((2d * i) / (bufferSize - 1) - 1));
-                }
-                break;
-            case "rectangular":
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = 1;
-                }
-                break;
-            case "triangular":
-                for (int i = 0; i < bufferSize; i++) {
-                    this.windowValues[i] = (2d / bufferSize) * (bufferSize / 2d - Math.abs(i - (bufferSize - 1) / 2d));
-                }
-                break;
-            default:
-                throw new RuntimeException("No such window function " + windowFunc);
-        }
+        // 窗函数系数表与其他转换器共享
+        this.windowValues = this.plan.getWindowValues();
+    }
 
-        int limit = 1;
-        int bit = bufferSize >> 1;
+    /**
+     * 与窗函数无关的预计算表，创建后不再修改
+     */
+    static final class Tables {
+        final double[] sinTable;
+        final double[] cosTable;
+        final long[] reverseTable;
+
+        Tables(int bufferSize) {
+            this.sinTable = new double[bufferSize];
+            this.cosTable = new double[bufferSize];
+            this.reverseTable = new long[bufferSize];
+
+            int limit = 1;
+            int bit = bufferSize >> 1;
+
+            while (limit < bufferSize) {
+                for (int i = 0; i < limit; i++) {
+                    this.reverseTable[i + limit] = this.reverseTable[i] + bit;
+                }
 
-        while (limit < bufferSize) {
-            for (int i = 0; i < limit; i++) {
-                this.reverseTable[i + limit] = this.reverseTable[i] + bit;
+                limit = limit << 1;
+                bit = bit >> 1;
             }
 
-            limit = limit << 1;
-            bit = bit >> 1;
-        }
-
-        for (int i = 0; i < bufferSize; i++) {
-            this.sinTable[i] = Math.sin(-Math.PI / i);
-            this.cosTable[i] = Math.cos(-Math.PI / i);
+            for (int i = 0; i < bufferSize; i++) {
+                this.sinTable[i] = Math.sin(-Math.PI / i);
+                this.cosTable[i] = Math.cos(-Math.PI / i);
+            }
         }
     }
 
     public double[] calculateSpectrum(double[] buffer) {
-        double[] real = new double[bufferSize];
-        double[] imag = new double[bufferSize];
+        return this.calculateSpectrum(buffer, new double[bufferSize / 2]);
+    }
+
+    /**
+     * 计算频谱并写入spectrum，不分配内存
+     * 
+     * @param buffer   时域信号
+     * @param spectrum 输出数组，长度不小于bufferSize / 2
+     * @return spectrum
+     */
+    public double[] calculateSpectrum(double[] buffer, double[] spectrum) {
+        return this.calculate(buffer, spectrum, false);
+    }
+
+    /**
+     * 计算功率谱(幅度的平方)并写入spectrum，不开方。peak仍然是幅度
+     *
+     * @param buffer   时域信号
+     * @param spectrum 输出数组，长度不小于bufferSize / 2
+     * @return spectrum
+     */
+    public double[] calculatePowerSpectrum(double[] buffer, double[] spectrum) {
+        return this.calculate(buffer, spectrum, true);
+    }
+
+    private double[] calculate(double[] buffer, double[] spectrum, boolean power) {
+        double[] real = this.plan.scratch(0, bufferSize);
+        double[] imag = this.plan.scratch(1, bufferSize);
         double bSi = 2d / this.bufferSize;
-        double rval;
-        double ival;
-        double mag;
-        double[] spectrum = new double[bufferSize / 2];
 
         double k = Math.floor(Math.log(bufferSize) / LN2);
 
@@ -179,16 +156,26 @@ public class WavesurferFFT {
             halfSize = halfSize << 1;
         }
 
-        for (int i = 0, N = bufferSize / 2; i < N; i++) {
-            rval = real[i];
-            ival = imag[i];
-            mag = bSi * Math.sqrt(rval * rval + ival * ival);
-
-            if (mag > this.peak) {
+        int n = bufferSize / 2;
+        if (power) {
+            Kernels.get().power(real, imag, bSi * bSi, spectrum, n);
+            double peakPower = this.peak * this.peak;
+            for (int i = 0; i < n; i++) {
+                if (spectrum[i] > peakPower) {
+                    this.peakBand = i;
+                    this.peak = Math.sqrt(spectrum[i]);
+                    peakPower = spectrum[i];
+                }
+            }
+            return spectrum;
+        }
+        // 先求全部幅度，再找峰值
+        Kernels.get().magnitude(real, imag, bSi, spectrum, n);
+        for (int i = 0; i < n; i++) {
+            if (spectrum[i] > this.peak) {
                 this.peakBand = i;
-                this.peak = mag;
+                this.peak = spectrum[i];
             }
-            spectrum[i] = mag;
         }
         return spectrum;
     }
@@ -18,4 +18,70 @@ public class WavesurferTransformer implements SpectrumTransformer {
         return fft.calculateSpectrum(audioDoubleBuffer);
     }
 
+    @Override
+    public double[] transform(double[] audioDoubleBuffer, double[] out) {
+        return fft.calculateSpectrum(audioDoubleBuffer, out);
+    }
+
+    @Override
+    public boolean isPowerNative() {
+        return true;
+    }
+
+    @Override
+    public SpectrumTransformer sliding(int hop) {
+        return SlidingDFTTransformer.create(bufferSize, this.fft.plan.getWindowFun(), hop);
+    }
+
+    @Override
+    public double[] transformPower(double[] audioDoubleBuffer, double[] out) {
+        return fft.calculatePowerSpectrum(audioDoubleBuffer, out);
+    }
+
+    /**
+     * fft只有double实现，float样本经计划的临时缓冲区转换，不分配内存
+     */
+    @Override
+    public float[] transform(float[] audioFloatBuffer, float[] out) {
+        return this.fft.plan.transformFloat(this, audioFloatBuffer, out, false);
+    }
+
+    @Override
+    public float[] transformPower(float[] audioFloatBuffer, float[] out) {
+        return this.fft.plan.transformFloat(this, audioFloatBuffer, out, true);
+    }
+
+    /**
+     * 逐帧复制到计划的临时缓冲区后转换，不分配内存。fft使用0、1号缓冲区，这里使用2、3号
+     */
+    @Override
+    public double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, false);
+    }
+
+    @Override
+    public double[] transformPowerBatch(double[] frames, int frameSize, int frameCount, double[] out) {
+        return this.transformBatch(frames, frameSize, frameCount, out, true);
+    }
+
+    private double[] transformBatch(double[] frames, int frameSize, int frameCount, double[] out, boolean power) {
+        if (frameSize != this.bufferSize) {
+            throw new RuntimeException("帧大小" + frameSize + "与bufferSize" + this.bufferSize + "不一致");
+        }
+        int half = bufferSize / 2;
+        // calculate按输入长度检查帧大小，缓冲区长度必须正好是bufferSize
+        double[] frame = this.fft.plan.scratch(2, bufferSize);
+        double[] row = this.fft.plan.scratch(3, half);
+        for (int i = 0; i < frameCount; i++) {
+            System.arraycopy(frames, i * bufferSize, frame, 0, bufferSize);
+            if (power) {
+                fft.calculatePowerSpectrum(frame, row);
+            } else {
+                fft.calculateSpectrum(frame, row);
+            }
+            System.arraycopy(row, 0, out, i * half, half);
+        }
+        return out;
+    }
+
 }
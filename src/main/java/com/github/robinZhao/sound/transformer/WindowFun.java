@@ -1,25 +1,111 @@
 package com.github.robinZhao.sound.transformer;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
+import com.github.robinZhao.sound.Kernels;
+
 public abstract class WindowFun {
     protected static final double TWO_PI = Math.PI * 2;
+    // 缓存的系数表个数上限，alpha可以任意取值，长度随格式和bufferSize变化，不限制时缓存会一直增长
+    private static final int MAX_VALUES = 64;
+    // 系数表缓存，key为 类型:alpha:长度
+    private static final Map<String, double[]> VALUES_CACHE = lru(MAX_VALUES);
+    private static final Map<String, float[]> FLOAT_VALUES_CACHE = lru(MAX_VALUES);
+    // 最近一次使用的系数表，只保存已填充完的表，volatile保证其他线程读到的表是完整的
+    private volatile double[] values;
 
     protected WindowFun() {
     }
 
+    /**
+     * 按访问顺序删除最久没有使用的元素的缓存，线程安全
+     */
+    private static <V> Map<String, V> lru(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return this.size() > maxEntries;
+            }
+        });
+    }
+
     public void apply(double[] samples) {
-        for (int n = 0; n < samples.length; ++n) {
-            samples[n] *= this.getValue(samples.length, n);
+        double[] values = this.getValues(samples.length);
+        Kernels.get().window(samples, 0, values, samples, 0, samples.length);
+    }
+
+    /**
+     * out[n] = in[n] * w[n]，不修改in
+     */
+    public void apply(double[] in, double[] out) {
+        double[] values = this.getValues(in.length);
+        Kernels.get().window(in, 0, values, out, 0, in.length);
+    }
+
+    /**
+     * 长度为length的窗函数系数表，按(类型, 长度, alpha)全局缓存，所有转换器共享，调用方不能修改。
+     * 缓存超过上限时删除最久没有使用的，已获取的表继续有效
+     */
+    public double[] getValues(int length) {
+        double[] values = this.values;
+        if (null == values || values.length != length) {
+            String key = this.cacheKey() + ":" + length;
+            values = VALUES_CACHE.get(key);
+            if (null == values) {
+                values = new double[length];
+                for (int n = 0; n < length; n++) {
+                    values[n] = this.getValue(length, n);
+                }
+                double[] exists = VALUES_CACHE.putIfAbsent(key, values);
+                if (null != exists) {
+                    values = exists;
+                }
+            }
+            this.values = values;
         }
+        return values;
+    }
+
+    /**
+     * float版本的系数表，同样全局缓存，调用方不能修改
+     */
+    public float[] getFloatValues(int length) {
+        String key = this.cacheKey() + ":" + length;
+        float[] floatValues = FLOAT_VALUES_CACHE.get(key);
+        if (null == floatValues) {
+            double[] values = this.getValues(length);
+            floatValues = new float[length];
+            for (int n = 0; n < length; n++) {
+                floatValues[n] = (float) values[n];
+            }
+            float[] exists = FLOAT_VALUES_CACHE.putIfAbsent(key, floatValues);
+            if (null != exists) {
+                floatValues = exists;
+            }
+        }
+        return floatValues;
+    }
 
+    protected String cacheKey() {
+        return this.getClass().getName();
     }
 
     protected abstract double getValue(int length, int idx);
 
+    /**
+     * 窗函数写成复指数之和 w[n] = Σ c·e^(2πi·f·n/(length-1)) 时的各项，每项为{c的实部, c的虚部, f}。
+     * 不能这样表示时返回null，滑动dft只支持能这样表示的窗函数
+     */
+    public double[][] getExponentialTerms() {
+        return null;
+    }
+
     public static class BartlettWindow extends WindowFun {
         public double getValue(int length, int index) {
-            return (2 / (length - 1))
+            return (2d / (length - 1))
                     * ((length - 1) / 2d - Math.abs(index - (length - 1) / 2d));
         }
     }
@@ -42,17 +128,34 @@ public abstract class WindowFun {
             this.alpha = 0.16d;
         }
 
+        @Override
+        protected String cacheKey() {
+            return super.cacheKey() + ":" + alpha;
+        }
+
         public double getValue(int length, int index) {
             return (1 - alpha) / 2 -
                     0.5d * Math.cos((Math.PI * 2 * index) / (length - 1)) +
                     (alpha / 2) * Math.cos((4 * Math.PI * index) / (length - 1));
         }
+
+        @Override
+        public double[][] getExponentialTerms() {
+            return new double[][] { { (1 - alpha) / 2, 0, 0 }, { -0.25d, 0, 1 }, { -0.25d, 0, -1 },
+                    { alpha / 4, 0, 2 }, { alpha / 4, 0, -2 } };
+        }
     }
 
     public static class CosineWindow extends WindowFun {
         public double getValue(int length, int index) {
             return Math.cos((Math.PI * index) / (length - 1) - Math.PI / 2);
         }
+
+        @Override
+        public double[][] getExponentialTerms() {
+            // sin(x) = (e^(ix) - e^(-ix)) / 2i
+            return new double[][] { { 0, -0.5d, 0.5d }, { 0, 0.5d, -0.5d } };
+        }
     }
 
     public static class GaussWindow extends WindowFun {
@@ -66,6 +169,11 @@ public abstract class WindowFun {
             this.alpha = 0.25d;
         }
 
+        @Override
+        protected String cacheKey() {
+            return super.cacheKey() + ":" + alpha;
+        }
+
         public double getValue(int length, int index) {
             return Math.pow(
                     Math.E,
@@ -77,12 +185,22 @@ public abstract class WindowFun {
         public double getValue(int length, int index) {
             return 0.54 - 0.46 * Math.cos((Math.PI * 2 * index) / (length - 1));
         }
+
+        @Override
+        public double[][] getExponentialTerms() {
+            return new double[][] { { 0.54d, 0, 0 }, { -0.23d, 0, 1 }, { -0.23d, 0, -1 } };
+        }
     }
 
     public static class HannWindow extends WindowFun {
         public double getValue(int length, int index) {
             return 0.5 * (1 - Math.cos((Math.PI * 2 * index) / (length - 1)));
         }
+
+        @Override
+        public double[][] getExponentialTerms() {
+            return new double[][] { { 0.5d, 0, 0 }, { -0.25d, 0, 1 }, { -0.25d, 0, -1 } };
+        }
     }
 
     public static class LanczozWindow extends WindowFun {
@@ -96,6 +214,11 @@ public abstract class WindowFun {
         public double getValue(int length, int index) {
             return 1;
         }
+
+        @Override
+        public double[][] getExponentialTerms() {
+            return new double[][] { { 1, 0, 0 } };
+        }
     }
 
     public static class TriangularWindow extends WindowFun {
@@ -122,6 +245,7 @@ public abstract class WindowFun {
             case "hamming":
                 return new HammingWindow();
             case "hann":
+            case "":
                 return new HannWindow();
             case "lanczoz":
                 return new LanczozWindow();
@@ -0,0 +1,94 @@
+package com.github.robinZhao.sound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * fast方式的误差和colorIndex方式的颜色序号在文档说明的范围内
+ */
+public class DbConverterTest {
+    // 幅度从1e-14到1e4，覆盖MIN_MAGNITUDE以下和0db以上
+    private static final double MIN_LOG = -14;
+    private static final double MAX_LOG = 4;
+    private static final int SAMPLES = 1 << 20;
+    // fast方式文档说明的最大误差
+    private static final double FAST_MAX_ERROR = 2e-5;
+    // {rangeDB, gainDB}
+    private static final double[][] SETTINGS = { { 140, 0 }, { 80, 20 }, { 100, -10 }, { 255, 0 } };
+
+    @Test
+    public void fastErrorWithinBound() {
+        DbConverter exact = new DbConverter(DbConverter.Type.exact, 140, 0);
+        DbConverter fast = new DbConverter(DbConverter.Type.fast, 140, 0);
+        double[] magnitudes = magnitudes();
+        double[] powers = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            powers[i] = magnitudes[i] * magnitudes[i];
+        }
+        double[] expected = exact.toDb(magnitudes, new double[SAMPLES]);
+        double[] actual = fast.toDb(magnitudes, new double[SAMPLES]);
+        double[] actualPower = fast.powerToDb(powers, new double[SAMPLES]);
+        double maxError = 0;
+        double maxPowerError = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            maxError = Math.max(maxError, Math.abs(expected[i] - actual[i]));
+            maxPowerError = Math.max(maxPowerError, Math.abs(expected[i] - actualPower[i]));
+        }
+        assertTrue("幅度最大误差" + maxError + "db", maxError <= FAST_MAX_ERROR);
+        assertTrue("功率最大误差" + maxPowerError + "db", maxPowerError <= FAST_MAX_ERROR);
+    }
+
+    /**
+     * 与精确计算后按convertToColorMap的方式取颜色序号的结果相同
+     */
+    @Test
+    public void colorIndexMatchesExact() {
+        double[] magnitudes = magnitudes();
+        double[] powers = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            powers[i] = magnitudes[i] * magnitudes[i];
+        }
+        for (double[] setting : SETTINGS) {
+            double rangeDB = setting[0];
+            double gainDB = setting[1];
+            DbConverter exact = new DbConverter(DbConverter.Type.exact, rangeDB, gainDB);
+            DbConverter colorIndex = new DbConverter(DbConverter.Type.colorIndex, rangeDB, gainDB);
+            double[] expected = exact.toDb(magnitudes, new double[SAMPLES]);
+            double[] actual = colorIndex.toDb(magnitudes, new double[SAMPLES]);
+            double[] actualPower = colorIndex.powerToDb(powers, new double[SAMPLES]);
+            for (int i = 0; i < SAMPLES; i++) {
+                int expectedIndex = colorIndex(expected[i], rangeDB);
+                // 输出是颜色序号对应的db值
+                double expectedDb = (expectedIndex - 255d) / 255 * rangeDB;
+                if (Math.abs(actual[i] - expectedDb) > 1e-9 || Math.abs(actualPower[i] - expectedDb) > 1e-9) {
+                    String message = "range " + rangeDB + " gain " + gainDB + " 幅度" + magnitudes[i];
+                    assertEquals(message, expectedIndex, colorIndex(actual[i], rangeDB));
+                    assertEquals(message + " 功率", expectedIndex, colorIndex(actualPower[i], rangeDB));
+                    assertEquals(message, expectedDb, actual[i], 1e-9);
+                    assertEquals(message + " 功率", expectedDb, actualPower[i], 1e-9);
+                }
+            }
+        }
+    }
+
+    /**
+     * convertToColorMap的颜色序号
+     */
+    private static int colorIndex(double db, double rangeDB) {
+        double valueDB = Math.max(-rangeDB, Math.min(0, db));
+        return (int) Math.round(valueDB / rangeDB * 255 + 255);
+    }
+
+    /**
+     * 对数均匀分布的幅度
+     */
+    private static double[] magnitudes() {
+        double[] magnitudes = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            magnitudes[i] = Math.pow(10, MIN_LOG + (MAX_LOG - MIN_LOG) * i / (SAMPLES - 1));
+        }
+        return magnitudes;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.robinZhao.sound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.github.robinZhao.sound.transformer.Radix4FFTTransformer;
+import com.github.robinZhao.sound.transformer.WavesurferTransformer;
+
+/**
+ * float处理与double处理的db误差，截取到颜色映射的范围后不超过一个颜色序号对应的db，即rangeDB / 255
+ */
+public class FloatPipelineTest {
+    private static final File AUDIO = new File("test.wav");
+    private static final int BUFFER_SIZE = 512;
+
+    @Test
+    public void radix4ErrorBelowOneColor() {
+        this.assertFloatError(ScaleFilter.Type.mel, () -> new Radix4FFTTransformer(BUFFER_SIZE, "hann"));
+        this.assertFloatError(ScaleFilter.Type.linear, () -> new Radix4FFTTransformer(BUFFER_SIZE, "hann"));
+    }
+
+    @Test
+    public void wavesurferErrorBelowOneColor() {
+        this.assertFloatError(ScaleFilter.Type.mel, () -> new WavesurferTransformer(BUFFER_SIZE, "hann"));
+    }
+
+    private void assertFloatError(ScaleFilter.Type scaleType,
+            Supplier<SpectrumTransformer> transformer) {
+        SpectrumMatrix[] expected = this.run(scaleType, transformer.get(), false);
+        SpectrumMatrix[] actual = this.run(scaleType, transformer.get(), true);
+        Spectrum reference = new Spectrum(AUDIO, BUFFER_SIZE, scaleType, transformer.get());
+        double rangeDB = reference.getRangeDB();
+        assertEquals("声道数", expected.length, actual.length);
+        double maxError = 0;
+        for (int c = 0; c < expected.length; c++) {
+            assertEquals("帧数", expected[c].rows(), actual[c].rows());
+            double[] expectedRow = new double[expected[c].columns()];
+            double[] actualRow = new double[actual[c].columns()];
+            for (int i = 0; i < expected[c].rows(); i++) {
+                expected[c].getRow(i, expectedRow);
+                actual[c].getRow(i, actualRow);
+                for (int j = 0; j < expectedRow.length; j++) {
+                    double error = Math.abs(clip(expectedRow[j], rangeDB) - clip(actualRow[j], rangeDB));
+                    maxError = Math.max(maxError, error);
+                }
+            }
+        }
+        assertTrue(scaleType + " 最大误差" + maxError + "db", maxError < rangeDB / 255);
+    }
+
+    private SpectrumMatrix[] run(ScaleFilter.Type scaleType, SpectrumTransformer transformer, boolean floatPipeline) {
+        Spectrum spectrum = new Spectrum(AUDIO, BUFFER_SIZE, scaleType, transformer);
+        spectrum.setOverlap(256);
+        spectrum.setFloatPipeline(floatPipeline);
+        spectrum.run();
+        return spectrum.getFrequenciesData();
+    }
+
+    private static double clip(double db, double rangeDB) {
+        return Math.max(-rangeDB, Math.min(0, db));
+    }
+}
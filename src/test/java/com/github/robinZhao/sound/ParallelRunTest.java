@@ -0,0 +1,158 @@
+package com.github.robinZhao.sound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.github.robinZhao.sound.transformer.Radix4FFTTransformer;
+import com.github.robinZhao.sound.transformer.WavesurferTransformer;
+
+/**
+ * 并行计算与run()的结果逐位相同
+ */
+public class ParallelRunTest {
+    private static final File AUDIO = new File("test.wav");
+    private static final int BUFFER_SIZE = 512;
+    private static final int[] OVERLAPS = { 0, 256, 384 };
+    private static final int[] THREADS = { 1, 2, 4 };
+
+    @Test
+    public void parallelMatchesRun() {
+        for (int overlap : OVERLAPS) {
+            for (int threads : THREADS) {
+                this.assertSameAsRun(overlap, threads, true, 32);
+            }
+        }
+    }
+
+    @Test
+    public void splitChannelsMatchRun() {
+        for (int overlap : OVERLAPS) {
+            this.assertSameAsRun(overlap, 3, false, 32);
+        }
+    }
+
+    /**
+     * batchFrames小于等于1时run()逐帧转换
+     */
+    @Test
+    public void stepModeMatchesRun() {
+        this.assertSameAsRun(256, 2, true, 1);
+        this.assertSameAsRun(256, 2, false, 1);
+    }
+
+    /**
+     * 一个分段失败时取消其余未完成的分段，不会在线程池中继续计算
+     */
+    @Test
+    public void failedSegmentCancelsPending() throws InterruptedException {
+        Spectrum spectrum = new Spectrum(AUDIO, BUFFER_SIZE, ScaleFilter.Type.mel);
+        spectrum.setSegmentFrames(1);
+        AtomicInteger started = new AtomicInteger();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // 失败的分段不归还转换器，之后开始的每个分段都会调用一次工厂。
+            // 第一个分段立即失败，之后的分段一直等待到被取消(中断)为止
+            spectrum.run(executor, () -> {
+                if (started.incrementAndGet() > 1) {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                throw new RuntimeException("转换器创建失败");
+            });
+            fail("分段失败时应该抛出异常");
+        } catch (RuntimeException e) {
+            // 预期的失败
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // 其余分段要么还没开始就被取消，要么开始后被中断
+        assertTrue("其余分段没有被取消", started.get() == 1 || interrupted.get());
+    }
+
+    /**
+     * hop很小时run()默认不使用滑动dft，仍与并行计算一致
+     */
+    @Test
+    public void smallHopMatchesRun() {
+        this.assertSameAsRun(BUFFER_SIZE - 4, () -> new Radix4FFTTransformer(BUFFER_SIZE, "hann"));
+        this.assertSameAsRun(BUFFER_SIZE - 2, () -> new WavesurferTransformer(BUFFER_SIZE, "hann"));
+    }
+
+    private void assertSameAsRun(int overlap, int threads, boolean mergeChannel, int batchFrames) {
+        String message = "overlap " + overlap + " threads " + threads + " merge " + mergeChannel + " batch "
+                + batchFrames;
+        Spectrum serial = new Spectrum(AUDIO, BUFFER_SIZE, ScaleFilter.Type.mel);
+        serial.setOverlap(overlap);
+        serial.setMergeChannel(mergeChannel);
+        serial.setBatchFrames(batchFrames);
+        serial.run();
+        Spectrum parallel = new Spectrum(AUDIO, BUFFER_SIZE, ScaleFilter.Type.mel);
+        parallel.setOverlap(overlap);
+        parallel.setMergeChannel(mergeChannel);
+        // 分段帧数不整除总帧数，最后一段不满
+        parallel.setSegmentFrames(7);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            parallel.run(executor, () -> new WavesurferTransformer(BUFFER_SIZE, "hann"));
+        } finally {
+            executor.shutdown();
+        }
+        assertSame(message, serial, parallel);
+    }
+
+    private void assertSameAsRun(int overlap, Supplier<SpectrumTransformer> transformer) {
+        String message = "overlap " + overlap;
+        Spectrum serial = this.create(overlap, transformer.get());
+        serial.run();
+        Spectrum parallel = this.create(overlap, transformer.get());
+        parallel.runParallel(transformer);
+        assertSame(message, serial, parallel);
+    }
+
+    private Spectrum create(int overlap, SpectrumTransformer transformer) {
+        Spectrum spectrum = new Spectrum(AUDIO, BUFFER_SIZE, ScaleFilter.Type.mel, transformer);
+        spectrum.setOverlap(overlap);
+        // hop很小时帧数很多，只计算前2秒
+        spectrum.setTimeRange(0, 2);
+        return spectrum;
+    }
+
+    private static void assertSame(String message, Spectrum expected, Spectrum actual) {
+        assertEquals(message + " 帧数", expected.getTimelineSize(), actual.getTimelineSize());
+        for (int i = 0; i < expected.getTimelineSize(); i++) {
+            assertEquals(message + " 时间" + i, expected.getTime(i), actual.getTime(i), 0);
+        }
+        SpectrumMatrix[] expectedData = expected.getFrequenciesData();
+        SpectrumMatrix[] actualData = actual.getFrequenciesData();
+        assertEquals(message + " 声道数", expectedData.length, actualData.length);
+        for (int c = 0; c < expectedData.length; c++) {
+            assertEquals(message + " 行数", expectedData[c].rows(), actualData[c].rows());
+            double[] expectedRow = new double[expectedData[c].columns()];
+            double[] actualRow = new double[actualData[c].columns()];
+            for (int i = 0; i < expectedData[c].rows(); i++) {
+                expectedData[c].getRow(i, expectedRow);
+                actualData[c].getRow(i, actualRow);
+                for (int j = 0; j < expectedRow.length; j++) {
+                    assertEquals(message + " 声道" + c + " 帧" + i + " 频率点" + j, expectedRow[j], actualRow[j], 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.robinZhao.sound;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 稀疏滤波器组与稠密矩阵乘法的结果一致
+ */
+public class ScaleFilterTest {
+    private static final double[] SAMPLE_RATES = { 16000, 44100 };
+    private static final int[] FFT_SAMPLES = { 512, 1024 };
+    // 相对于最大输出的误差
+    private static final double TOLERANCE = 1e-12;
+    private static final double FLOAT_TOLERANCE = 1e-6;
+
+    @Test
+    public void sparseMatchesDense() {
+        Random random = new Random(1);
+        for (ScaleFilter.Type type : ScaleFilter.Type.values()) {
+            for (double sampleRate : SAMPLE_RATES) {
+                for (int fftSamples : FFT_SAMPLES) {
+                    for (int numFilters : new int[] { fftSamples / 2, 64 }) {
+                        ScaleFilter scale = new ScaleFilter(type, sampleRate, fftSamples, numFilters);
+                        double[][] dense = denseFilterBank(scale, sampleRate, fftSamples, numFilters);
+                        double[] amplitudes = amplitudes(random, fftSamples / 2);
+                        String message = type + " " + sampleRate + " " + fftSamples + " " + numFilters;
+                        double[] expected = scale.applyFilterBank(amplitudes, dense);
+                        double[] actual = scale.getFilterBank().apply(amplitudes, new double[numFilters]);
+                        assertClose(message, expected, actual, TOLERANCE);
+
+                        float[] floatAmplitudes = new float[amplitudes.length];
+                        for (int i = 0; i < amplitudes.length; i++) {
+                            floatAmplitudes[i] = (float) amplitudes[i];
+                        }
+                        float[] floatActual = scale.getFilterBank().apply(floatAmplitudes, new float[numFilters]);
+                        double[] floatResult = new double[numFilters];
+                        for (int i = 0; i < numFilters; i++) {
+                            floatResult[i] = floatActual[i];
+                        }
+                        assertClose(message + " float", expected, floatResult, FLOAT_TOLERANCE);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sparsePowerMatchesDense() {
+        Random random = new Random(2);
+        for (ScaleFilter.Type type : ScaleFilter.Type.values()) {
+            for (double sampleRate : SAMPLE_RATES) {
+                for (int fftSamples : FFT_SAMPLES) {
+                    int numFilters = fftSamples / 2;
+                    ScaleFilter scale = new ScaleFilter(type, sampleRate, fftSamples, numFilters);
+                    double[][] dense = denseFilterBank(scale, sampleRate, fftSamples, numFilters);
+                    double[] amplitudes = amplitudes(random, fftSamples / 2);
+                    double[] powers = new double[amplitudes.length];
+                    for (int i = 0; i < amplitudes.length; i++) {
+                        powers[i] = amplitudes[i] * amplitudes[i];
+                    }
+                    double[] expected = scale.applyFilterBank(amplitudes, dense);
+                    for (int i = 0; i < expected.length; i++) {
+                        expected[i] *= expected[i];
+                    }
+                    double[] actual = scale.getFilterBank().applyPower(powers, new double[numFilters]);
+                    assertClose(type + " " + sampleRate + " " + fftSamples + " power", expected, actual, TOLERANCE);
+                }
+            }
+        }
+    }
+
+    /**
+     * 稠密滤波器组，每个滤波器在相邻两个fft点之间线性插值
+     */
+    private static double[][] denseFilterBank(ScaleFilter scale, double sampleRate, int fftSamples,
+            int numFilters) {
+        double filterMin = scale.hzToScale(0d);
+        double filterMax = scale.hzToScale(sampleRate / 2);
+        double[][] filterBank = new double[numFilters][fftSamples / 2 + 1];
+        double binWidth = sampleRate / fftSamples;
+        for (int i = 0; i < numFilters; i++) {
+            double hz = scale.scaleToHz(filterMin + ((double) i / numFilters) * (filterMax - filterMin));
+            int j = (int) Math.floor(hz / binWidth);
+            double r = (hz - j * binWidth) / binWidth;
+            filterBank[i][j] = 1 - r;
+            filterBank[i][j + 1] = r;
+        }
+        return filterBank;
+    }
+
+    private static double[] amplitudes(Random random, int size) {
+        double[] amplitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            amplitudes[i] = random.nextDouble();
+        }
+        return amplitudes;
+    }
+
+    private static void assertClose(String message, double[] expected, double[] actual, double tolerance) {
+        double max = 0;
+        for (double value : expected) {
+            max = Math.max(max, Math.abs(value));
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(message + " filter " + i, expected[i], actual[i], max * tolerance);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.robinZhao.sound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.robinZhao.sound.transformer.WavesurferTransformer;
+
+public class SpectrogramTilesTest {
+    private static final File AUDIO = new File("test.wav");
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("spectrogram-tiles").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> stream = Files.walk(this.directory.toPath())) {
+            stream.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * 参数和数据大小不变、重新计算后，之前的瓦片失效
+     */
+    @Test
+    public void rerunInvalidatesTiles() throws IOException {
+        try (MappedWavReader reader = new MappedWavReader(AUDIO)) {
+            Spectrum spectrum = new Spectrum(reader, 512, ScaleFilter.Type.mel, new WavesurferTransformer(512, "hann"));
+            spectrum.run(0, 1);
+            SpectrogramTiles tiles = new SpectrogramTiles(spectrum, this.directory, 1 << 20);
+            tiles.getTile(0, 0, 0);
+            List<Path> before = this.tileFiles();
+            assertEquals(1, before.size());
+
+            spectrum.run(0, 1);
+            tiles.getTile(0, 0, 0);
+            List<Path> after = this.tileFiles();
+            assertEquals(1, after.size());
+            assertFalse("重新计算后仍使用之前的瓦片", before.get(0).equals(after.get(0)));
+        }
+    }
+
+    private List<Path> tileFiles() throws IOException {
+        try (Stream<Path> stream = Files.walk(this.directory.toPath())) {
+            return stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+}
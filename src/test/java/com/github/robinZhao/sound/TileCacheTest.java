@@ -0,0 +1,75 @@
+package com.github.robinZhao.sound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileCacheTest {
+    private static final String PREFIX = "00000000-0000-0000-0000-000000000000/0/0/";
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("tile-cache").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> stream = Files.walk(this.directory.toPath())) {
+            stream.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * 最近读取过的瓦片不会先被删除
+     */
+    @Test
+    public void recentlyReadTileSurvivesEviction() {
+        TileCache cache = new TileCache(this.directory, 30);
+        cache.put(PREFIX + "0.png", new byte[10]);
+        cache.put(PREFIX + "1.png", new byte[10]);
+        cache.put(PREFIX + "2.png", new byte[10]);
+        assertNotNull(cache.get(PREFIX + "0.png"));
+        cache.put(PREFIX + "3.png", new byte[10]);
+        assertNotNull("最近读取的瓦片被删除", cache.get(PREFIX + "0.png"));
+        assertNull("最久没有访问的瓦片没有删除", cache.get(PREFIX + "1.png"));
+        assertNotNull(cache.get(PREFIX + "2.png"));
+        assertNotNull(cache.get(PREFIX + "3.png"));
+    }
+
+    /**
+     * 不符合键格式的文件不作为缓存读取，也不会被删除
+     */
+    @Test
+    public void foreignFilesAreNeverDeleted() throws IOException {
+        File notes = new File(this.directory, "notes.txt");
+        File image = new File(this.directory, "images/0.png");
+        File tile = new File(this.directory, PREFIX + "9.png.bak");
+        image.getParentFile().mkdirs();
+        tile.getParentFile().mkdirs();
+        Files.write(notes.toPath(), new byte[100]);
+        Files.write(image.toPath(), new byte[100]);
+        Files.write(tile.toPath(), new byte[100]);
+        TileCache cache = new TileCache(this.directory, 30);
+        assertEquals("其他文件被当作缓存", 0, cache.size());
+        cache.put(PREFIX + "0.png", new byte[20]);
+        cache.put(PREFIX + "1.png", new byte[20]);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertTrue(notes.isFile());
+        assertTrue(image.isFile());
+        assertTrue(tile.isFile());
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.robinZhao.sound;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.github.robinZhao.sound.transformer.WavesurferTransformer;
+
+/**
+ * 从中间开始计算区间时，每帧与从头计算时同一位置的帧相同，第一帧使用区间开始前的overlap帧
+ */
+public class TimeRangeTest {
+    private static final File AUDIO = new File("test.wav");
+    private static final int BUFFER_SIZE = 512;
+    private static final int OVERLAP = 384;
+    private static final int HOP = BUFFER_SIZE - OVERLAP;
+    // 区间的帧数，结束帧也对齐，最后一帧不补0
+    private static final int ROWS = 64;
+
+    @Test
+    public void streamRangeMatchesFullRun() {
+        this.assertRangeMatchesFullRun(transformer -> new Spectrum(AUDIO, BUFFER_SIZE, ScaleFilter.Type.mel,
+                transformer), false);
+    }
+
+    @Test
+    public void mappedRangeMatchesFullRun() throws IOException {
+        try (MappedWavReader reader = new MappedWavReader(AUDIO)) {
+            this.assertRangeMatchesFullRun(transformer -> new Spectrum(reader, BUFFER_SIZE, ScaleFilter.Type.mel,
+                    transformer), false);
+        }
+    }
+
+    @Test
+    public void floatRangeMatchesFullRun() throws IOException {
+        try (MappedWavReader reader = new MappedWavReader(AUDIO)) {
+            this.assertRangeMatchesFullRun(transformer -> new Spectrum(reader, BUFFER_SIZE, ScaleFilter.Type.mel,
+                    transformer), true);
+        }
+    }
+
+    private void assertRangeMatchesFullRun(Function<SpectrumTransformer, Spectrum> factory, boolean floatPipeline) {
+        Spectrum full = factory.apply(new WavesurferTransformer(BUFFER_SIZE, "hann"));
+        full.setOverlap(OVERLAP);
+        full.setFloatPipeline(floatPipeline);
+        full.run();
+        double sampleRate = full.getAudioFormat().getSampleRate();
+        // 开始帧是hop的整数倍，区间的帧与从头计算的帧对齐；开始帧小于overlap时前面补0
+        for (int firstRow : new int[] { 1, 3, 1000 }) {
+            Spectrum range = factory.apply(new WavesurferTransformer(BUFFER_SIZE, "hann"));
+            range.setOverlap(OVERLAP);
+            range.setFloatPipeline(floatPipeline);
+            double startTime = firstRow * HOP / sampleRate;
+            range.run(startTime, (firstRow + ROWS) * HOP / sampleRate);
+            assertRows("first row " + firstRow, full, firstRow, range);
+        }
+    }
+
+    private static void assertRows(String message, Spectrum full, int firstRow, Spectrum range) {
+        SpectrumMatrix expected = full.getFrequenciesData()[0];
+        SpectrumMatrix actual = range.getFrequenciesData()[0];
+        double[] expectedRow = new double[expected.columns()];
+        double[] actualRow = new double[actual.columns()];
+        assertEquals(message + " 帧数", ROWS, actual.rows());
+        for (int i = 0; i < actual.rows(); i++) {
+            assertEquals(message + " 时间" + i, full.getTime(firstRow + i), range.getTime(i), 1e-9);
+            expected.getRow(firstRow + i, expectedRow);
+            actual.getRow(i, actualRow);
+            for (int j = 0; j < expectedRow.length; j++) {
+                assertEquals(message + " 帧" + i + " 频率点" + j, expectedRow[j], actualRow[j], 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.robinZhao.sound;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 重采样与原来逐列计算全部帧的结果一致
+ */
+public class TimeResamplerTest {
+    private static final int BINS = 16;
+    // {帧数, 列数}，包括缩小、放大、相等和不能整除的情况
+    private static final int[][] SHAPES = { { 1000, 300 }, { 1234, 1233 }, { 7, 3 }, { 640, 640 }, { 5, 1 },
+            { 300, 1000 }, { 100, 333 }, { 3, 7 }, { 1, 5 }, { 2, 1920 } };
+
+    @Test
+    public void boxMatchesPerColumnLoop() {
+        Random random = new Random(1);
+        for (int[] shape : SHAPES) {
+            double[][] frames = frames(random, shape[0]);
+            int[][] expected = perColumn(frames, shape[1]);
+            int[][] actual = new TimeResampler(TimeResampler.Type.box).resample(reader(frames), shape[0], BINS,
+                    shape[1]);
+            assertColumns(shape[0] + "->" + shape[1], expected, actual);
+        }
+    }
+
+    /**
+     * 缩小时线性和三次插值都与box相同
+     */
+    @Test
+    public void interpolationDownsamplingMatchesPerColumnLoop() {
+        Random random = new Random(2);
+        for (TimeResampler.Type type : new TimeResampler.Type[] { TimeResampler.Type.linear,
+                TimeResampler.Type.cubic }) {
+            for (int[] shape : SHAPES) {
+                if (shape[1] > shape[0]) {
+                    continue;
+                }
+                double[][] frames = frames(random, shape[0]);
+                int[][] actual = new TimeResampler(type).resample(reader(frames), shape[0], BINS, shape[1]);
+                assertColumns(type + " " + shape[0] + "->" + shape[1], perColumn(frames, shape[1]), actual);
+            }
+        }
+    }
+
+    /**
+     * 放大时每列独立计算所在位置的插值
+     */
+    @Test
+    public void interpolationUpsamplingMatchesPerColumn() {
+        Random random = new Random(3);
+        for (TimeResampler.Type type : new TimeResampler.Type[] { TimeResampler.Type.linear,
+                TimeResampler.Type.cubic }) {
+            for (int[] shape : SHAPES) {
+                if (shape[1] <= shape[0]) {
+                    continue;
+                }
+                double[][] frames = frames(random, shape[0]);
+                int[][] expected = interpolatePerColumn(frames, shape[1], type == TimeResampler.Type.cubic);
+                int[][] actual = new TimeResampler(type).resample(reader(frames), shape[0], BINS, shape[1]);
+                assertColumns(type + " " + shape[0] + "->" + shape[1], expected, actual);
+            }
+        }
+    }
+
+    /**
+     * 原来convertToColorMap的重采样：每列与全部帧计算重叠比例
+     */
+    private static int[][] perColumn(double[][] colorMatrix, int columnsNumber) {
+        double oldPiece = 1d / colorMatrix.length;
+        double newPiece = 1d / columnsNumber;
+        int oldColumnsNumber = colorMatrix[0].length;
+        int[][] newMatrix = new int[columnsNumber][oldColumnsNumber];
+        for (int i = 0; i < columnsNumber; i++) {
+            double[] column = new double[oldColumnsNumber];
+            for (int j = 0; j < colorMatrix.length; j++) {
+                double oldStart = j * oldPiece;
+                double oldEnd = oldStart + oldPiece;
+                double newStart = i * newPiece;
+                double newEnd = newStart + newPiece;
+                double overlap = Math.max(0d, Math.min(oldEnd, newEnd) - Math.max(oldStart, newStart));
+                if (overlap > 0) {
+                    for (int k = 0; k < oldColumnsNumber; k++) {
+                        column[k] += (overlap / newPiece) * colorMatrix[j][k];
+                    }
+                }
+            }
+            for (int m = 0; m < oldColumnsNumber; m++) {
+                newMatrix[i][m] = (int) Math.round(column[m]);
+            }
+        }
+        return newMatrix;
+    }
+
+    /**
+     * 列中心位置 (i + 0.5) * 帧数 / 列数 - 0.5 处的线性或Catmull-Rom插值，超出首尾的取首尾帧
+     */
+    private static int[][] interpolatePerColumn(double[][] frames, int columnsNumber, boolean cubic) {
+        int rows = frames.length;
+        int[][] result = new int[columnsNumber][BINS];
+        for (int i = 0; i < columnsNumber; i++) {
+            double position = Math.max(0d, Math.min(rows - 1, (i + 0.5) * rows / columnsNumber - 0.5));
+            int j = (int) position;
+            double t = position - j;
+            for (int k = 0; k < BINS; k++) {
+                double p1 = frames[j][k];
+                double p2 = frames[Math.min(rows - 1, j + 1)][k];
+                double value;
+                if (cubic) {
+                    double p0 = frames[Math.max(0, j - 1)][k];
+                    double p3 = frames[Math.min(rows - 1, j + 2)][k];
+                    value = 0.5 * (2 * p1 + (p2 - p0) * t + (2 * p0 - 5 * p1 + 4 * p2 - p3) * t * t
+                            + (3 * p1 - p0 - 3 * p2 + p3) * t * t * t);
+                } else {
+                    value = p1 + (p2 - p1) * t;
+                }
+                result[i][k] = (int) Math.max(0, Math.min(255, Math.round(value)));
+            }
+        }
+        return result;
+    }
+
+    private static double[][] frames(Random random, int rows) {
+        double[][] frames = new double[rows][BINS];
+        for (int i = 0; i < rows; i++) {
+            for (int k = 0; k < BINS; k++) {
+                frames[i][k] = random.nextDouble() * 255;
+            }
+        }
+        return frames;
+    }
+
+    private static TimeResampler.RowReader reader(double[][] frames) {
+        return (row, out) -> System.arraycopy(frames[row], 0, out, 0, out.length);
+    }
+
+    private static void assertColumns(String message, int[][] expected, int[][] actual) {
+        assertEquals(message + " 列数", expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(message + " 列" + i, expected[i], actual[i]);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.robinZhao.sound.transformer;
+
+import static com.github.robinZhao.sound.transformer.TransformerTestSupport.assertClose;
+import static com.github.robinZhao.sound.transformer.TransformerTestSupport.signal;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 任意长度的转换器与直接计算的dft一致
+ */
+public class MixedRadixFFTTransformerTest {
+    // 441 = 3²·7²(奇数长度直接做复数fft)、960 = 2⁶·3·5、882(打包后为441)、143 = 11·13，7、11、13用通用蝶形
+    private static final int[] SMOOTH_SIZES = { 441, 960, 882, 143, 1000 };
+    // 含大于13的质因子，走Bluestein：奇数长度直接计算，偶数长度一半是17、997
+    private static final int[] BLUESTEIN_SIZES = { 1009, 34, 1994, 17 * 19 };
+    private static final String[] WINDOWS = { "hann", "hamming", "rectangular" };
+    // 相对于最大幅度的误差
+    private static final double TOLERANCE = 1e-10;
+
+    @Test
+    public void smoothSizesMatchDft() {
+        Random random = new Random(1);
+        for (int size : SMOOTH_SIZES) {
+            for (String window : WINDOWS) {
+                this.assertMatchesDft(size, window, signal(random, size));
+            }
+        }
+    }
+
+    @Test
+    public void bluesteinSizesMatchDft() {
+        Random random = new Random(2);
+        for (int size : BLUESTEIN_SIZES) {
+            for (String window : WINDOWS) {
+                this.assertMatchesDft(size, window, signal(random, size));
+            }
+        }
+    }
+
+    @Test
+    public void complexFftMatchesDft() {
+        Random random = new Random(3);
+        for (int size : new int[] { 1, 2, 3, 5, 7, 13, 17, 441, 480, 997, 1009 }) {
+            double[] in = new double[size * 2];
+            for (int i = 0; i < in.length; i++) {
+                in[i] = random.nextDouble() * 2 - 1;
+            }
+            MixedRadixFFT fft = MixedRadixFFT.getInstance(size);
+            double[] out = new double[size * 2];
+            fft.transform(in, out, new double[fft.getScratchSize()]);
+            double[] expected = new double[size * 2];
+            for (int k = 0; k < size; k++) {
+                for (int i = 0; i < size; i++) {
+                    double angle = -2 * Math.PI * ((long) i * k % size) / size;
+                    double cos = Math.cos(angle);
+                    double sin = Math.sin(angle);
+                    expected[2 * k] += in[2 * i] * cos - in[2 * i + 1] * sin;
+                    expected[2 * k + 1] += in[2 * i] * sin + in[2 * i + 1] * cos;
+                }
+            }
+            assertClose("complex " + size, expected, out, TOLERANCE);
+        }
+    }
+
+    private void assertMatchesDft(int size, String window, double[] signal) {
+        double[] windowValues = WindowFun.getWindowFunction(window, null).getValues(size);
+        int half = size / 2;
+        double[] expected = new double[half];
+        double[] expectedPower = new double[half];
+        for (int k = 0; k < half; k++) {
+            double real = 0;
+            double imag = 0;
+            for (int i = 0; i < size; i++) {
+                double angle = -2 * Math.PI * ((long) i * k % size) / size;
+                real += signal[i] * windowValues[i] * Math.cos(angle);
+                imag += signal[i] * windowValues[i] * Math.sin(angle);
+            }
+            double scale = 2d / size;
+            expected[k] = scale * Math.sqrt(real * real + imag * imag);
+            expectedPower[k] = expected[k] * expected[k];
+        }
+        MixedRadixFFTTransformer transformer = new MixedRadixFFTTransformer(size, window);
+        String message = size + " " + window;
+        assertClose(message, expected, transformer.transform(signal), TOLERANCE);
+        assertClose(message + " power", expectedPower, transformer.transformPower(signal, new double[half]),
+                TOLERANCE);
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.robinZhao.sound.transformer;
+
+import static com.github.robinZhao.sound.transformer.TransformerTestSupport.assertClose;
+import static com.github.robinZhao.sound.transformer.TransformerTestSupport.signal;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 基4转换器与WavesurferTransformer、SunFFTTransformer的结果一致
+ */
+public class Radix4FFTTransformerTest {
+    // 复数fft长度为N/2，级数为奇数(先做一级基2)和偶数的长度都要覆盖
+    private static final int[] SIZES = { 2, 4, 8, 16, 32, 256, 512, 1024, 2048, 4096 };
+    private static final String[] WINDOWS = { "hann", "hamming", "blackman", "rectangular", "gauss" };
+    // 相对于最大幅度的误差
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    public void magnitudeMatchesWavesurfer() {
+        Random random = new Random(1);
+        for (int size : SIZES) {
+            for (String window : WINDOWS) {
+                double[] signal = signal(random, size);
+                double[] expected = new WavesurferTransformer(size, window).transform(signal);
+                double[] actual = new Radix4FFTTransformer(size, window).transform(signal);
+                assertClose(size + " " + window, expected, actual, TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void magnitudeMatchesSun() {
+        Random random = new Random(2);
+        for (int size : SIZES) {
+            double[] signal = signal(random, size);
+            double[] expected = new SunFFTTransformer(size, "hann").transform(signal);
+            double[] actual = new Radix4FFTTransformer(size, "hann").transform(signal);
+            assertClose(size + " sun", expected, actual, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void powerMatchesWavesurfer() {
+        Random random = new Random(3);
+        for (int size : SIZES) {
+            for (String window : WINDOWS) {
+                double[] signal = signal(random, size);
+                double[] expected = new WavesurferTransformer(size, window).transformPower(signal,
+                        new double[size / 2]);
+                double[] actual = new Radix4FFTTransformer(size, window).transformPower(signal,
+                        new double[size / 2]);
+                assertClose(size + " " + window + " power", expected, actual, TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void batchMatchesSingleFrames() {
+        Random random = new Random(4);
+        int frames = 5;
+        for (int size : new int[] { 1024, 2048 }) {
+            double[] signal = signal(random, size * frames);
+            Radix4FFTTransformer transformer = new Radix4FFTTransformer(size, "hann");
+            double[] magnitudes = transformer.transformBatch(signal, size, frames, new double[size / 2 * frames]);
+            double[] powers = transformer.transformPowerBatch(signal, size, frames, new double[size / 2 * frames]);
+            WavesurferTransformer reference = new WavesurferTransformer(size, "hann");
+            double[] frame = new double[size];
+            double[] actual = new double[size / 2];
+            for (int i = 0; i < frames; i++) {
+                System.arraycopy(signal, i * size, frame, 0, size);
+                System.arraycopy(magnitudes, i * size / 2, actual, 0, size / 2);
+                assertClose(size + " batch " + i, reference.transform(frame), actual, TOLERANCE);
+                System.arraycopy(powers, i * size / 2, actual, 0, size / 2);
+                assertClose(size + " power batch " + i, reference.transformPower(frame, new double[size / 2]),
+                        actual, TOLERANCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.robinZhao.sound.transformer;
+
+import static com.github.robinZhao.sound.transformer.TransformerTestSupport.assertClose;
+import static com.github.robinZhao.sound.transformer.TransformerTestSupport.signal;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 滑动dft跨越多个重新计算周期后与fft的结果只差舍入误差
+ */
+public class SlidingDFTTransformerTest {
+    private static final int SIZE = 512;
+    private static final String[] WINDOWS = { "hann", "hamming", "blackman", "cosine", "rectangular" };
+    private static final int[] HOPS = { 1, 4 };
+    // 默认每256帧重新计算一次，覆盖4个完整周期
+    private static final int FRAMES = 256 * 4 + 10;
+    // 递推帧相对于最大幅度的误差
+    private static final double TOLERANCE = 1e-11;
+    // 重新计算的帧没有累积误差
+    private static final double RESYNC_TOLERANCE = 1e-13;
+
+    @Test
+    public void slidingMatchesFft() {
+        Random random = new Random(1);
+        for (String window : WINDOWS) {
+            for (int hop : HOPS) {
+                this.assertSliding(window, hop, signal(random, SIZE + hop * FRAMES, 440 / 44100d), false);
+            }
+        }
+    }
+
+    @Test
+    public void slidingPowerMatchesFft() {
+        Random random = new Random(2);
+        for (int hop : HOPS) {
+            this.assertSliding("hann", hop, signal(random, SIZE + hop * FRAMES, 440 / 44100d), true);
+        }
+    }
+
+    /**
+     * 输入不是上一帧后移hop个样本时重新计算，不使用过期的递推状态
+     */
+    @Test
+    public void discontinuityResyncs() {
+        Random random = new Random(3);
+        int hop = 2;
+        double[] signal = signal(random, SIZE * 4, 440 / 44100d);
+        SlidingDFTTransformer sliding = new SlidingDFTTransformer(SIZE, WindowFun.getWindowFunction("hann", null),
+                hop);
+        WavesurferTransformer fft = new WavesurferTransformer(SIZE, "hann");
+        double[] frame = new double[SIZE];
+        int[] starts = { 0, hop, 2 * hop, SIZE + 7, SIZE + 7 + hop, 3 * SIZE };
+        for (int start : starts) {
+            System.arraycopy(signal, start, frame, 0, SIZE);
+            assertClose("start " + start, fft.transform(frame), sliding.transform(frame), RESYNC_TOLERANCE * 10);
+        }
+    }
+
+    private void assertSliding(String window, int hop, double[] signal, boolean power) {
+        SlidingDFTTransformer sliding = new SlidingDFTTransformer(SIZE, WindowFun.getWindowFunction(window, null),
+                hop);
+        WavesurferTransformer fft = new WavesurferTransformer(SIZE, window);
+        double[] frame = new double[SIZE];
+        double[] expected = new double[SIZE / 2];
+        double[] actual = new double[SIZE / 2];
+        for (int i = 0; i < FRAMES; i++) {
+            System.arraycopy(signal, hop * i, frame, 0, SIZE);
+            if (power) {
+                fft.transformPower(frame, expected);
+                sliding.transformPower(frame, actual);
+            } else {
+                fft.transform(frame, expected);
+                sliding.transform(frame, actual);
+            }
+            String message = window + " hop " + hop + " frame " + i;
+            // 第0、257、514...帧用fft重新计算
+            if (i % 257 == 0) {
+                assertClose(message, expected, actual, RESYNC_TOLERANCE);
+            }
+            assertClose(message, expected, actual, TOLERANCE);
+        }
+    }
+}
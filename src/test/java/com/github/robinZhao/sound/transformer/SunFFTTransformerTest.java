@@ -0,0 +1,59 @@
+package com.github.robinZhao.sound.transformer;
+
+import static com.github.robinZhao.sound.transformer.TransformerTestSupport.assertClose;
+import static com.github.robinZhao.sound.transformer.TransformerTestSupport.signal;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 实数输入模式与复数模式的幅度一致
+ */
+public class SunFFTTransformerTest {
+    private static final int[] SIZES = { 16, 64, 256, 1024, 4096 };
+    private static final String[] WINDOWS = { "hann", "hamming", "blackman", "rectangular", "gauss" };
+    // 相对于最大幅度的误差
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    public void realInputMatchesComplex() {
+        Random random = new Random(1);
+        for (int size : SIZES) {
+            for (String window : WINDOWS) {
+                double[] signal = signal(random, size);
+                double[] expected = new SunFFTTransformer(size, window, false).transform(signal);
+                double[] actual = new SunFFTTransformer(size, window, true).transform(signal);
+                assertClose(size + " " + window, expected, actual, TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void realInputPowerMatchesComplex() {
+        Random random = new Random(2);
+        for (int size : SIZES) {
+            for (String window : WINDOWS) {
+                double[] signal = signal(random, size);
+                double[] expected = new SunFFTTransformer(size, window, false).transformPower(signal,
+                        new double[size / 2]);
+                double[] actual = new SunFFTTransformer(size, window, true).transformPower(signal,
+                        new double[size / 2]);
+                assertClose(size + " " + window, expected, actual, TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void realInputBatchMatchesComplex() {
+        Random random = new Random(3);
+        int size = 512;
+        int frames = 5;
+        double[] signal = signal(random, size * frames);
+        double[] expected = new SunFFTTransformer(size, "hann", false).transformBatch(signal, size, frames,
+                new double[size / 2 * frames]);
+        double[] actual = new SunFFTTransformer(size, "hann", true).transformBatch(signal, size, frames,
+                new double[size / 2 * frames]);
+        assertClose("batch", expected, actual, TOLERANCE);
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.robinZhao.sound.transformer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+/**
+ * 转换器测试共用的输入信号和比较方法
+ */
+final class TransformerTestSupport {
+
+    private TransformerTestSupport() {
+    }
+
+    /**
+     * 正弦波加噪声，整个信号内7.3个周期
+     */
+    static double[] signal(Random random, int size) {
+        return signal(random, size, 7.3 / size);
+    }
+
+    /**
+     * 正弦波加噪声
+     *
+     * @param frequency 每个样本的周期数
+     */
+    static double[] signal(Random random, int size, double frequency) {
+        double[] signal = new double[size];
+        for (int i = 0; i < size; i++) {
+            signal[i] = 0.5 * Math.sin(2 * Math.PI * frequency * i) + 0.1 * (random.nextDouble() * 2 - 1);
+        }
+        return signal;
+    }
+
+    /**
+     * 逐点比较，误差相对于expected的最大幅度
+     */
+    static void assertClose(String message, double[] expected, double[] actual, double tolerance) {
+        assertEquals(message + " length", expected.length, actual.length);
+        double max = 0;
+        for (double value : expected) {
+            max = Math.max(max, Math.abs(value));
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(message + " bin " + i, expected[i], actual[i], max * tolerance);
+        }
+    }
+}
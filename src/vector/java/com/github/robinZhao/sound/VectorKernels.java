@@ -0,0 +1,357 @@
+package com.github.robinZhao.sound;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels的Vector API实现，需要JDK 17及以上并使用--add-modules jdk.incubator.vector启动，由Kernels.get()按需加载。
+ * 每个元素的运算与标量实现相同，结果逐位相同；不足一个向量的剩余部分按标量计算
+ */
+class VectorKernels extends Kernels {
+    private static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+    // 与D、F车道数相同的int，用于检查滤波器组的下标是否连续
+    private static final VectorSpecies<Integer> DI = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(D.length() * 32));
+    private static final VectorSpecies<Integer> FI = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(F.length() * 32));
+    // 交错数据拆分：两个向量各自把偶数位(奇数位)移到前半或后半，再按HIGH合并。
+    // JDK 17中两个向量的rearrange和按下标gather都没有内联，比标量循环慢
+    private static final VectorShuffle<Double> D_EVEN = VectorShuffle.fromOp(D, i -> 2 * i % D.length());
+    private static final VectorShuffle<Double> D_ODD = VectorShuffle.fromOp(D, i -> (2 * i + 1) % D.length());
+    private static final VectorMask<Double> D_HIGH = VectorMask.fromLong(D, highLanes(D.length()));
+    private static final VectorShuffle<Float> F_EVEN = VectorShuffle.fromOp(F, i -> 2 * i % F.length());
+    private static final VectorShuffle<Float> F_ODD = VectorShuffle.fromOp(F, i -> (2 * i + 1) % F.length());
+    private static final VectorMask<Float> F_HIGH = VectorMask.fromLong(F, highLanes(F.length()));
+
+    VectorKernels() {
+    }
+
+    /**
+     * 后一半车道的掩码位
+     */
+    private static long highLanes(int length) {
+        return ((1L << length) - 1) & ~((1L << (length / 2)) - 1);
+    }
+
+    /**
+     * a、b连续存放的交错数据中的偶数位
+     */
+    private static DoubleVector even(DoubleVector a, DoubleVector b) {
+        return a.rearrange(D_EVEN).blend(b.rearrange(D_EVEN), D_HIGH);
+    }
+
+    private static DoubleVector odd(DoubleVector a, DoubleVector b) {
+        return a.rearrange(D_ODD).blend(b.rearrange(D_ODD), D_HIGH);
+    }
+
+    private static FloatVector even(FloatVector a, FloatVector b) {
+        return a.rearrange(F_EVEN).blend(b.rearrange(F_EVEN), F_HIGH);
+    }
+
+    private static FloatVector odd(FloatVector a, FloatVector b) {
+        return a.rearrange(F_ODD).blend(b.rearrange(F_ODD), F_HIGH);
+    }
+
+    @Override
+    protected boolean isSupported() {
+        // 没有SIMD指令时Vector API退化为逐元素的Java实现，比标量循环慢
+        return VectorShape.preferredShape().vectorBitSize() >= 128;
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + D.vectorBitSize();
+    }
+
+    @Override
+    public void window(double[] in, int offset, double[] window, double[] out, int outOffset, int n) {
+        int i = 0;
+        for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+            DoubleVector.fromArray(D, in, offset + i)
+                    .mul(DoubleVector.fromArray(D, window, i))
+                    .intoArray(out, outOffset + i);
+        }
+        for (; i < n; i++) {
+            out[outOffset + i] = in[offset + i] * window[i];
+        }
+    }
+
+    @Override
+    public void magnitude(double[] data, double scale, double[] out, int outOffset, int n) {
+        int length = D.length();
+        int i = 0;
+        for (int bound = D.loopBound(n); i < bound; i += length) {
+            DoubleVector a = DoubleVector.fromArray(D, data, 2 * i);
+            DoubleVector b = DoubleVector.fromArray(D, data, 2 * i + length);
+            DoubleVector re = even(a, b);
+            DoubleVector im = odd(a, b);
+            re.mul(re).add(im.mul(im)).sqrt().mul(scale).intoArray(out, outOffset + i);
+        }
+        for (; i < n; i++) {
+            double re = data[2 * i];
+            double im = data[2 * i + 1];
+            out[outOffset + i] = scale * Math.sqrt(re * re + im * im);
+        }
+    }
+
+    @Override
+    public void magnitude(float[] data, float scale, float[] out, int outOffset, int n) {
+        int length = F.length();
+        int i = 0;
+        for (int bound = F.loopBound(n); i < bound; i += length) {
+            FloatVector a = FloatVector.fromArray(F, data, 2 * i);
+            FloatVector b = FloatVector.fromArray(F, data, 2 * i + length);
+            FloatVector re = even(a, b);
+            FloatVector im = odd(a, b);
+            re.mul(re).add(im.mul(im)).sqrt().mul(scale).intoArray(out, outOffset + i);
+        }
+        for (; i < n; i++) {
+            float re = data[2 * i];
+            float im = data[2 * i + 1];
+            out[outOffset + i] = scale * (float) Math.sqrt(re * re + im * im);
+        }
+    }
+
+    @Override
+    public void power(double[] data, double scale, double[] out, int outOffset, int n) {
+        int length = D.length();
+        int i = 0;
+        for (int bound = D.loopBound(n); i < bound; i += length) {
+            DoubleVector a = DoubleVector.fromArray(D, data, 2 * i);
+            DoubleVector b = DoubleVector.fromArray(D, data, 2 * i + length);
+            DoubleVector re = even(a, b);
+            DoubleVector im = odd(a, b);
+            re.mul(re).add(im.mul(im)).mul(scale).intoArray(out, outOffset + i);
+        }
+        for (; i < n; i++) {
+            double re = data[2 * i];
+            double im = data[2 * i + 1];
+            out[outOffset + i] = scale * (re * re + im * im);
+        }
+    }
+
+    @Override
+    public void power(float[] data, float scale, float[] out, int outOffset, int n) {
+        int length = F.length();
+        int i = 0;
+        for (int bound = F.loopBound(n); i < bound; i += length) {
+            FloatVector a = FloatVector.fromArray(F, data, 2 * i);
+            FloatVector b = FloatVector.fromArray(F, data, 2 * i + length);
+            FloatVector re = even(a, b);
+            FloatVector im = odd(a, b);
+            re.mul(re).add(im.mul(im)).mul(scale).intoArray(out, outOffset + i);
+        }
+        for (; i < n; i++) {
+            float re = data[2 * i];
+            float im = data[2 * i + 1];
+            out[outOffset + i] = scale * (re * re + im * im);
+        }
+    }
+
+    @Override
+    public void magnitude(double[] real, double[] imag, double scale, double[] out, int n) {
+        int i = 0;
+        for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+            DoubleVector re = DoubleVector.fromArray(D, real, i);
+            DoubleVector im = DoubleVector.fromArray(D, imag, i);
+            re.mul(re).add(im.mul(im)).sqrt().mul(scale).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = scale * Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+        }
+    }
+
+    @Override
+    public void power(double[] real, double[] imag, double scale, double[] out, int n) {
+        int i = 0;
+        for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+            DoubleVector re = DoubleVector.fromArray(D, real, i);
+            DoubleVector im = DoubleVector.fromArray(D, imag, i);
+            re.mul(re).add(im.mul(im)).mul(scale).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = scale * (real[i] * real[i] + imag[i] * imag[i]);
+        }
+    }
+
+    /**
+     * 一个向量内的滤波器取连续的fft点时(linear刻度全部如此)直接连续读取，否则按标量计算。
+     * 用下标gather在JDK 17中比标量慢
+     */
+    @Override
+    public void filterBank(int[] bins, double[] low, double[] high, double[] in, int length, double[] out) {
+        // bins非递减，末尾取到length之外的滤波器按标量计算
+        int limit = bins.length;
+        while (limit > 0 && bins[limit - 1] + 1 >= length) {
+            limit--;
+        }
+        int lanes = D.length();
+        IntVector iota = IntVector.zero(DI).addIndex(1);
+        DoubleVector zero = DoubleVector.zero(D);
+        int i = 0;
+        for (int bound = D.loopBound(limit); i < bound; i += lanes) {
+            int j = bins[i];
+            // 首尾相差lanes - 1是连续的必要条件，先用它排除大部分不连续的块
+            if (bins[i + lanes - 1] - j == lanes - 1
+                    && IntVector.fromArray(DI, bins, i).sub(j).eq(iota).allTrue()) {
+                // 与标量一样从0开始累加，保证0的符号相同
+                zero.add(DoubleVector.fromArray(D, in, j).mul(DoubleVector.fromArray(D, low, i)))
+                        .add(DoubleVector.fromArray(D, in, j + 1).mul(DoubleVector.fromArray(D, high, i)))
+                        .intoArray(out, i);
+            } else {
+                for (int k = i; k < i + lanes; k++) {
+                    double value = 0;
+                    value += in[bins[k]] * low[k];
+                    value += in[bins[k] + 1] * high[k];
+                    out[k] = value;
+                }
+            }
+        }
+        for (; i < bins.length; i++) {
+            int j = bins[i];
+            double value = 0;
+            if (j < length) {
+                value += in[j] * low[i];
+            }
+            if (j + 1 < length) {
+                value += in[j + 1] * high[i];
+            }
+            out[i] = value;
+        }
+    }
+
+    @Override
+    public void filterBank(int[] bins, float[] low, float[] high, float[] in, int length, float[] out) {
+        int limit = bins.length;
+        while (limit > 0 && bins[limit - 1] + 1 >= length) {
+            limit--;
+        }
+        int lanes = F.length();
+        IntVector iota = IntVector.zero(FI).addIndex(1);
+        FloatVector zero = FloatVector.zero(F);
+        int i = 0;
+        for (int bound = F.loopBound(limit); i < bound; i += lanes) {
+            int j = bins[i];
+            // 首尾相差lanes - 1是连续的必要条件，先用它排除大部分不连续的块
+            if (bins[i + lanes - 1] - j == lanes - 1
+                    && IntVector.fromArray(FI, bins, i).sub(j).eq(iota).allTrue()) {
+                zero.add(FloatVector.fromArray(F, in, j).mul(FloatVector.fromArray(F, low, i)))
+                        .add(FloatVector.fromArray(F, in, j + 1).mul(FloatVector.fromArray(F, high, i)))
+                        .intoArray(out, i);
+            } else {
+                for (int k = i; k < i + lanes; k++) {
+                    float value = 0;
+                    value += in[bins[k]] * low[k];
+                    value += in[bins[k] + 1] * high[k];
+                    out[k] = value;
+                }
+            }
+        }
+        for (; i < bins.length; i++) {
+            int j = bins[i];
+            float value = 0;
+            if (j < length) {
+                value += in[j] * low[i];
+            }
+            if (j + 1 < length) {
+                value += in[j + 1] * high[i];
+            }
+            out[i] = value;
+        }
+    }
+
+    @Override
+    public void channelMerge(double[] in, int channels, double[] out, int offset, int frames) {
+        // 只有立体声向量化，其他声道数交错的步长不规则
+        if (channels != 2) {
+            super.channelMerge(in, channels, out, offset, frames);
+            return;
+        }
+        int length = D.length();
+        DoubleVector zero = DoubleVector.zero(D);
+        int i = 0;
+        for (int bound = D.loopBound(frames); i < bound; i += length) {
+            DoubleVector a = DoubleVector.fromArray(D, in, 2 * i);
+            DoubleVector b = DoubleVector.fromArray(D, in, 2 * i + length);
+            zero.add(even(a, b)).add(odd(a, b)).div(2).intoArray(out, offset + i);
+        }
+        for (; i < frames; i++) {
+            double total = 0;
+            total += in[2 * i];
+            total += in[2 * i + 1];
+            out[offset + i] = total / 2;
+        }
+    }
+
+    @Override
+    public void channelMerge(float[] in, int channels, float[] out, int offset, int frames) {
+        if (channels != 2) {
+            super.channelMerge(in, channels, out, offset, frames);
+            return;
+        }
+        int length = F.length();
+        FloatVector zero = FloatVector.zero(F);
+        int i = 0;
+        for (int bound = F.loopBound(frames); i < bound; i += length) {
+            FloatVector a = FloatVector.fromArray(F, in, 2 * i);
+            FloatVector b = FloatVector.fromArray(F, in, 2 * i + length);
+            zero.add(even(a, b)).add(odd(a, b)).div(2).intoArray(out, offset + i);
+        }
+        for (; i < frames; i++) {
+            float total = 0;
+            total += in[2 * i];
+            total += in[2 * i + 1];
+            out[offset + i] = total / 2;
+        }
+    }
+
+    @Override
+    public void channelSplit(double[] in, int channels, double[][] out, int offset, int frames) {
+        if (channels != 2) {
+            super.channelSplit(in, channels, out, offset, frames);
+            return;
+        }
+        int length = D.length();
+        double[] left = out[0];
+        double[] right = out[1];
+        int i = 0;
+        for (int bound = D.loopBound(frames); i < bound; i += length) {
+            DoubleVector a = DoubleVector.fromArray(D, in, 2 * i);
+            DoubleVector b = DoubleVector.fromArray(D, in, 2 * i + length);
+            even(a, b).intoArray(left, offset + i);
+            odd(a, b).intoArray(right, offset + i);
+        }
+        for (; i < frames; i++) {
+            left[offset + i] = in[2 * i];
+            right[offset + i] = in[2 * i + 1];
+        }
+    }
+
+    @Override
+    public void channelSplit(float[] in, int channels, float[][] out, int offset, int frames) {
+        if (channels != 2) {
+            super.channelSplit(in, channels, out, offset, frames);
+            return;
+        }
+        int length = F.length();
+        float[] left = out[0];
+        float[] right = out[1];
+        int i = 0;
+        for (int bound = F.loopBound(frames); i < bound; i += length) {
+            FloatVector a = FloatVector.fromArray(F, in, 2 * i);
+            FloatVector b = FloatVector.fromArray(F, in, 2 * i + length);
+            even(a, b).intoArray(left, offset + i);
+            odd(a, b).intoArray(right, offset + i);
+        }
+        for (; i < frames; i++) {
+            left[offset + i] = in[2 * i];
+            right[offset + i] = in[2 * i + 1];
+        }
+    }
+}